@@ -1,10 +1,14 @@
 val springBootVersion = "2.2.6.RELEASE"
 val springVersion = "5.2.5.RELEASE"
 val h2Version = "1.4.200"
+val micrometerVersion = "1.3.6"
+val jacksonVersion = "2.10.3"
+val servletVersion = "4.0.1"
 
 plugins {
 	`java-library`
 	id("java")
+	id("me.champeau.gradle.jmh") version "0.5.0"
 }
 
 group = "org.pensatocode.simplicity"
@@ -25,12 +29,21 @@ dependencies {
 
     api("org.springframework:spring-jdbc:${springVersion}")
     api("org.springframework.data:spring-data-commons:${springBootVersion}")
+    // in the signatures of AbstractController and JsonRowWriter
+    api("org.springframework:spring-webmvc:${springVersion}")
+    api("com.fasterxml.jackson.core:jackson-databind:${jacksonVersion}")
 
     // Database
 //    implementation("postgresql:postgresql:9.1-901-1.jdbc4")
     implementation("com.h2database:h2:${h2Version}")
 
+    // Metrics, only needed by MicrometerRepositoryMetrics
+    compileOnly("io.micrometer:micrometer-core:${micrometerVersion}")
+
     // Test
+    testAnnotationProcessor(project(":processor"))
+    testImplementation("io.micrometer:micrometer-core:${micrometerVersion}")
+    testImplementation("javax.servlet:javax.servlet-api:${servletVersion}")
     testImplementation("org.springframework.boot:spring-boot-starter-test:${springBootVersion}") {
         exclude(group = "org.junit.vintage", module = "junit-vintage-engine")
     }
@@ -40,6 +53,16 @@ tasks.withType<Test> {
     useJUnitPlatform()
 }
 
+// Benchmarks in src/jmh, run with: ./gradlew jmh [-PjmhIncludes=RepositoryBenchmark]
+jmh {
+    jmhVersion = "1.23"
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    resultsFile = project.file("${project.buildDir}/reports/jmh/results.json")
+    humanOutputFile = project.file("${project.buildDir}/reports/jmh/human.txt")
+    project.findProperty("jmhIncludes")?.let { includes = listOf(it.toString()) }
+}
+
 // https://guides.gradle.org/building-kotlin-jvm-libraries/
 tasks {
     jar {
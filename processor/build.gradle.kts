@@ -0,0 +1,12 @@
+plugins {
+	`java-library`
+}
+
+group = "org.pensatocode.simplicity"
+version = "2.0.2"
+description = "Annotation processor generating the entity metadata of spring-simplicity-java repositories at compile time."
+java.sourceCompatibility = JavaVersion.VERSION_11
+
+repositories {
+	mavenCentral()
+}
@@ -0,0 +1,577 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the {@code EntityMetadata} of the classes annotated with {@code @JdbcEntity}: their columns and
+ * SQL types, a row mapper and an id accessor that use the fields, or their getters and setters, directly.
+ * Repositories find the generated class by its name, so that they don't introspect the entity at startup.
+ *
+ * <p>Columns are named and typed as {@code EntityModel} does at runtime, so both ways map an entity alike.
+ */
+@SupportedAnnotationTypes(EntityMetadataProcessor.JDBC_ENTITY)
+public class EntityMetadataProcessor extends AbstractProcessor {
+
+    static final String JDBC_ENTITY = "org.pensatocode.simplicity.jdbc.mapper.JdbcEntity";
+
+    private static final String CLASS_SUFFIX = "_Metadata";
+    private static final String MAPPER_PACKAGE = "org.pensatocode.simplicity.jdbc.mapper.";
+    private static final Pattern CAMEL_CASE_WORD = Pattern.compile("(.)(\\p{Upper})");
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "@JdbcEntity only applies to classes");
+                    continue;
+                }
+                TypeElement type = (TypeElement) element;
+                List<Property> properties = properties(type);
+                if (properties == null || !isInstantiable(type)) {
+                    continue;
+                }
+                String idName = idName(type);
+                Property id = null;
+                for (Property property : properties) {
+                    if (property.name.equals(idName)) {
+                        id = property;
+                    }
+                }
+                if (id == null) {
+                    error(type, "No id property '" + idName + "'");
+                    continue;
+                }
+                try {
+                    write(type, properties, id);
+                } catch (IOException e) {
+                    error(type, "Failed to write the entity metadata: " + e.getMessage());
+                }
+            }
+        }
+        return true;
+    }
+
+    private String idName(TypeElement type) {
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(JDBC_ENTITY)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("id")) {
+                        return (String) entry.getValue().getValue();
+                    }
+                }
+            }
+        }
+        return "id";
+    }
+
+    private boolean isInstantiable(TypeElement type) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.ABSTRACT)
+            || (type.getNestingKind() != NestingKind.TOP_LEVEL && !modifiers.contains(Modifier.STATIC))) {
+            error(type, "@JdbcEntity classes must be concrete, non-private and static when nested");
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        error(type, "@JdbcEntity classes need a non-private constructor without arguments");
+        return false;
+    }
+
+    /**
+     * @return The persistent fields of the type, as {@code EntityModel} finds them, or {@code null} if one
+     *         of them can't be accessed.
+     */
+    private List<Property> properties(TypeElement type) {
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.PRIVATE) && !modifiers.contains(Modifier.STATIC)) {
+                methods.add(method);
+            }
+        }
+        List<Property> properties = new ArrayList<>();
+        boolean accessible = true;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            if (modifiers.contains(Modifier.FINAL)) {
+                error(field, "Persistent fields of @JdbcEntity classes can't be final, make it transient to leave it out");
+                accessible = false;
+                continue;
+            }
+            String name = field.getSimpleName().toString();
+            String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            boolean visible = !modifiers.contains(Modifier.PRIVATE);
+            String reader = visible ? "entity." + name : null;
+            String writer = visible ? "entity." + name + " = %s;" : null;
+            for (ExecutableElement method : methods) {
+                String methodName = method.getSimpleName().toString();
+                if (reader == null && method.getParameters().isEmpty()
+                    && (methodName.equals("get" + capitalized) || methodName.equals("is" + capitalized))
+                    && processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) {
+                    reader = "entity." + methodName + "()";
+                }
+                if (writer == null && method.getParameters().size() == 1
+                    && methodName.equals("set" + capitalized)
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), field.asType())) {
+                    writer = "entity." + methodName + "(%s);";
+                }
+            }
+            if (reader == null || writer == null) {
+                error(field, "Persistent fields of @JdbcEntity classes must be non-private or have a getter and a setter");
+                accessible = false;
+                continue;
+            }
+            properties.add(new Property(name, CAMEL_CASE_WORD.matcher(name).replaceAll("$1_$2").toLowerCase(),
+                field.asType(), reader, writer));
+        }
+        return accessible ? properties : null;
+    }
+
+    private void write(TypeElement type, List<Property> properties, Property id) throws IOException {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = packageElement.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+            .replace('$', '_') + CLASS_SUFFIX;
+        String entity = type.getQualifiedName().toString();
+        String idType = boxed(id.type);
+
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        out.append("public final class ").append(simpleName).append(" implements ")
+            .append(MAPPER_PACKAGE).append("EntityMetadata<").append(entity).append(", ").append(idType).append("> {\n\n");
+
+        out.append("    private static final java.util.List<String> PROPERTIES = java.util.List.of(");
+        appendStrings(out, properties, false);
+        out.append(");\n\n");
+        out.append("    private static final java.util.List<String> COLUMNS = java.util.List.of(");
+        appendStrings(out, properties, true);
+        out.append(");\n\n");
+        out.append("    private static final int[] TYPES = {");
+        for (int i = 0; i < properties.size(); i++) {
+            out.append(i > 0 ? ", " : " ").append(sqlType(properties.get(i).type));
+        }
+        out.append(" };\n\n");
+        out.append("    private static final java.util.Map<String, Integer> TYPES_BY_COLUMN;\n\n");
+        out.append("    static {\n");
+        out.append("        java.util.Map<String, Integer> types = new java.util.LinkedHashMap<>();\n");
+        out.append("        for (int i = 0; i < TYPES.length; i++) {\n");
+        out.append("            types.put(COLUMNS.get(i), TYPES[i]);\n");
+        out.append("        }\n");
+        out.append("        TYPES_BY_COLUMN = java.util.Collections.unmodifiableMap(types);\n");
+        out.append("    }\n\n");
+
+        out.append("    private final RowMapper rowMapper = new RowMapper();\n");
+        out.append("    private final IdAccessor idAccessor = new IdAccessor();\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public Class<").append(entity).append("> getEntityClass() {\n");
+        out.append("        return ").append(entity).append(".class;\n");
+        out.append("    }\n\n");
+        out.append("    @Override\n");
+        out.append("    public java.util.List<String> getProperties() {\n");
+        out.append("        return PROPERTIES;\n");
+        out.append("    }\n\n");
+        out.append("    @Override\n");
+        out.append("    public java.util.List<String> getColumns() {\n");
+        out.append("        return COLUMNS;\n");
+        out.append("    }\n\n");
+        out.append("    @Override\n");
+        out.append("    public String getIdName() {\n");
+        out.append("        return \"").append(id.name).append("\";\n");
+        out.append("    }\n\n");
+        out.append("    @Override\n");
+        out.append("    public ").append(MAPPER_PACKAGE).append("TransactionalRowMapper<").append(entity).append("> getRowMapper() {\n");
+        out.append("        return rowMapper;\n");
+        out.append("    }\n\n");
+        out.append("    @Override\n");
+        out.append("    public ").append(MAPPER_PACKAGE).append("IdAccessor<").append(entity).append(", ").append(idType).append("> getIdAccessor() {\n");
+        out.append("        return idAccessor;\n");
+        out.append("    }\n\n");
+
+        // index of the property of a column or property name, -1 if none
+        out.append("    private static int property(String name) {\n");
+        out.append("        switch (name) {\n");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            out.append("            case \"").append(property.column).append("\":\n");
+            if (!property.name.equals(property.column)) {
+                out.append("            case \"").append(property.name).append("\":\n");
+            }
+            out.append("                return ").append(i).append(";\n");
+        }
+        out.append("            default:\n");
+        out.append("                return -1;\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+
+        out.append("    private static Object value(").append(entity).append(" entity, int property) {\n");
+        out.append("        switch (property) {\n");
+        for (int i = 0; i < properties.size(); i++) {
+            out.append("            case ").append(i).append(":\n");
+            appendValue(out, properties.get(i));
+        }
+        out.append("            default:\n");
+        out.append("                throw new IllegalArgumentException(\"No property \" + property);\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+
+        appendRowMapper(out, entity, properties);
+        appendIdAccessor(out, entity, idType, id);
+        out.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(out.toString());
+        }
+    }
+
+    private void appendRowMapper(StringBuilder out, String entity, List<Property> properties) {
+        out.append("    private static final class RowMapper extends ").append(MAPPER_PACKAGE)
+            .append("TransactionalRowMapper<").append(entity).append("> {\n\n");
+        out.append("        private final ").append(MAPPER_PACKAGE).append("ResultSetColumns resultSetColumns =\n");
+        out.append("            new ").append(MAPPER_PACKAGE).append("ResultSetColumns(").append(properties.size())
+            .append(", RowMapper::column);\n\n");
+
+        out.append("        @Override\n");
+        if (properties.stream().anyMatch(property -> isParameterized(property.type))) {
+            out.append("        @SuppressWarnings(\"unchecked\")\n");
+        }
+        out.append("        public ").append(entity).append(" mapRow(java.sql.ResultSet rs, int rowNum) throws java.sql.SQLException {\n");
+        out.append("            int[] columns = resultSetColumns.resolve(rs);\n");
+        out.append("            ").append(entity).append(" entity = new ").append(entity).append("();\n");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            String column = "columns[" + i + "]";
+            out.append("            if (").append(column).append(" > 0) {\n");
+            appendRead(out, property, column, "v" + i);
+            out.append("            }\n");
+        }
+        out.append("            return entity;\n");
+        out.append("        }\n\n");
+
+        out.append("        @Override\n");
+        out.append("        public java.util.Map<String, Object> mapColumns(").append(entity).append(" entity) {\n");
+        out.append("            java.util.Map<String, Object> values = new java.util.LinkedHashMap<>();\n");
+        out.append("            for (int i = 0; i < COLUMNS.size(); i++) {\n");
+        out.append("                values.put(COLUMNS.get(i), value(entity, i));\n");
+        out.append("            }\n");
+        out.append("            return values;\n");
+        out.append("        }\n\n");
+
+        out.append("        @Override\n");
+        out.append("        public java.util.Map<String, Integer> mapTypes() {\n");
+        out.append("            return TYPES_BY_COLUMN;\n");
+        out.append("        }\n\n");
+
+        out.append("        @Override\n");
+        out.append("        public java.util.List<Object> columnsValues(").append(entity)
+            .append(" entity, java.util.List<String> columns) throws NoSuchFieldException {\n");
+        out.append("            return java.util.Arrays.asList(columnsValues(entity, columns.toArray(new String[0])));\n");
+        out.append("        }\n\n");
+
+        out.append("        @Override\n");
+        out.append("        public Object[] columnsValues(").append(entity).append(" entity, String[] columns) throws NoSuchFieldException {\n");
+        out.append("            Object[] values = new Object[columns.length];\n");
+        out.append("            for (int i = 0; i < columns.length; i++) {\n");
+        out.append("                values[i] = value(entity, index(columns[i]));\n");
+        out.append("            }\n");
+        out.append("            return values;\n");
+        out.append("        }\n\n");
+
+        out.append("        @Override\n");
+        out.append("        public int[] columnsTypes(String... columns) throws NoSuchFieldException {\n");
+        out.append("            int[] types = new int[columns.length];\n");
+        out.append("            for (int i = 0; i < columns.length; i++) {\n");
+        out.append("                types[i] = TYPES[index(columns[i])];\n");
+        out.append("            }\n");
+        out.append("            return types;\n");
+        out.append("        }\n\n");
+
+        out.append("        private static int index(String column) throws NoSuchFieldException {\n");
+        out.append("            int index = property(column);\n");
+        out.append("            if (index < 0) {\n");
+        out.append("                throw new NoSuchFieldException(\"Column name not found in entity: \" + column);\n");
+        out.append("            }\n");
+        out.append("            return index;\n");
+        out.append("        }\n\n");
+
+        // index of the property read from a column label, -1 if none
+        out.append("        private static int column(String label) {\n");
+        out.append("            String name = label.toLowerCase(java.util.Locale.ROOT);\n");
+        out.append("            int property = property(name);\n");
+        out.append("            return (property >= 0) ? property : lowerCaseProperty(name);\n");
+        out.append("        }\n\n");
+        out.append("        private static int lowerCaseProperty(String name) {\n");
+        out.append("            switch (name) {\n");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            String lowerCase = property.name.toLowerCase(java.util.Locale.ROOT);
+            if (!lowerCase.equals(property.column)) {
+                out.append("                case \"").append(lowerCase).append("\":\n");
+                out.append("                    return ").append(i).append(";\n");
+            }
+        }
+        out.append("                default:\n");
+        out.append("                    return -1;\n");
+        out.append("            }\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+    }
+
+    private void appendIdAccessor(StringBuilder out, String entity, String idType, Property id) {
+        out.append("    private static final class IdAccessor implements ").append(MAPPER_PACKAGE)
+            .append("IdAccessor<").append(entity).append(", ").append(idType).append("> {\n\n");
+        out.append("        @Override\n");
+        out.append("        public ").append(idType).append(" getId(").append(entity).append(" entity) {\n");
+        out.append("            return ").append(id.reader).append(";\n");
+        out.append("        }\n\n");
+        out.append("        @Override\n");
+        out.append("        public void setId(").append(entity).append(" entity, ").append(idType).append(" id) {\n");
+        out.append("            ").append(String.format(id.writer, "id")).append("\n");
+        out.append("        }\n\n");
+        out.append("        @Override\n");
+        out.append("        public Class<").append(idType).append("> getIdType() {\n");
+        out.append("            return ").append(idType).append(".class;\n");
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    /**
+     * Appends the read of a column into the property, with the typed getter matching its type, as
+     * {@code EntityModel} reads it.
+     */
+    private void appendRead(StringBuilder out, Property property, String column, String variable) {
+        String indent = "                ";
+        String type = typeName(property.type);
+        String value;
+        switch (type) {
+            case "long": case "int": case "short": case "byte": case "double": case "float": case "boolean":
+                value = "rs.get" + Character.toUpperCase(type.charAt(0)) + type.substring(1) + "(" + column + ")";
+                break;
+            case "char":
+                value = "convertToChar(rs.getString(" + column + "))";
+                break;
+            case "java.lang.Long": case "java.lang.Integer": case "java.lang.Short": case "java.lang.Byte":
+            case "java.lang.Double": case "java.lang.Float": case "java.lang.Boolean":
+                String primitive = processingEnv.getTypeUtils().unboxedType(property.type).toString();
+                out.append(indent).append(primitive).append(' ').append(variable).append(" = rs.get")
+                    .append(Character.toUpperCase(primitive.charAt(0))).append(primitive.substring(1))
+                    .append('(').append(column).append(");\n");
+                value = "rs.wasNull() ? null : " + variable;
+                break;
+            case "java.lang.String":
+                value = "rs.getString(" + column + ")";
+                break;
+            case "java.math.BigDecimal":
+                value = "rs.getBigDecimal(" + column + ")";
+                break;
+            case "byte[]":
+                value = "rs.getBytes(" + column + ")";
+                break;
+            case "java.lang.Character":
+                out.append(indent).append("String ").append(variable).append(" = rs.getString(").append(column).append(");\n");
+                value = variable + " == null || " + variable + ".isEmpty() ? null : " + variable + ".charAt(0)";
+                break;
+            case "java.time.Instant":
+                out.append(indent).append("java.sql.Timestamp ").append(variable).append(" = rs.getTimestamp(").append(column).append(");\n");
+                value = variable + " == null ? null : " + variable + ".toInstant()";
+                break;
+            case "java.util.Date":
+                out.append(indent).append("java.sql.Timestamp ").append(variable).append(" = rs.getTimestamp(").append(column).append(");\n");
+                value = variable + " == null ? null : new java.util.Date(" + variable + ".getTime())";
+                break;
+            default:
+                if (isEnum(property.type)) {
+                    out.append(indent).append("String ").append(variable).append(" = rs.getString(").append(column).append(");\n");
+                    value = variable + " == null ? null : " + type + ".valueOf(" + variable + ")";
+                } else if (isParameterized(property.type)) {
+                    // only the raw type has a class literal
+                    value = "(" + property.type + ") rs.getObject(" + column + ", " + type + ".class)";
+                } else {
+                    value = "rs.getObject(" + column + ", " + type + ".class)";
+                }
+        }
+        out.append(indent).append(String.format(property.writer, value)).append('\n');
+    }
+
+    /**
+     * Appends the return of the property value, converted to a type JDBC drivers can bind, as
+     * {@code EntityModel} converts it.
+     */
+    private void appendValue(StringBuilder out, Property property) {
+        String indent = "                ";
+        String type = typeName(property.type);
+        String conversion = null;
+        if (type.equals("char")) {
+            out.append(indent).append("return String.valueOf(").append(property.reader).append(");\n");
+            return;
+        }
+        if (type.equals("java.lang.Character")) {
+            conversion = "v.toString()";
+        } else if (type.equals("java.time.Instant")) {
+            conversion = "java.sql.Timestamp.from(v)";
+        } else if (isEnum(property.type)) {
+            conversion = "v.name()";
+        }
+        if (conversion == null) {
+            out.append(indent).append("return ").append(property.reader).append(";\n");
+            return;
+        }
+        out.append(indent).append("{\n");
+        out.append(indent).append("    ").append(property.type).append(" v = ").append(property.reader).append(";\n");
+        out.append(indent).append("    return v == null ? null : ").append(conversion).append(";\n");
+        out.append(indent).append("}\n");
+    }
+
+    /**
+     * @return The {@code java.sql.Types} code to bind the type with, as {@code EntityModel} chooses it.
+     */
+    private String sqlType(TypeMirror type) {
+        String name = typeName(type);
+        if (isEnum(type)) {
+            return "java.sql.Types.VARCHAR";
+        }
+        switch (name) {
+            case "java.lang.String":
+                return "java.sql.Types.VARCHAR";
+            case "long": case "java.lang.Long":
+                return "java.sql.Types.BIGINT";
+            case "int": case "java.lang.Integer":
+                return "java.sql.Types.INTEGER";
+            case "short": case "java.lang.Short":
+                return "java.sql.Types.SMALLINT";
+            case "byte": case "java.lang.Byte":
+                return "java.sql.Types.TINYINT";
+            case "boolean": case "java.lang.Boolean":
+                return "java.sql.Types.BOOLEAN";
+            case "double": case "java.lang.Double":
+                return "java.sql.Types.DOUBLE";
+            case "float": case "java.lang.Float":
+                return "java.sql.Types.REAL";
+            case "char": case "java.lang.Character":
+                return "java.sql.Types.CHAR";
+            case "java.math.BigDecimal":
+                return "java.sql.Types.NUMERIC";
+            case "java.time.LocalDate": case "java.sql.Date":
+                return "java.sql.Types.DATE";
+            case "java.time.LocalTime": case "java.sql.Time":
+                return "java.sql.Types.TIME";
+            case "java.time.LocalDateTime": case "java.time.Instant": case "java.util.Date": case "java.sql.Timestamp":
+                return "java.sql.Types.TIMESTAMP";
+            case "java.time.OffsetDateTime":
+                return "java.sql.Types.TIMESTAMP_WITH_TIMEZONE";
+            case "byte[]":
+                return "java.sql.Types.VARBINARY";
+            default:
+                return "org.springframework.jdbc.core.SqlTypeValue.TYPE_UNKNOWN";
+        }
+    }
+
+    private String typeName(TypeMirror type) {
+        if (type.getKind() == TypeKind.DECLARED) {
+            return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+        }
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private String boxed(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString();
+        }
+        return typeName(type);
+    }
+
+    private static boolean isEnum(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    private static boolean isParameterized(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty();
+    }
+
+    private static void appendStrings(StringBuilder out, List<Property> properties, boolean columns) {
+        for (int i = 0; i < properties.size(); i++) {
+            out.append(i > 0 ? ", \"" : "\"").append(columns ? properties.get(i).column : properties.get(i).name).append('"');
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static final class Property {
+
+        private final String name;
+        private final String column;
+        private final TypeMirror type;
+        private final String reader;
+        /**
+         * Statement setting the property to the value in place of {@code %s}.
+         */
+        private final String writer;
+
+        private Property(String name, String column, TypeMirror type, String reader, String writer) {
+            this.name = name;
+            this.column = column;
+            this.type = type;
+            this.reader = reader;
+            this.writer = writer;
+        }
+    }
+}
@@ -1 +1,3 @@
 rootProject.name = "spring-simplicity-java"
+
+include("processor")
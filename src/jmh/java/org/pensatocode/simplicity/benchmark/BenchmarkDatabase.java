@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.benchmark;
+
+import org.pensatocode.simplicity.jdbc.AbstractJdbcRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory H2 database with a {@code notes} table, shared by the repository benchmarks.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    private final EmbeddedDatabase database;
+    private final SingleConnectionDataSource connection;
+    private final JdbcTemplate jdbcTemplate;
+
+    BenchmarkDatabase() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build();
+        try {
+            // the embedded data source opens a connection per statement, which would dominate every measure
+            connection = new SingleConnectionDataSource(database.getConnection(), true);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot open the benchmark database", e);
+        }
+        jdbcTemplate = new JdbcTemplate(connection);
+        jdbcTemplate.execute("CREATE TABLE notes ("
+            + " id BIGINT AUTO_INCREMENT PRIMARY KEY,"
+            + " author VARCHAR(256),"
+            + " contents VARCHAR(1000),"
+            + " created_time TIMESTAMP NOT NULL,"
+            + " likes INT NOT NULL)");
+    }
+
+    JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    AbstractJdbcRepository<Note, Long> repository(boolean generatedMapper) {
+        if (generatedMapper) {
+            return new AbstractJdbcRepository<>(jdbcTemplate, "notes", Note.class, "id") {};
+        }
+        return new AbstractJdbcRepository<>(jdbcTemplate, new NoteRowMapper(), "notes", Note.class, "id") {};
+    }
+
+    void truncate() {
+        jdbcTemplate.execute("TRUNCATE TABLE notes");
+    }
+
+    static List<Note> notes(int size) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Note> notes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            notes.add(new Note("author " + (i % 100), "note number " + i, now.minusMinutes(i), i % 50));
+        }
+        return notes;
+    }
+
+    @Override
+    public void close() {
+        connection.destroy();
+        database.shutdown();
+    }
+}
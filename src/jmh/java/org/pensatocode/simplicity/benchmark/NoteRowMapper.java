@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.benchmark;
+
+import org.pensatocode.simplicity.jdbc.mapper.TransactionalRowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hand-written mapper, the baseline of the generated {@link org.pensatocode.simplicity.jdbc.mapper.EntityRowMapper}.
+ */
+public class NoteRowMapper extends TransactionalRowMapper<Note> {
+
+    @Override
+    public Note mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Note note = new Note(
+            rs.getString("author"),
+            rs.getString("contents"),
+            convertToLocalDateTime(rs.getTimestamp("created_time")),
+            rs.getInt("likes"));
+        note.setId(rs.getLong("id"));
+        return note;
+    }
+
+    @Override
+    public Map<String, Object> mapColumns(Note note) {
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("id", note.getId());
+        columns.put("author", note.getAuthor());
+        columns.put("contents", note.getContents());
+        columns.put("created_time", note.getCreatedTime());
+        columns.put("likes", note.getLikes());
+        return columns;
+    }
+
+    @Override
+    public Map<String, Integer> mapTypes() {
+        Map<String, Integer> types = new HashMap<>();
+        types.put("id", Types.BIGINT);
+        types.put("author", Types.VARCHAR);
+        types.put("contents", Types.VARCHAR);
+        types.put("created_time", Types.TIMESTAMP);
+        types.put("likes", Types.INTEGER);
+        return types;
+    }
+}
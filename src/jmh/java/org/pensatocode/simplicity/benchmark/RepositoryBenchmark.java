@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pensatocode.simplicity.jdbc.AbstractJdbcRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository round trips against an in-memory H2 database, so the numbers are dominated by the
+ * work done in this library rather than by the network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    static final int ROWS = 10_000;
+    static final int BATCH = 100;
+
+    @State(Scope.Benchmark)
+    public static class Reads {
+
+        @Param({ "hand-written", "generated" })
+        public String mapper;
+
+        BenchmarkDatabase database;
+        AbstractJdbcRepository<Note, Long> repository;
+        Pageable shallowPage;
+        Pageable deepPage;
+
+        @Setup
+        public void setUp() {
+            database = new BenchmarkDatabase();
+            repository = database.repository("generated".equals(mapper));
+            repository.save(BenchmarkDatabase.notes(ROWS));
+            shallowPage = PageRequest.of(0, 25, Sort.by("id"));
+            deepPage = PageRequest.of(ROWS / 25 - 1, 25, Sort.by("id"));
+        }
+
+        @TearDown
+        public void tearDown() {
+            database.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Writes {
+
+        BenchmarkDatabase database;
+        AbstractJdbcRepository<Note, Long> repository;
+        List<Note> batch;
+
+        @Setup
+        public void setUp() {
+            database = new BenchmarkDatabase();
+            repository = database.repository(false);
+        }
+
+        @Setup(Level.Invocation)
+        public void newBatch() {
+            batch = BenchmarkDatabase.notes(BATCH);
+        }
+
+        @TearDown(Level.Iteration)
+        public void truncate() {
+            database.truncate();
+        }
+
+        @TearDown
+        public void tearDown() {
+            database.close();
+        }
+    }
+
+    @Benchmark
+    public Note findOne(Reads reads) {
+        return reads.repository.findOne(ThreadLocalRandom.current().nextLong(1, ROWS + 1));
+    }
+
+    @Benchmark
+    public Page<Note> findPageShallow(Reads reads) {
+        return reads.repository.findAll(reads.shallowPage);
+    }
+
+    @Benchmark
+    public Page<Note> findPageDeep(Reads reads) {
+        return reads.repository.findAll(reads.deepPage);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Note saveOneByOne(Writes writes) {
+        Note last = null;
+        for (Note note : writes.batch) {
+            last = writes.repository.save(note);
+        }
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Note> saveIterable(Writes writes) {
+        return writes.repository.save(writes.batch);
+    }
+}
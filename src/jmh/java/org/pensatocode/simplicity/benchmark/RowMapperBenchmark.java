@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pensatocode.simplicity.jdbc.mapper.EntityRowMapper;
+import org.pensatocode.simplicity.jdbc.mapper.TransactionalRowMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of the statement parameters of an entity, as done on every insert and update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMapperBenchmark {
+
+    private static final String[] COLUMNS = { "author", "contents", "created_time", "likes", "id" };
+
+    @Param({ "hand-written", "generated" })
+    public String mapper;
+
+    private TransactionalRowMapper<Note> rowMapper;
+    private Note note;
+
+    @Setup
+    public void setUp() {
+        rowMapper = "generated".equals(mapper) ? new EntityRowMapper<>(Note.class) : new NoteRowMapper();
+        note = BenchmarkDatabase.notes(1).get(0);
+        note.setId(42L);
+    }
+
+    @Benchmark
+    public Object[] columnsValues() throws NoSuchFieldException {
+        return rowMapper.columnsValues(note, COLUMNS);
+    }
+
+    @Benchmark
+    public int[] columnsTypes() throws NoSuchFieldException {
+        return rowMapper.columnsTypes(COLUMNS);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pensatocode.simplicity.jdbc.TableDescription;
+import org.pensatocode.simplicity.jdbc.sql.DefaultSqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.H2SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.LimitOffsetSqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.Oracle9SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.PostgreSqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SQL2008SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SqlStatements;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of generating each statement with every dialect, and of reading it back from {@link SqlStatements}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlGeneratorBenchmark {
+
+    @Param({ "default", "limit-offset", "sql2008", "oracle9", "postgresql", "h2" })
+    public String dialect;
+
+    private final TableDescription table = new TableDescription(
+        "notes", List.of("author", "contents", "created_time", "likes"), null, null, new String[]{ "id" });
+    private final String whereClause = "likes > 10";
+    private final Sort sort = Sort.by("createdTime").descending().and(Sort.by("id"));
+    private final Pageable page = PageRequest.of(20, 25, sort);
+
+    private SqlGenerator generator;
+    private SqlStatements statements;
+
+    @Setup
+    public void setUp() {
+        switch (dialect) {
+            case "limit-offset": generator = new LimitOffsetSqlGenerator(); break;
+            case "sql2008": generator = new SQL2008SqlGenerator(); break;
+            case "oracle9": generator = new Oracle9SqlGenerator(); break;
+            case "postgresql": generator = new PostgreSqlGenerator(); break;
+            case "h2": generator = new H2SqlGenerator(); break;
+            default: generator = new DefaultSqlGenerator();
+        }
+        statements = new SqlStatements(generator, table);
+    }
+
+    @Benchmark
+    public String insert() {
+        return generator.insert(table, true);
+    }
+
+    @Benchmark
+    public String update() {
+        return generator.update(table);
+    }
+
+    @Benchmark
+    public String selectByPK() {
+        return generator.selectByPK(table);
+    }
+
+    @Benchmark
+    public String selectSorted() {
+        return generator.selectAll(table, whereClause, sort);
+    }
+
+    @Benchmark
+    public String selectPageWithBoundaries() {
+        return generator.selectAll(table, whereClause, page);
+    }
+
+    @Benchmark
+    public String selectPage() {
+        return generator.selectPage(table, whereClause, sort);
+    }
+
+    @Benchmark
+    public String selectKeyset() {
+        return generator.selectKeyset(table, whereClause, sort, true);
+    }
+
+    @Benchmark
+    public String cachedSelectPage() {
+        return statements.selectPage(whereClause, sort);
+    }
+}
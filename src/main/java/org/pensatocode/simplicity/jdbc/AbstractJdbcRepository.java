@@ -17,38 +17,79 @@
  */
 package org.pensatocode.simplicity.jdbc;
 
+import org.pensatocode.simplicity.jdbc.cache.EntityCache;
+import org.pensatocode.simplicity.jdbc.count.CountStrategy;
+import org.pensatocode.simplicity.jdbc.count.RowCounter;
 import org.pensatocode.simplicity.jdbc.exception.NoRecordUpdatedException;
+import org.pensatocode.simplicity.jdbc.exception.VersionConflictException;
+import org.pensatocode.simplicity.jdbc.metrics.OperationTimer;
+import org.pensatocode.simplicity.jdbc.metrics.RepositoryMetrics;
+import org.pensatocode.simplicity.jdbc.routing.ReadOperation;
+import org.pensatocode.simplicity.jdbc.routing.ReadRouting;
 import org.pensatocode.simplicity.jdbc.sql.SqlGenerator;
 import org.pensatocode.simplicity.jdbc.sql.SqlGeneratorFactory;
+import org.pensatocode.simplicity.jdbc.sql.SqlStatements;
+import org.pensatocode.simplicity.jdbc.mapper.EntityMetadata;
+import org.pensatocode.simplicity.jdbc.mapper.EntityModel;
+import org.pensatocode.simplicity.jdbc.mapper.EntityRowMapper;
+import org.pensatocode.simplicity.jdbc.mapper.IdAccessor;
+import org.pensatocode.simplicity.jdbc.mapper.JdbcEntity;
 import org.pensatocode.simplicity.jdbc.mapper.TransactionalRowMapper;
+import org.pensatocode.simplicity.util.WeakIdentityMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.*;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.jdbc.JdbcUpdateAffectedIncorrectNumberOfRowsException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
-import java.beans.IntrospectionException;
-import java.beans.PropertyDescriptor;
+import javax.sql.DataSource;
 import java.io.Serializable;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static org.pensatocode.simplicity.util.IterableUtil.toList;
+import static org.pensatocode.simplicity.util.ArrayUtil.concat;
 import static org.pensatocode.simplicity.util.ArrayUtil.wrapToArray;
+import static org.springframework.jdbc.core.namedparam.NamedParameterUtils.buildValueArray;
+import static org.springframework.jdbc.core.namedparam.NamedParameterUtils.substituteNamedParameters;
 import static org.pensatocode.simplicity.util.StringUtil.convertToSnakeCase;
 
 /**
@@ -58,27 +99,107 @@ public abstract class AbstractJdbcRepository<T, ID extends Serializable> impleme
 
     private static final Logger log = LoggerFactory.getLogger(AbstractJdbcRepository.class);
 
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Upper bound of bind parameters in one multi-row INSERT (PostgreSQL's protocol limit).
+     */
+    static final int MAX_INSERT_PARAMETERS = 32767;
+
+    /**
+     * Sizes the IN lists of {@link #findAll(Iterable)} are padded to, so a handful of statements
+     * serve any number of ids. The largest one is Oracle's IN list limit.
+     */
+    static final int[] IN_LIST_SIZES = { 1, 4, 16, 64, 256, 1000 };
+
+    /**
+     * Maximum number of ids bound in one array parameter, for dialects that support them.
+     */
+    static final int MAX_ARRAY_PARAMETER = 10000;
+
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private static final Object[] NO_PARAMS = new Object[0];
+
     protected TransactionalRowMapper<T> rowMapper;
     protected JdbcTemplate jdbcTemplate;
     protected final TableDescription tableDesc;
-    protected SqlGenerator sqlGenerator;
     protected String idName;
+    protected final IdAccessor<T, ID> idAccessor;
+    protected final Class<T> entityClass;
 
+    /**
+     * Only set together, see {@link #setSqlGenerator(SqlGenerator)}.
+     */
+    private SqlGenerator sqlGenerator;
+    private SqlStatements statements;
+    private final String[] insertColumns;
+    private String[] updateColumns;
+    private EntityModel.Property versionProperty;
+    private final String[] upsertColumns;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
     private Boolean initialized = false;
-    AtomicLong counter = new AtomicLong(-1L);
+    private CountStrategy countStrategy = CountStrategy.atomic();
+    private volatile EntityCache<ID, T> entityCache;
+    private volatile RepositoryMetrics metrics = RepositoryMetrics.NONE;
+    private volatile WeakIdentityMap<T, Object[]> snapshots;
+    private volatile ReadRouting readRouting;
+    private final ConcurrentMap<DataSource, SqlStatements> replicaStatements = new ConcurrentHashMap<>();
+    private final String repositoryName;
+    private final RowCounter rowCounter = new RowCounter() {
+        @Override
+        public long exactCount() {
+            long start = System.nanoTime();
+            long count = count();
+            metrics.countRefreshed(repositoryName, System.nanoTime() - start);
+            return count;
+        }
 
+        @Override
+        public long estimatedCount() {
+            return AbstractJdbcRepository.this.estimatedCount();
+        }
+    };
+
+    /**
+     * When the entity is annotated with {@link JdbcEntity}, its {@link EntityMetadata} generated at compile time
+     * provides the columns, the default row mapper and the id accessor, and the entity is not introspected.
+     *
+     * @param rowMapper The row mapper, or {@code null} to use the generated one, or an {@link EntityRowMapper}
+     *                  built from the entity's fields.
+     */
+    @SuppressWarnings("unchecked")
     public AbstractJdbcRepository(@Autowired JdbcTemplate jdbcTemplate, TransactionalRowMapper<T> rowMapper, String tableName, String fromClause, Class<T> jClass, String idName) {
+        EntityMetadata<T, ?> metadata = EntityMetadata.of(jClass);
+        List<String> allProperties;
+        List<String> allColumns;
+        if (metadata != null) {
+            allProperties = metadata.getProperties();
+            allColumns = metadata.getColumns();
+            this.rowMapper = (rowMapper != null) ? rowMapper : metadata.getRowMapper();
+            this.idAccessor = metadata.getIdName().equals(idName)
+                ? (IdAccessor<T, ID>) metadata.getIdAccessor() : IdAccessor.of(jClass, idName);
+        } else {
+            EntityModel<T> entityModel = EntityModel.of(jClass);
+            allProperties = new ArrayList<>(entityModel.getProperties().size());
+            allColumns = new ArrayList<>(entityModel.getProperties().size());
+            for (EntityModel.Property p : entityModel.getProperties()) {
+                allProperties.add(p.getName());
+                allColumns.add(p.getColumn());
+            }
+            this.rowMapper = (rowMapper != null) ? rowMapper : new EntityRowMapper<>(entityModel);
+            this.idAccessor = IdAccessor.of(jClass, idName);
+        }
         this.jdbcTemplate = jdbcTemplate;
-        this.rowMapper = rowMapper;
         this.idName = idName;
-        Field[] allProperties = jClass.getDeclaredFields();
-        List<String> columns = new ArrayList<>(allProperties.length-1);
-        int i = 0;
-        for (Field f: allProperties) {
-            if(f.getName().equals(idName)) {
+        this.entityClass = jClass;
+        List<String> columns = new ArrayList<>(allColumns.size());
+        for (int i = 0; i < allColumns.size(); i++) {
+            if (allProperties.get(i).equals(idName)) {
                 continue;
             }
-            columns.add( convertToSnakeCase(f.getName()) );
+            columns.add(allColumns.get(i));
         }
         String selectClause = null;
         if (columns.size() > 0) {
@@ -91,6 +212,11 @@ public abstract class AbstractJdbcRepository<T, ID extends Serializable> impleme
         String[] ids = { idName };
         this.tableDesc = new TableDescription(tableName, columns, selectClause, fromClause, ids);
         this.sqlGenerator = SqlGeneratorFactory.getInstance().getGenerator(jdbcTemplate);
+        this.statements = new SqlStatements(sqlGenerator, tableDesc);
+        this.insertColumns = wrapToArray(String.class, columns);
+        this.updateColumns = wrapToArray(String.class, columns, idName);
+        this.upsertColumns = wrapToArray(String.class, List.of(idName), columns.toArray(new String[0]));
+        this.repositoryName = getClass().getSimpleName().isEmpty() ? tableName : getClass().getSimpleName();
         log.info("SqlGenerator in " + this.getClass().getSimpleName() +
                 " is " + this.sqlGenerator.getClass().getSimpleName());
     }
@@ -107,106 +233,789 @@ public abstract class AbstractJdbcRepository<T, ID extends Serializable> impleme
         this(jdbcTemplate, rowMapper, convertToSnakeCase(jClass.getSimpleName()), null, jClass, "id");
     }
 
+    public AbstractJdbcRepository(@Autowired JdbcTemplate jdbcTemplate, String tableName, Class<T> jClass, String idName) {
+        this(jdbcTemplate, null, tableName, null, jClass, idName);
+    }
+
+    public AbstractJdbcRepository(@Autowired JdbcTemplate jdbcTemplate, Class<T> jClass) {
+        this(jdbcTemplate, null, convertToSnakeCase(jClass.getSimpleName()), null, jClass, "id");
+    }
+
     @Override
     public void afterPropertiesSet() {
         initialized = true;
     }
 
+    @Override
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public SqlGenerator getSqlGenerator() {
+        return sqlGenerator;
+    }
+
+    /**
+     * Replaces the generator chosen by {@link SqlGeneratorFactory} for this repository and rebuilds its statements.
+     */
+    public void setSqlGenerator(SqlGenerator sqlGenerator) {
+        Assert.notNull(sqlGenerator, "The SQL generator must not be null.");
+        this.statements = new SqlStatements(sqlGenerator, tableDesc);
+        this.sqlGenerator = sqlGenerator;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize Maximum number of rows sent to the database in one JDBC batch by {@link #save(Iterable)}.
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "The batch size must be positive.");
+        this.batchSize = batchSize;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @param fetchSize Number of rows fetched per round trip by the streaming and callback queries.
+     */
+    public void setFetchSize(int fetchSize) {
+        Assert.isTrue(fetchSize > 0, "The fetch size must be positive.");
+        this.fetchSize = fetchSize;
+    }
+
+    public EntityCache<ID, T> getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * @param entityCache Cache of {@link #findOne(Object)} and {@link #exists(Object)}, or {@code null} (the default)
+     *                    to always read from the database. Writes of this repository invalidate their entries,
+     *                    and rows read in a read-write transaction aren't cached.
+     */
+    public void setEntityCache(EntityCache<ID, T> entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics Receives the latency, phases and row counts of the operations of this repository;
+     *                {@link RepositoryMetrics#NONE} (the default) doesn't even time them.
+     */
+    public void setMetrics(RepositoryMetrics metrics) {
+        Assert.notNull(metrics, "The metrics must not be null, use RepositoryMetrics.NONE.");
+        this.metrics = metrics;
+    }
+
+    public CountStrategy getCountStrategy() {
+        return countStrategy;
+    }
+
+    /**
+     * @param countStrategy How {@link #getAtomicCount()} and the pages of {@link #findAll(Pageable)} count
+     *                      the table rows; a new instance per repository, see {@link CountStrategy}.
+     */
+    public void setCountStrategy(CountStrategy countStrategy) {
+        Assert.notNull(countStrategy, "The count strategy must not be null.");
+        this.countStrategy = countStrategy;
+    }
+
+    public boolean isSnapshotTracking() {
+        return snapshots != null;
+    }
+
+    /**
+     * @param snapshotTracking Whether to keep a snapshot of the column values of every entity read or written by
+     *                         this repository, so that {@link #update(Object)} only sets the columns that changed
+     *                         since, and skips the statement when none did. Snapshots are dropped with their entity,
+     *                         and those taken in a transaction are dropped when it rolls back.
+     *                         Values are compared with {@code equals}: replace mutable values instead of changing them.
+     */
+    public void setSnapshotTracking(boolean snapshotTracking) {
+        this.snapshots = snapshotTracking ? new WeakIdentityMap<>() : null;
+    }
+
+    public ReadRouting getReadRouting() {
+        return readRouting;
+    }
+
+    /**
+     * @param readRouting Sends the reads of this repository to replicas, see {@link ReadRouting};
+     *                    {@code null} (the default) to read from the primary {@link JdbcTemplate}.
+     */
+    public void setReadRouting(ReadRouting readRouting) {
+        this.replicaStatements.clear();
+        this.readRouting = readRouting;
+    }
+
+    /**
+     * @param versionColumn The column incremented on every update of a row, read by {@link #findVersion(Serializable)};
+     *                      {@code null} (the default) if the table has none. When the entity maps it, updates are
+     *                      checked against it, see {@link #update(Object)}.
+     */
+    public void setVersionColumn(String versionColumn) {
+        tableDesc.setVersionColumn(versionColumn);
+        List<String> columns = new ArrayList<>(tableDesc.getColumns());
+        if (tableDesc.isVersionChecked()) {
+            columns.remove(versionColumn);
+            this.updateColumns = wrapToArray(String.class, columns, idName, versionColumn);
+            this.versionProperty = EntityModel.of(entityClass).getProperty(versionColumn);
+            if (versionProperty == null) {
+                throw new InvalidDataAccessApiUsageException(
+                    entityClass.getSimpleName() + " has no field for the version column " + versionColumn);
+            }
+        } else {
+            this.updateColumns = wrapToArray(String.class, columns, idName);
+            this.versionProperty = null;
+        }
+        setSqlGenerator(sqlGenerator);
+        replicaStatements.clear();
+    }
+
+    /**
+     * @param lastModifiedColumn The timestamp column set on every insert and update of a row, read by
+     *                           {@link #findVersion(Serializable)}; {@code null} (the default) if the table has none.
+     */
+    public void setLastModifiedColumn(String lastModifiedColumn) {
+        tableDesc.setLastModifiedColumn(lastModifiedColumn);
+        setSqlGenerator(sqlGenerator);
+        replicaStatements.clear();
+    }
+
     ////////// Repository methods //////////
 
     @Override
     @Transactional(readOnly=true)
     public Long count() {
-        return jdbcTemplate.queryForObject(sqlGenerator.count(tableDesc), Long.class);
+        return count(null);
     }
 
     @Override
-    public Long getAtomicCount() {
-        if (counter.get() == -1L) {
-            startCounter();
+    @Transactional(readOnly=true)
+    public Long count(String whereClause) {
+        return count(whereClause, NO_PARAMS);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public Long count(String whereClause, Object... params) {
+        OperationTimer timer = startTimer("count");
+        try {
+            Long count = read((template, sql) -> {
+                long mark = timer.mark();
+                String query = sql.count(whereClause);
+                timer.sqlBuilt(mark);
+                return template.queryForObject(query, Long.class, params);
+            });
+            timer.rows(1);
+            return count;
+        } finally {
+            timer.stop();
         }
-        return counter.get();
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public Long count(String whereClause, Map<String, ?> params) {
+        MapSqlParameterSource source = new MapSqlParameterSource(params);
+        ParsedSql parsed = parseNamed(whereClause);
+        return count(substituteNamedParameters(parsed, source), namedValues(parsed, source));
+    }
+
+    @Override
+    public Long getAtomicCount() {
+        return countStrategy.count(rowCounter);
     }
 
     @Override
     @Transactional(readOnly=true)
     public List<T> findAll() {
-        return jdbcTemplate.query(sqlGenerator.selectAll(tableDesc), rowMapper);
+        return findAll(null, Sort.unsorted());
     }
 
     @Override
     @Transactional(readOnly=true)
     public List<T> findAll(Iterable<ID> ids) {
-        List<ID> idsList = toList(ids);
-        if (idsList.isEmpty()) {
+        Set<ID> distinctIds = distinct(ids);
+        if (distinctIds.isEmpty()) {
             return Collections.emptyList();
         }
-        return jdbcTemplate.query(sqlGenerator.selectByPK(tableDesc), rowMapper, idsList);
+        OperationTimer timer = startTimer("findAllById");
+        try {
+            timer.batchSize(distinctIds.size());
+            List<ID> idsList = new ArrayList<>(distinctIds);
+            Map<Object, T> found = new HashMap<>(idsList.size() * 4 / 3 + 1);
+            read((template, sql) -> {
+                boolean arrays = sql.getGenerator().supportsArrayParameter();
+                int chunkSize = arrays ? MAX_ARRAY_PARAMETER : IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+                found.clear();
+                for (int from = 0; from < idsList.size(); from += chunkSize) {
+                    List<ID> chunk = idsList.subList(from, Math.min(from + chunkSize, idsList.size()));
+                    List<T> rows = arrays ? findAllByArray(template, sql, chunk, timer) : findAllByInList(template, sql, chunk, timer);
+                    for (T row : rows) {
+                        found.put(idFromEntity(row), row);
+                    }
+                }
+                return found;
+            });
+            List<T> result = new ArrayList<>(found.size());
+            for (ID id : idsList) {
+                T entity = found.get(id);
+                if (entity != null) {
+                    result.add(entity);
+                }
+            }
+            timer.rows(result.size());
+            return result;
+        } finally {
+            timer.stop();
+        }
     }
 
     @Override
     @Transactional(readOnly=true)
     public List<T> findAll(Sort sort) {
-        return jdbcTemplate.query(sqlGenerator.selectAll(tableDesc, sort), rowMapper);
+        return findAll(null, sort);
     }
 
     @Override
     @Transactional(readOnly=true)
     public Page<T> findAll(Pageable pageable) {
-        List<T> list = jdbcTemplate.query(sqlGenerator.selectAll(tableDesc, pageable), rowMapper);
-        if (counter.get() == -1L) {
-            startCounter();
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(findAll(pageable.getSort()));
+        }
+        OperationTimer timer = startTimer("findPage");
+        try {
+            List<T> list = read((template, sql) -> {
+                long mark = timer.mark();
+                String query = sql.selectPage(null, pageable.getSort());
+                timer.sqlBuilt(mark);
+                return template.query(query, sql.pageParams(pageable), timer.timeMapping(entityMapper()));
+            });
+            timer.rows(list.size());
+            return PageableExecutionUtils.getPage(list, pageable, this::getAtomicCount);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Reads the rows of the page and hands them to the given callback as they arrive, without mapping them
+     * to entities. The total is not counted.
+     */
+    @Override
+    @Transactional(readOnly=true)
+    public void findAll(Pageable pageable, RowCallbackHandler callback) {
+        if (pageable.isUnpaged()) {
+            findAll(null, pageable.getSort(), callback);
+            return;
+        }
+        OperationTimer timer = startTimer("findPage");
+        try {
+            timer.rows(readRows(callback, rows -> (template, sql) -> {
+                long mark = timer.mark();
+                String query = sql.selectPage(null, pageable.getSort());
+                timer.sqlBuilt(mark);
+                template.query(query, rows, sql.pageParams(pageable));
+                return null;
+            }));
+        } finally {
+            timer.stop();
         }
-        return new PageImpl<>(list, pageable, counter.get());
     }
 
     @Override
     @Transactional(readOnly=true)
     public List<T> findAll(String whereClause) {
-        return jdbcTemplate.query(sqlGenerator.selectAll(tableDesc, whereClause), rowMapper);
+        return findAll(whereClause, Sort.unsorted());
     }
 
     @Override
     @Transactional(readOnly=true)
     public List<T> findAll(String whereClause, Sort sort) {
-        return jdbcTemplate.query(sqlGenerator.selectAll(tableDesc, whereClause, sort), rowMapper);
+        return findAll(whereClause, NO_PARAMS, sort);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public List<T> findAll(String whereClause, Object[] params, Sort sort) {
+        OperationTimer timer = startTimer("findAll");
+        try {
+            List<T> list = read((template, sql) -> {
+                long mark = timer.mark();
+                String query = sql.selectAll(whereClause, sort);
+                timer.sqlBuilt(mark);
+                return template.query(query, params, timer.timeMapping(entityMapper()));
+            });
+            timer.rows(list.size());
+            return list;
+        } finally {
+            timer.stop();
+        }
     }
 
     @Override
     @Transactional(readOnly=true)
     public Page<T> findAll(String whereClause, Pageable pageable) {
-        List<T> list = jdbcTemplate.query(sqlGenerator.selectAll(tableDesc, whereClause, pageable), rowMapper);
-        if (counter.get() == -1L) {
-            startCounter();
+        return findAll(whereClause, NO_PARAMS, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public List<T> findAll(String whereClause, Map<String, ?> params, Sort sort) {
+        MapSqlParameterSource source = new MapSqlParameterSource(params);
+        ParsedSql parsed = parseNamed(whereClause);
+        return findAll(substituteNamedParameters(parsed, source), namedValues(parsed, source), sort);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public Page<T> findAll(String whereClause, Map<String, ?> params, Pageable pageable) {
+        MapSqlParameterSource source = new MapSqlParameterSource(params);
+        ParsedSql parsed = parseNamed(whereClause);
+        return findAll(substituteNamedParameters(parsed, source), namedValues(parsed, source), pageable);
+    }
+
+    /**
+     * @param params The values of the where clause, bound before the page boundaries.
+     */
+    @Override
+    @Transactional(readOnly=true)
+    public Page<T> findAll(String whereClause, Object[] params, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(findAll(whereClause, params, pageable.getSort()));
+        }
+        OperationTimer timer = startTimer("findPage");
+        try {
+            List<T> list = read((template, sql) -> {
+                long mark = timer.mark();
+                String query = sql.selectPage(whereClause, pageable.getSort());
+                timer.sqlBuilt(mark);
+                return template.query(query, concat(params, sql.pageParams(pageable)), timer.timeMapping(entityMapper()));
+            });
+            timer.rows(list.size());
+            return PageableExecutionUtils.getPage(list, pageable, () -> count(whereClause, params));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * @param whereClause The where clause, or {@code null} to read all rows.
+     */
+    @Override
+    @Transactional(readOnly=true)
+    public <P> List<P> findAll(Projection<P> projection, String whereClause, Sort sort) {
+        return findAll(projection, whereClause, NO_PARAMS, sort);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public <P> List<P> findAll(Projection<P> projection, String whereClause, Object[] params, Sort sort) {
+        OperationTimer timer = startTimer("findProjection");
+        try {
+            List<P> list = read((template, sql) -> {
+                long mark = timer.mark();
+                String query = sql.project(projection).selectAll(whereClause, sort);
+                timer.sqlBuilt(mark);
+                return template.query(query, params, timer.timeMapping(projection.getRowMapper()));
+            });
+            timer.rows(list.size());
+            return list;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * @param whereClause The where clause, or {@code null} to page over all rows.
+     */
+    @Override
+    @Transactional(readOnly=true)
+    public <P> Page<P> findAll(Projection<P> projection, String whereClause, Pageable pageable) {
+        return findAll(projection, whereClause, NO_PARAMS, pageable);
+    }
+
+    /**
+     * @param params The values of the where clause, bound before the page boundaries.
+     */
+    @Override
+    @Transactional(readOnly=true)
+    public <P> Page<P> findAll(Projection<P> projection, String whereClause, Object[] params, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(findAll(projection, whereClause, params, pageable.getSort()));
+        }
+        OperationTimer timer = startTimer("findProjectionPage");
+        try {
+            List<P> list = read((template, sql) -> {
+                long mark = timer.mark();
+                SqlStatements projected = sql.project(projection);
+                String query = projected.selectPage(whereClause, pageable.getSort());
+                timer.sqlBuilt(mark);
+                return template.query(query, concat(params, projected.pageParams(pageable)), timer.timeMapping(projection.getRowMapper()));
+            });
+            timer.rows(list.size());
+            return PageableExecutionUtils.getPage(list, pageable, () -> count(whereClause, params));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public Slice<T> findSlice(Pageable pageable) {
+        return findSlice(null, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public Slice<T> findSlice(String whereClause, Pageable pageable) {
+        return findSlice(whereClause, NO_PARAMS, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public Slice<T> findSlice(String whereClause, Object[] params, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(findAll(whereClause, params, pageable.getSort()), pageable, false);
+        }
+        OperationTimer timer = startTimer("findSlice");
+        try {
+            List<T> list = read((template, sql) -> {
+                long mark = timer.mark();
+                String query = sql.selectPage(whereClause, pageable.getSort());
+                timer.sqlBuilt(mark);
+                return template.query(query, concat(params, sql.sliceParams(pageable)), timer.timeMapping(entityMapper()));
+            });
+            timer.rows(list.size());
+            boolean hasNext = list.size() > pageable.getPageSize();
+            return new SliceImpl<>(hasNext ? list.subList(0, pageable.getPageSize()) : list, pageable, hasNext);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public Stream<T> streamAll() {
+        return streamAll(null, Sort.unsorted());
+    }
+
+    /**
+     * Streams the rows through a forward-only, read-only cursor, fetching {@link #getFetchSize()} rows at a time.
+     * The stream holds a connection until it is closed or fully consumed, so use it in a try-with-resources block.
+     * Outside a transaction, auto-commit is turned off on that connection until then, since drivers such as
+     * PostgreSQL's only honour the fetch size inside a transaction.
+     */
+    @Override
+    public Stream<T> streamAll(String whereClause, Sort sort) {
+        return streamAll(whereClause, NO_PARAMS, sort);
+    }
+
+    @Override
+    public Stream<T> streamAll(String whereClause, Object[] params, Sort sort) {
+        return read((template, sql) -> queryForStream(template, sql.selectAll(whereClause, sort), entityMapper(), params));
+    }
+
+    @Override
+    public void findAll(RowCallbackHandler callback) {
+        findAll(null, Sort.unsorted(), callback);
+    }
+
+    /**
+     * Reads the rows through a forward-only, read-only cursor, fetching {@link #getFetchSize()} rows at a time,
+     * and hands them to the given callback as they arrive.
+     */
+    @Override
+    @Transactional(readOnly=true)
+    public void findAll(String whereClause, Sort sort, RowCallbackHandler callback) {
+        OperationTimer timer = startTimer("findAll");
+        try {
+            timer.rows(readRows(callback, rows -> (template, sql) -> {
+                long mark = timer.mark();
+                String query = sql.selectAll(whereClause, sort);
+                timer.sqlBuilt(mark);
+                template.query(cursorStatement(query), rows);
+                return null;
+            }));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public KeysetSlice<T> findAllAfter(KeysetCursor cursor, Sort sort, int limit) {
+        return findAllAfter(null, cursor, sort, limit);
+    }
+
+    /**
+     * Keyset (seek) pagination: reads up to {@code limit} rows that follow the cursor in the given order.
+     * The primary key is appended to the sort as a tiebreaker, so the cursor holds one value per sort
+     * column plus the primary key. Unlike offset paging, the cost of a page doesn't grow with its depth.
+     *
+     * @param cursor The cursor of the previous slice, or {@code null} to read the first one.
+     */
+    @Override
+    @Transactional(readOnly=true)
+    public KeysetSlice<T> findAllAfter(String whereClause, KeysetCursor cursor, Sort sort, int limit) {
+        Assert.isTrue(limit > 0, "The limit must be positive.");
+        Sort keysetSort = keysetSort(sort);
+        String[] keyColumns = keysetSort.stream()
+            .map(order -> convertToSnakeCase(order.getProperty()))
+            .toArray(String[]::new);
+        Object[] cursorValues = null;
+        if (cursor != null) {
+            Assert.isTrue(cursor.size() == keyColumns.length, "The cursor doesn't match the sort order.");
+            cursorValues = cursor.getValues();
+        }
+        OperationTimer timer = startTimer("findAllAfter");
+        try {
+            Object[] seek = cursorValues;
+            List<T> rows = read((template, sql) -> {
+                long mark = timer.mark();
+                String query = sql.selectKeyset(whereClause, keysetSort, cursor != null);
+                timer.sqlBuilt(mark);
+                return template.query(
+                    query, sql.getGenerator().keysetParams(keysetSort, seek, limit + 1), timer.timeMapping(entityMapper()));
+            });
+            timer.rows(rows.size());
+            if (rows.size() <= limit) {
+                return new KeysetSlice<>(rows, null);
+            }
+            List<T> content = rows.subList(0, limit);
+            return new KeysetSlice<>(content, KeysetCursor.of(columnsValues(content.get(limit - 1), keyColumns)));
+        } finally {
+            timer.stop();
         }
-        return new PageImpl<>(list, pageable, counter.get());
     }
 
     @Override
     @Transactional(readOnly=true)
     public T findOne(ID id) {
-        List<T> resultList =  jdbcTemplate.query(sqlGenerator.selectByPK(tableDesc), wrapToArray(id), rowMapper);
-        return resultList.isEmpty() ? null : resultList.get(0);
+        EntityCache<ID, T> cache = entityCache;
+        if (cache == null) {
+            return selectOne(id);
+        }
+        // a read-write transaction may read its own uncommitted rows, which aren't cached
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+            && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            T cached = cache.getIfPresent(id);
+            return (cached != null) ? cached : selectOne(id);
+        }
+        return cache.get(id, this::selectOne);
+    }
+
+    private T selectOne(ID id) {
+        OperationTimer timer = startTimer("findOne");
+        try {
+            List<T> resultList = read((template, sql) ->
+                template.query(sql.selectByPK(), wrapToArray(id), timer.timeMapping(entityMapper())));
+            timer.rows(resultList.size());
+            return resultList.isEmpty() ? null : resultList.get(0);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * @return The version of the row, or {@code null} if it doesn't exist or the table has neither a version
+     *         nor a last modified column.
+     */
+    @Override
+    @Transactional(readOnly=true)
+    public EntityVersion findVersion(ID id) {
+        if (!tableDesc.isVersioned()) {
+            return null;
+        }
+        OperationTimer timer = startTimer("findVersion");
+        try {
+            List<EntityVersion> versions = read((template, sql) -> template.query(sql.selectVersionByPK(), wrapToArray(id),
+                (rs, rowNum) -> EntityVersion.of(rs.getObject(1), rs.getTimestamp(2))));
+            timer.rows(versions.size());
+            return versions.isEmpty() ? null : versions.get(0);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public EntityVersion findVersion() {
+        return findAllVersion(null);
+    }
+
+    /**
+     * The version of a set of rows needs a {@link #setLastModifiedColumn(String) last modified column}: their
+     * count and versions alone don't change when a row is replaced by another of the same version.
+     *
+     * @return The version of the rows matching the where clause, which changes whenever one of them is inserted,
+     *         updated or deleted; {@code null} if the table has no last modified column.
+     */
+    @Transactional(readOnly=true)
+    public EntityVersion findAllVersion(String whereClause) {
+        if (tableDesc.getLastModifiedColumn() == null) {
+            return null;
+        }
+        OperationTimer timer = startTimer("findVersion");
+        try {
+            EntityVersion version = read((template, sql) -> template.queryForObject(sql.selectVersion(whereClause),
+                (rs, rowNum) -> EntityVersion.ofRows(rs.getLong(1), rs.getObject(2), rs.getTimestamp(3))));
+            timer.rows(1);
+            return version;
+        } finally {
+            timer.stop();
+        }
     }
 
     @Override
     @Transactional(readOnly=true)
     public Boolean exists(ID id) {
-        return !jdbcTemplate.queryForList(
-            sqlGenerator.existsByPK(tableDesc), wrapToArray(id), Integer.class).isEmpty();
+        EntityCache<ID, T> cache = entityCache;
+        // peeked, as an existence check isn't a read of the entity for the cache statistics
+        if (cache != null && cache.peek(id) != null) {
+            return true;
+        }
+        OperationTimer timer = startTimer("exists");
+        try {
+            boolean exists = read((template, sql) -> !template.queryForList(
+                sql.existsByPK(), wrapToArray(id), Integer.class).isEmpty());
+            timer.rows(exists ? 1 : 0);
+            return exists;
+        } finally {
+            timer.stop();
+        }
     }
 
     @Override
     public Integer delete(ID id) {
-        Integer lineCount = jdbcTemplate.update(sqlGenerator.deleteByPK(tableDesc), id);
-        decreaseCounter(lineCount);
-        return lineCount;
+        OperationTimer timer = startTimer("delete");
+        try {
+            Integer lineCount = jdbcTemplate.update(statements.deleteByPK(), id);
+            evictFromCache(Collections.singletonList(id));
+            markWritten();
+            decreaseCounter(lineCount);
+            timer.rows(lineCount);
+            return lineCount;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Deletes the rows of the given ids with one statement per chunk: an array parameter where the dialect
+     * {@link SqlGenerator#supportsArrayParameter() supports it}, otherwise an IN list padded to a few fixed sizes.
+     */
+    @Override
+    public Integer delete(Iterable<ID> ids) {
+        List<ID> idsList = new ArrayList<>(distinct(ids));
+        if (idsList.isEmpty()) {
+            return 0;
+        }
+        OperationTimer timer = startTimer("deleteAllById");
+        try {
+            timer.batchSize(idsList.size());
+            boolean arrays = sqlGenerator.supportsArrayParameter();
+            int chunkSize = arrays ? MAX_ARRAY_PARAMETER : IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+            int lineCount = 0;
+            for (int from = 0; from < idsList.size(); from += chunkSize) {
+                List<ID> chunk = idsList.subList(from, Math.min(from + chunkSize, idsList.size()));
+                if (arrays) {
+                    final String deleteQuery = statements.deleteByPKArray();
+                    final String arrayType = sqlArrayType(chunk.get(0).getClass());
+                    lineCount += jdbcTemplate.update(con -> {
+                        PreparedStatement ps = con.prepareStatement(deleteQuery);
+                        ps.setArray(1, con.createArrayOf(arrayType, chunk.toArray()));
+                        return ps;
+                    });
+                } else {
+                    Object[] params = padInList(chunk);
+                    lineCount += jdbcTemplate.update(statements.deleteByPKs(params.length), params);
+                }
+            }
+            evictFromCache(idsList);
+            markWritten();
+            decreaseCounter(lineCount);
+            timer.rows(lineCount);
+            return lineCount;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Deletes the rows of the given ids in JDBC batches of {@link #getBatchSize()} statements, one per id,
+     * within one transaction.
+     *
+     * @return The number of rows deleted for each id, in order: 0 for the ids without a row.
+     */
+    @Override
+    @Transactional
+    public int[] deleteEach(Iterable<ID> ids) {
+        List<Object[]> values = new ArrayList<>();
+        List<ID> idsList = new ArrayList<>();
+        for (ID id : ids) {
+            values.add(new Object[] { id });
+            idsList.add(id);
+        }
+        if (idsList.isEmpty()) {
+            return new int[0];
+        }
+        OperationTimer timer = startTimer("deleteEach");
+        try {
+            timer.batchSize(idsList.size());
+            int[] rowsAffected = executeBatch(statements.deleteByPK(), values, new int[] { SqlTypeValue.TYPE_UNKNOWN });
+            int lineCount = 0;
+            for (int count : rowsAffected) {
+                lineCount += Math.max(count, 0);
+            }
+            evictFromCache(idsList);
+            markWritten();
+            decreaseCounter(lineCount);
+            timer.rows(lineCount);
+            return rowsAffected;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public Integer deleteAll() {
+        return deleteAll(null);
+    }
+
+    /**
+     * Deletes the rows matching the where clause; the entity cache is cleared, since the deleted ids are unknown.
+     */
+    @Override
+    public Integer deleteAll(String whereClause, Object... params) {
+        OperationTimer timer = startTimer("deleteAll");
+        try {
+            Integer lineCount = jdbcTemplate.update(statements.deleteAll(whereClause), params);
+            clearCache();
+            markWritten();
+            decreaseCounter(lineCount);
+            timer.rows(lineCount);
+            return lineCount;
+        } finally {
+            timer.stop();
+        }
     }
 
     @Override
     public <S extends T> S save(S entity) {
         ID id = idFromEntity(entity);
-        if (id == null || "0".equals(id.toString())) {
+        if (isNew(id)) {
             ID result = create(entity);
             setIdToEntity(entity, result);
         } else {
@@ -215,166 +1024,967 @@ public abstract class AbstractJdbcRepository<T, ID extends Serializable> impleme
         return entity;
     }
 
+    /**
+     * Saves the given entities in JDBC batches of {@link #getBatchSize()} rows: new entities are inserted
+     * (with a multi-row INSERT when the dialect supports it) and get their generated keys back, the others
+     * are updated. The batches run in one transaction, so that a failed one leaves no row written.
+     */
     @Override
+    @Transactional
     public <S extends T> List<S> save(Iterable<S> entities) {
         List<S> ret = new ArrayList<>();
+        List<S> inserts = new ArrayList<>();
+        List<S> updates = new ArrayList<>();
         for (S s : entities) {
-            ret.add(save(s));
+            if (isNew(idFromEntity(s))) {
+                inserts.add(s);
+            } else {
+                updates.add(s);
+            }
+            ret.add(s);
+        }
+        OperationTimer timer = startTimer("saveAll");
+        try {
+            timer.batchSize(ret.size());
+            for (int from = 0; from < inserts.size(); from += batchSize) {
+                insertBatch(inserts.subList(from, Math.min(from + batchSize, inserts.size())));
+            }
+            if (snapshots != null) {
+                updates.removeIf(this::isUnchanged);
+            }
+            if (!updates.isEmpty()) {
+                updateBatch(updates);
+            }
+            if (snapshots != null) {
+                ret.forEach(this::takeSnapshot);
+            }
+            markWritten();
+            if (entityCache != null) {
+                List<ID> ids = new ArrayList<>(ret.size());
+                for (S s : ret) {
+                    ids.add(idFromEntity(s));
+                }
+                evictFromCache(ids);
+            }
+            timer.rows(ret.size());
+            return ret;
+        } finally {
+            timer.stop();
         }
-        return ret;
     }
 
     @Override
     public <S extends T> Integer update(S entity, ID id) {
         ID entityId = idFromEntity(entity);
-        Assert.state(entityId == id, "The item you are trying to update is not the same as the pointed repository location.");
+        Assert.state(Objects.equals(entityId, id), "The item you are trying to update is not the same as the pointed repository location.");
         return this.update(entity);
     }
 
+    /**
+     * With {@link #setSnapshotTracking(boolean) snapshot tracking}, only the columns changed since the entity
+     * was read or written are set, and nothing is sent when none changed.
+     *
+     * <p>With a {@link #setVersionColumn(String) version column} mapped by the entity, the row is updated only
+     * if its version is still the one of the entity, and the version of the entity is then incremented.
+     *
+     * @return The number of rows updated: 1, or 0 when the tracked entity didn't change.
+     * @throws VersionConflictException if the row was updated since the entity was read.
+     */
     @Override
     public <S extends T> Integer update(S entity) {
-        String updateQuery = sqlGenerator.update(tableDesc);
-        Object[] paramValues;
-        int[] paramTypes;
-        ID idValue = idFromEntity(entity);
+        OperationTimer timer = startTimer("update");
         try {
-            String[] columnNames = wrapToArray(String.class, tableDesc.getColumns(), idName);
-            paramValues = rowMapper.columnsValues(entity, columnNames);
-            paramTypes = rowMapper.columnsTypes(columnNames);
-        } catch (NoSuchFieldException e) {
-            e.printStackTrace();
-            return null;
+            String updateQuery = statements.update();
+            ID idValue = idFromEntity(entity);
+            Object[] values = columnsValues(entity, updateColumns);
+            Object[] paramValues = values;
+            int[] paramTypes = columnsTypes(updateColumns);
+            // the id, and the version when checked, are bound after the columns set
+            int keys = (versionProperty != null) ? 2 : 1;
+            WeakIdentityMap<T, Object[]> tracked = snapshots;
+            Object[] snapshot = (tracked != null) ? tracked.get(entity) : null;
+            if (snapshot != null && Arrays.equals(snapshot, values.length - keys, values.length, values, values.length - keys, values.length)) {
+                List<String> changed = new ArrayList<>();
+                List<Integer> indexes = new ArrayList<>();
+                for (int i = 0; i < values.length - keys; i++) {
+                    if (!Objects.deepEquals(values[i], snapshot[i])) {
+                        changed.add(updateColumns[i]);
+                        indexes.add(i);
+                    }
+                }
+                if (changed.isEmpty()) {
+                    timer.rows(0);
+                    return 0;
+                }
+                for (int i = values.length - keys; i < values.length; i++) {
+                    indexes.add(i);
+                }
+                updateQuery = statements.update(changed);
+                paramValues = new Object[indexes.size()];
+                int[] changedTypes = new int[indexes.size()];
+                for (int i = 0; i < paramValues.length; i++) {
+                    paramValues[i] = values[indexes.get(i)];
+                    changedTypes[i] = paramTypes[indexes.get(i)];
+                }
+                paramTypes = changedTypes;
+            }
+            int rowsAffected = jdbcTemplate.update(updateQuery, paramValues, paramTypes);
+            evictFromCache(Collections.singletonList(idValue));
+            markWritten();
+            if (rowsAffected < 1) {
+                if (versionProperty != null && exists(idValue)) {
+                    throw new VersionConflictException(tableDesc.getTableName(), List.of(idValue));
+                }
+                throw new NoRecordUpdatedException(tableDesc.getTableName(), idValue);
+            }
+            if (rowsAffected > 1) {
+                throw new JdbcUpdateAffectedIncorrectNumberOfRowsException(updateQuery, 1, rowsAffected);
+            }
+            if (versionProperty != null) {
+                incrementVersion(entity);
+                values[values.length - 1] = versionProperty.getValue(entity);
+            }
+            if (tracked != null) {
+                keepSnapshot(tracked, entity, snapshotOf(values));
+            }
+            timer.rows(rowsAffected);
+            return rowsAffected;
+        } finally {
+            timer.stop();
         }
-        int rowsAffected = jdbcTemplate.update(updateQuery, paramValues, paramTypes);
-        if (rowsAffected < 1) {
-            throw new NoRecordUpdatedException(tableDesc.getTableName(), idValue);
+    }
+
+    /**
+     * Updates the given entities in JDBC batches of {@link #getBatchSize()} rows, within one transaction.
+     * Unlike {@link #save(Iterable)}, entities without a row are reported instead of failing the whole batch,
+     * and every column is set.
+     *
+     * @return The number of rows updated for each entity, in order: 0 for the entities without a row, and
+     *         {@link #VERSION_CONFLICT} for those whose row was updated since they were read.
+     */
+    @Override
+    @Transactional
+    public <S extends T> int[] updateAll(Iterable<S> entities) {
+        List<S> entitiesList = new ArrayList<>();
+        entities.forEach(entitiesList::add);
+        if (entitiesList.isEmpty()) {
+            return new int[0];
         }
-        if (rowsAffected > 1) {
-            throw new JdbcUpdateAffectedIncorrectNumberOfRowsException(updateQuery, 1, rowsAffected);
+        OperationTimer timer = startTimer("updateAll");
+        try {
+            timer.batchSize(entitiesList.size());
+            List<Object[]> values = new ArrayList<>(entitiesList.size());
+            List<ID> ids = new ArrayList<>(entitiesList.size());
+            for (S entity : entitiesList) {
+                values.add(columnsValues(entity, updateColumns));
+                ids.add(idFromEntity(entity));
+            }
+            int[] rowsAffected = executeBatch(statements.update(), values, columnsTypes(updateColumns));
+            evictFromCache(ids);
+            markWritten();
+            Set<ID> conflicts = versionConflicts(ids, rowsAffected);
+            int lineCount = 0;
+            for (int i = 0; i < rowsAffected.length; i++) {
+                if (rowsAffected[i] != 0) {
+                    lineCount++;
+                    if (versionProperty != null) {
+                        incrementVersion(entitiesList.get(i));
+                    }
+                    if (snapshots != null) {
+                        takeSnapshot(entitiesList.get(i));
+                    }
+                } else if (conflicts.contains(ids.get(i))) {
+                    rowsAffected[i] = VERSION_CONFLICT;
+                }
+            }
+            timer.rows(lineCount);
+            return rowsAffected;
+        } finally {
+            timer.stop();
         }
-        return rowsAffected;
     }
 
     @Override
     public <S extends T> ID create(S entity) {
-        Object[] paramValues;
-        int[] paramTypes;
+        OperationTimer timer = startTimer("create");
         try {
-            String[] columnNames = wrapToArray(String.class, tableDesc.getColumns());
-            paramValues = rowMapper.columnsValues(entity, columnNames);
-            paramTypes = rowMapper.columnsTypes(columnNames);
+            ID id = idFromEntity(entity);
+            if (isNew(id)) {
+                Object[] paramValues = columnsValues(entity, insertColumns);
+                int[] paramTypes = columnsTypes(insertColumns);
+                id = insertWithAutoGeneratedKey(paramValues, paramTypes, idAccessor.getIdType());
+            } else {
+                id = insertWithManuallyAssignedKey(entity);
+                evictFromCache(Collections.singletonList(id));
+            }
+            if (snapshots != null) {
+                setIdToEntity(entity, id);
+                takeSnapshot(entity);
+            }
+            increaseCounter();
+            markWritten();
+            timer.rows(1);
+            return id;
+        } finally {
+            timer.stop();
+        }
+    }
 
-        } catch (NoSuchFieldException e) {
-            e.printStackTrace();
-            return null;
+    /**
+     * Inserts the entity, or updates it if a row with its id exists, in a single statement when the dialect
+     * {@link SqlGenerator#supportsUpsert(TableDescription) supports it}. Entities without an id are created.
+     *
+     * <p>Dialects without upserts run an update followed, when no row matched, by an insert: a row inserted
+     * by another transaction between the two makes the insert fail.
+     *
+     * <p>With a {@link #setVersionColumn(String) version column} mapped by the entity, an existing row is
+     * updated only if its version is still the one of the entity. The version of the entity is then
+     * incremented, and so is the version of an inserted row.
+     *
+     * @return The entity.
+     * @throws VersionConflictException if the row was updated since the entity was read.
+     */
+    @Override
+    public <S extends T> S upsert(S entity) {
+        ID idValue = idFromEntity(entity);
+        if (isNew(idValue)) {
+            return save(entity);
         }
-        ID id = idFromEntity(entity);
-        if (id == null) {
-            return null;
+        OperationTimer timer = startTimer("upsert");
+        try {
+            if (sqlGenerator.supportsUpsert(tableDesc)) {
+                int rowsAffected = jdbcTemplate.update(statements.upsert(), columnsValues(entity, upsertColumns),
+                    columnsTypes(upsertColumns));
+                evictFromCache(Collections.singletonList(idValue));
+                if (rowsAffected < 1 && versionProperty != null) {
+                    throw new VersionConflictException(tableDesc.getTableName(), List.of(idValue));
+                }
+                if (versionProperty != null) {
+                    incrementVersion(entity);
+                }
+            } else {
+                int rowsAffected = jdbcTemplate.update(statements.update(), columnsValues(entity, updateColumns),
+                    columnsTypes(updateColumns));
+                evictFromCache(Collections.singletonList(idValue));
+                if (rowsAffected < 1 && versionProperty != null && exists(idValue)) {
+                    throw new VersionConflictException(tableDesc.getTableName(), List.of(idValue));
+                }
+                if (versionProperty != null) {
+                    incrementVersion(entity);
+                }
+                if (rowsAffected < 1) {
+                    jdbcTemplate.update(statements.insert(false), columnsValues(entity, upsertColumns),
+                        columnsTypes(upsertColumns));
+                }
+            }
+            markWritten();
+            countStrategy.invalidate();
+            takeSnapshot(entity);
+            timer.rows(1);
+            return entity;
+        } finally {
+            timer.stop();
         }
-        if ("0".equals(id.toString())) {
-            id = insertWithAutoGeneratedKey(paramValues, paramTypes, id.getClass());
-        } else {
-            id = insertWithManuallyAssignedKey(entity, paramValues, paramTypes);
+    }
+
+    /**
+     * Upserts the given entities, see {@link #upsert(Object)}, in JDBC batches of {@link #getBatchSize()} rows.
+     * Entities without an id are created. The batches run in one transaction, as in {@link #save(Iterable)}.
+     *
+     * @throws VersionConflictException listing every row updated since its entity was read.
+     */
+    @Override
+    @Transactional
+    public <S extends T> List<S> upsert(Iterable<S> entities) {
+        List<S> ret = new ArrayList<>();
+        List<S> inserts = new ArrayList<>();
+        List<S> upserts = new ArrayList<>();
+        for (S s : entities) {
+            if (isNew(idFromEntity(s))) {
+                inserts.add(s);
+            } else {
+                upserts.add(s);
+            }
+            ret.add(s);
+        }
+        if (!sqlGenerator.supportsUpsert(tableDesc)) {
+            for (S s : upserts) {
+                upsert(s);
+            }
+            if (!inserts.isEmpty()) {
+                save(inserts);
+            }
+            return ret;
+        }
+        OperationTimer timer = startTimer("upsertAll");
+        try {
+            timer.batchSize(ret.size());
+            for (int from = 0; from < inserts.size(); from += batchSize) {
+                insertBatch(inserts.subList(from, Math.min(from + batchSize, inserts.size())));
+            }
+            markWritten();
+            if (!upserts.isEmpty()) {
+                List<Object[]> values = new ArrayList<>(upserts.size());
+                List<ID> ids = new ArrayList<>(upserts.size());
+                for (S entity : upserts) {
+                    values.add(columnsValues(entity, upsertColumns));
+                    ids.add(idFromEntity(entity));
+                }
+                int[] rowsAffected = executeBatch(statements.upsert(), values, columnsTypes(upsertColumns));
+                evictFromCache(ids);
+                countStrategy.invalidate();
+                if (versionProperty != null) {
+                    // upserts only miss a row whose version doesn't match
+                    List<ID> conflicting = new ArrayList<>();
+                    for (int i = 0; i < rowsAffected.length; i++) {
+                        if (rowsAffected[i] == 0) {
+                            conflicting.add(ids.get(i));
+                        }
+                    }
+                    if (!conflicting.isEmpty()) {
+                        throw new VersionConflictException(tableDesc.getTableName(), conflicting);
+                    }
+                    upserts.forEach(this::incrementVersion);
+                }
+                if (snapshots != null) {
+                    upserts.forEach(this::takeSnapshot);
+                }
+            }
+            timer.rows(ret.size());
+            return ret;
+        } finally {
+            timer.stop();
         }
-        increaseCounter();
-        return id;
     }
 
     ////////// Counting methods //////////
 
-    protected synchronized void startCounter() {
-        counter.compareAndSet(-1L, count());
+    /**
+     * @return The row count kept in the database statistics, or {@code -1} if the dialect has none.
+     */
+    @Transactional(readOnly=true)
+    public long estimatedCount() {
+        String sql = statements.estimatedCount();
+        if (sql == null) {
+            return -1L;
+        }
+        List<Long> estimate = jdbcTemplate.queryForList(sql, Long.class, tableDesc.getTableName());
+        return (estimate.isEmpty() || estimate.get(0) == null) ? -1L : estimate.get(0);
+    }
+
+    /**
+     * @param method The method name reported to the {@link RepositoryMetrics}.
+     */
+    protected OperationTimer startTimer(String method) {
+        return OperationTimer.start(metrics, repositoryName, method);
+    }
+
+    /**
+     * Runs a read on the primary, or on a replica chosen by the {@link #setReadRouting(ReadRouting) read routing}
+     * with the statements of its dialect. The operation may run twice when the replica fails.
+     */
+    protected <R> R read(ReadOperation<R> operation) {
+        ReadRouting routing = readRouting;
+        if (routing == null) {
+            return operation.run(jdbcTemplate, statements);
+        }
+        return routing.read(jdbcTemplate, statements, target -> replicaStatements.computeIfAbsent(
+            target.getDataSource(), dataSource -> new SqlStatements(target.getSqlGenerator(), tableDesc)), operation);
+    }
+
+    /**
+     * Runs a read handing its rows to the callback like {@link #read(ReadOperation)}, except that a replica
+     * failing once the callback got a row fails the read instead of running it again on the primary.
+     *
+     * @param operation Runs the read with the callback it is given in place of {@code callback}.
+     * @return The number of rows handed to the callback.
+     */
+    protected long readRows(RowCallbackHandler callback, Function<RowCallbackHandler, ReadOperation<?>> operation) {
+        long[] rows = new long[1];
+        RowCallbackHandler counted = rs -> {
+            rows[0]++;
+            callback.processRow(rs);
+        };
+        ReadRouting routing = readRouting;
+        if (routing == null) {
+            operation.apply(counted).run(jdbcTemplate, statements);
+        } else {
+            routing.readRows(jdbcTemplate, statements, target -> replicaStatements.computeIfAbsent(
+                target.getDataSource(), dataSource -> new SqlStatements(target.getSqlGenerator(), tableDesc)), counted, operation);
+        }
+        return rows[0];
+    }
+
+    /**
+     * @return The where clause parsed for its named parameters.
+     */
+    private ParsedSql parseNamed(String whereClause) {
+        Assert.hasText(whereClause, "A where clause with named parameters is required.");
+        return statements.parseNamed(whereClause);
+    }
+
+    /**
+     * @return The values of the named parameters in placeholder order, collections expanded like their
+     *         placeholders (and tuples of a collection of arrays).
+     */
+    private static Object[] namedValues(ParsedSql parsed, MapSqlParameterSource source) {
+        Object[] values = buildValueArray(parsed, source, null);
+        List<Object> expanded = new ArrayList<>(values.length);
+        for (Object value : values) {
+            if (value instanceof Iterable) {
+                for (Object element : (Iterable<?>) value) {
+                    if (element instanceof Object[]) {
+                        Collections.addAll(expanded, (Object[]) element);
+                    } else {
+                        expanded.add(element);
+                    }
+                }
+            } else {
+                expanded.add(value);
+            }
+        }
+        return expanded.toArray();
+    }
+
+    /**
+     * Keeps the reads of the current thread on the primary for a while, see {@link ReadRouting#markWritten()}.
+     */
+    protected void markWritten() {
+        ReadRouting routing = readRouting;
+        if (routing != null) {
+            routing.markWritten();
+        }
+    }
+
+    /**
+     * @return The row mapper of the entities, which takes their snapshots when snapshot tracking is on.
+     */
+    protected RowMapper<T> entityMapper() {
+        if (snapshots == null) {
+            return rowMapper;
+        }
+        return (rs, rowNum) -> {
+            T entity = rowMapper.mapRow(rs, rowNum);
+            if (entity != null) {
+                takeSnapshot(entity);
+            }
+            return entity;
+        };
+    }
+
+    /**
+     * Records the current column values of the entity as the ones stored, when snapshot tracking is on.
+     * Entities whose values can't be read (a hand-written mapper rejecting a {@code null}) are not tracked.
+     */
+    protected void takeSnapshot(T entity) {
+        WeakIdentityMap<T, Object[]> tracked = snapshots;
+        if (tracked == null) {
+            return;
+        }
+        try {
+            keepSnapshot(tracked, entity, snapshotOf(columnsValues(entity, updateColumns)));
+        } catch (InvalidDataAccessApiUsageException e) {
+            tracked.remove(entity);
+        }
+    }
+
+    /**
+     * @return Whether the entity is tracked and none of its column values changed since its snapshot.
+     */
+    private boolean isUnchanged(T entity) {
+        WeakIdentityMap<T, Object[]> tracked = snapshots;
+        Object[] snapshot = (tracked != null) ? tracked.get(entity) : null;
+        return snapshot != null && Arrays.deepEquals(snapshot, columnsValues(entity, updateColumns));
+    }
+
+    /**
+     * Keeps the snapshot of the entity. In a transaction, the row may still be rolled back to other values,
+     * so the snapshots taken are dropped unless it commits.
+     */
+    private void keepSnapshot(WeakIdentityMap<T, Object[]> tracked, T entity, Object[] snapshot) {
+        tracked.put(entity, snapshot);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        SnapshotRollback<T> rollback = (SnapshotRollback<T>) TransactionSynchronizationManager.getResource(tracked);
+        if (rollback == null) {
+            rollback = new SnapshotRollback<>(tracked);
+            TransactionSynchronizationManager.bindResource(tracked, rollback);
+            TransactionSynchronizationManager.registerSynchronization(rollback);
+        }
+        rollback.entities.add(entity);
+    }
+
+    private static Object[] snapshotOf(Object[] values) {
+        Object[] snapshot = values.clone();
+        for (int i = 0; i < snapshot.length; i++) {
+            if (snapshot[i] instanceof byte[]) {
+                snapshot[i] = ((byte[]) snapshot[i]).clone();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the given ids from the entity cache, now and again when the current transaction completes,
+     * so that rows read while it was still running aren't kept.
+     */
+    protected void evictFromCache(Collection<ID> ids) {
+        EntityCache<ID, T> cache = entityCache;
+        if (cache == null || ids.isEmpty()) {
+            return;
+        }
+        Runnable eviction = () -> {
+            for (ID id : ids) {
+                if (id != null) {
+                    cache.invalidate(id);
+                }
+            }
+        };
+        eviction.run();
+        runAfterCompletion(eviction);
+    }
+
+    /**
+     * Empties the entity cache, now and again when the current transaction completes.
+     */
+    protected void clearCache() {
+        EntityCache<ID, T> cache = entityCache;
+        if (cache == null) {
+            return;
+        }
+        cache.invalidateAll();
+        runAfterCompletion(cache::invalidateAll);
+    }
+
+    private static void runAfterCompletion(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the snapshots taken in a transaction that doesn't commit. Bound to the transaction with the
+     * snapshots as key, and unbound while it is suspended, so that an inner transaction keeps its own.
+     */
+    private static final class SnapshotRollback<T> extends TransactionSynchronizationAdapter {
+
+        private final WeakIdentityMap<T, Object[]> snapshots;
+        private final Set<T> entities = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        SnapshotRollback(WeakIdentityMap<T, Object[]> snapshots) {
+            this.snapshots = snapshots;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(snapshots);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(snapshots, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(snapshots);
+            if (status != STATUS_COMMITTED) {
+                entities.forEach(snapshots::remove);
+            }
+        }
     }
 
     protected void increaseCounter() {
-        counter.addAndGet(1L);
+        countStrategy.rowsInserted(1L);
+    }
+
+    protected void increaseCounter(Integer lineCount) {
+        if (lineCount > 0) {
+            countStrategy.rowsInserted(lineCount);
+        }
     }
 
     protected void decreaseCounter(Integer lineCount) {
         if (lineCount > 0) {
-            counter.addAndGet(-1L * lineCount);
+            countStrategy.rowsDeleted(lineCount);
         }
     }
 
     ////////// Extra methods //////////
 
-    @SuppressWarnings("unchecked")
-    private ID idFromEntity(T entity) {
-        PropertyDescriptor propertyDescriptor;
-        try {
-            propertyDescriptor = new PropertyDescriptor(idName, entity.getClass());
-        } catch (IntrospectionException e) {
-            e. printStackTrace();
-            return null;
+    /**
+     * @return The given sort with the primary key appended as a tiebreaker, unless it is already sorted by it.
+     */
+    protected Sort keysetSort(Sort sort) {
+        String pkColumn = tableDesc.getPkColumns().get(0);
+        for (Sort.Order order : sort) {
+            if (convertToSnakeCase(order.getProperty()).equals(pkColumn)) {
+                return sort;
+            }
         }
-        Method getterMethod = propertyDescriptor.getReadMethod();
-        try {
-            return (ID) getterMethod.invoke(entity);
+        return sort.and(Sort.by(Sort.Direction.ASC, idName));
+    }
 
-        } catch (InvocationTargetException | IllegalAccessException | ClassCastException e) {
-            e.printStackTrace();
-            return null;
-        }
+    protected PreparedStatementCreator cursorStatement(String sql, Object... params) {
+        return con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            new ArgumentPreparedStatementSetter(params).setValues(ps);
+            return ps;
+        };
+    }
+
+    protected <R> Stream<R> queryForStream(String sql, RowMapper<R> mapper, Object... params) {
+        return queryForStream(jdbcTemplate, sql, mapper, params);
     }
 
-    private void setIdToEntity(T entity, ID keyHolder) {
-        PropertyDescriptor propertyDescriptor;
+    protected <R> Stream<R> queryForStream(JdbcTemplate jdbcTemplate, String sql, RowMapper<R> mapper, Object... params) {
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        Assert.state(dataSource != null, "Streaming queries require a DataSource.");
+        Connection con = DataSourceUtils.getConnection(dataSource);
+        PreparedStatement ps = null;
+        boolean autoCommit = false;
         try {
-            propertyDescriptor = new PropertyDescriptor(idName, entity.getClass());
-        } catch (IntrospectionException e) {
-            e. printStackTrace();
-            return;
+            // a connection of our own: its auto-commit is restored when the cursor is closed
+            if (!DataSourceUtils.isConnectionTransactional(con, dataSource) && con.getAutoCommit()) {
+                con.setAutoCommit(false);
+                autoCommit = true;
+            }
+            ps = cursorStatement(sql, params).createPreparedStatement(con);
+            ResultSet rs = ps.executeQuery();
+            return new ResultSetCursor<>(dataSource, con, autoCommit, ps, rs, mapper, jdbcTemplate.getExceptionTranslator(), sql)
+                .stream();
+        } catch (SQLException ex) {
+            JdbcUtils.closeStatement(ps);
+            ResultSetCursor.restoreAutoCommit(con, autoCommit);
+            DataSourceUtils.releaseConnection(con, dataSource);
+            throw jdbcTemplate.getExceptionTranslator().translate("queryForStream", sql, ex);
         }
-        Method setterMethod = propertyDescriptor.getWriteMethod();
+    }
+
+    /**
+     * @throws InvalidDataAccessApiUsageException if the row mapper doesn't map one of the columns.
+     */
+    protected Object[] columnsValues(T entity, String[] columns) {
         try {
-            setterMethod.invoke(entity, keyHolder);
+            return rowMapper.columnsValues(entity, columns);
+        } catch (NoSuchFieldException e) {
+            throw new InvalidDataAccessApiUsageException(
+                "Row mapper of " + getClass().getSimpleName() + " doesn't map a value: " + e.getMessage(), e);
+        }
+    }
 
-        } catch (InvocationTargetException | IllegalAccessException | ClassCastException e) {
-            e.printStackTrace();
+    /**
+     * @throws InvalidDataAccessApiUsageException if the row mapper doesn't map one of the columns.
+     */
+    protected int[] columnsTypes(String[] columns) {
+        try {
+            return rowMapper.columnsTypes(columns);
+        } catch (NoSuchFieldException e) {
+            throw new InvalidDataAccessApiUsageException(
+                "Row mapper of " + getClass().getSimpleName() + " doesn't map a type: " + e.getMessage(), e);
         }
     }
 
-    private <S extends T> ID insertWithManuallyAssignedKey(S entity, Object[] values, int[] types) {
-        String insertQuery = sqlGenerator.insert(tableDesc, false);
-        jdbcTemplate.update(insertQuery, values, types);
+    protected ID idFromEntity(T entity) {
+        return idAccessor.getId(entity);
+    }
+
+    protected void setIdToEntity(T entity, ID id) {
+        idAccessor.setId(entity, id);
+    }
+
+    /**
+     * @return Whether the id denotes an entity not stored yet, whose key is generated by the database.
+     */
+    protected boolean isNew(ID id) {
+        return id == null || "0".equals(id.toString());
+    }
+
+    private <S extends T> ID insertWithManuallyAssignedKey(S entity) {
+        String insertQuery = statements.insert(false);
+        jdbcTemplate.update(insertQuery, columnsValues(entity, upsertColumns), columnsTypes(upsertColumns));
         return idFromEntity(entity);
     }
 
     private ID insertWithAutoGeneratedKey(Object[] values, int[] types, Class<? extends Serializable> clazz) {
-        final String insertQuery = sqlGenerator.insert(tableDesc, true);
+        final String insertQuery = statements.insert(true);
         final GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
 
         jdbcTemplate.update(con -> {
             String idColumnName = tableDesc.getPkColumns().get(0);
             PreparedStatement ps = con.prepareStatement(insertQuery, new String[]{idColumnName});
             for (int i = 0; i < values.length; ++i) {
-                ps.setObject(i + 1, values[i], types[i]);
+                StatementCreatorUtils.setParameterValue(ps, i + 1, types[i], values[i]);
             }
             return ps;
         }, keyHolder);
 
-        return extractValueWithCorrectIdClassType(keyHolder, clazz);
+        return extractValueWithCorrectIdClassType(keyHolder.getKey(), clazz);
+    }
+
+    private List<T> findAllByInList(JdbcTemplate template, SqlStatements sql, List<ID> ids, OperationTimer timer) {
+        Object[] params = padInList(ids);
+        long mark = timer.mark();
+        String query = sql.selectByPKs(params.length);
+        timer.sqlBuilt(mark);
+        return template.query(query, params, timer.timeMapping(entityMapper()));
+    }
+
+    /**
+     * @return The ids padded to the next of {@link #IN_LIST_SIZES} by repeating the last id, which doesn't
+     *         change the rows matched.
+     */
+    private Object[] padInList(List<ID> ids) {
+        int size = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        for (int bucket : IN_LIST_SIZES) {
+            if (bucket >= ids.size()) {
+                size = bucket;
+                break;
+            }
+        }
+        Object[] params = new Object[size];
+        for (int i = 0; i < size; i++) {
+            params[i] = ids.get(Math.min(i, ids.size() - 1));
+        }
+        return params;
+    }
+
+    private List<T> findAllByArray(JdbcTemplate template, SqlStatements sql, List<ID> ids, OperationTimer timer) {
+        long mark = timer.mark();
+        final String selectQuery = sql.selectByPKArray();
+        timer.sqlBuilt(mark);
+        final String arrayType = sqlArrayType(ids.get(0).getClass());
+        return template.query(con -> {
+            PreparedStatement ps = con.prepareStatement(selectQuery);
+            ps.setArray(1, con.createArrayOf(arrayType, ids.toArray()));
+            return ps;
+        }, timer.timeMapping(entityMapper()));
+    }
+
+    private static <ID> Set<ID> distinct(Iterable<ID> ids) {
+        Set<ID> distinctIds = new LinkedHashSet<>();
+        for (ID id : ids) {
+            if (id != null) {
+                distinctIds.add(id);
+            }
+        }
+        return distinctIds;
+    }
+
+    private static String sqlArrayType(Class<?> idClass) {
+        if (idClass == Long.class) {
+            return "bigint";
+        }
+        if (idClass == Integer.class) {
+            return "integer";
+        }
+        if (idClass == Short.class || idClass == Byte.class) {
+            return "smallint";
+        }
+        if (idClass == java.util.UUID.class) {
+            return "uuid";
+        }
+        return "varchar";
+    }
+
+    /**
+     * Inserts one batch of entities with auto generated keys and sets the generated keys back on them.
+     */
+    private <S extends T> void insertBatch(List<S> entities) {
+        List<Object[]> values = new ArrayList<>(entities.size());
+        for (S entity : entities) {
+            values.add(columnsValues(entity, insertColumns));
+        }
+        int[] types = columnsTypes(insertColumns);
+        List<Number> keys = new ArrayList<>(entities.size());
+        if (sqlGenerator.supportsMultiRowInsert()) {
+            int rowsPerInsert = Math.max(1, Math.min(entities.size(), MAX_INSERT_PARAMETERS / Math.max(1, types.length)));
+            for (int from = 0; from < values.size(); from += rowsPerInsert) {
+                List<Object[]> rows = values.subList(from, Math.min(from + rowsPerInsert, values.size()));
+                keys.addAll(executeInsert(statements.insert(true, rows.size()), rows, types, false));
+            }
+        } else {
+            keys.addAll(executeInsert(statements.insert(true), values, types, true));
+        }
+        if (keys.size() != entities.size()) {
+            throw new JdbcUpdateAffectedIncorrectNumberOfRowsException(statements.insert(true), entities.size(), keys.size());
+        }
+        for (int i = 0; i < entities.size(); i++) {
+            S entity = entities.get(i);
+            setIdToEntity(entity, extractValueWithCorrectIdClassType(keys.get(i), idAccessor.getIdType()));
+        }
+        increaseCounter(entities.size());
+    }
+
+    /**
+     * Runs the insert either as one multi-row statement, or once per row, and reads all generated keys back.
+     * Drivers needn't return the keys of a JDBC batch (Oracle and SQL Server don't), so rows are not batched:
+     * the statement is only prepared once.
+     */
+    private List<Number> executeInsert(String insertQuery, List<Object[]> rows, int[] types, boolean perRow) {
+        String idColumnName = tableDesc.getPkColumns().get(0);
+        return jdbcTemplate.execute(
+            (Connection con) -> con.prepareStatement(insertQuery, new String[]{idColumnName}),
+            (PreparedStatement ps) -> {
+                List<Number> keys = new ArrayList<>(rows.size());
+                int index = 1;
+                for (Object[] row : rows) {
+                    for (int i = 0; i < row.length; ++i) {
+                        StatementCreatorUtils.setParameterValue(ps, index++, types[i], row[i]);
+                    }
+                    if (perRow) {
+                        ps.executeUpdate();
+                        readGeneratedKeys(ps, keys);
+                        index = 1;
+                    }
+                }
+                if (!perRow) {
+                    ps.executeUpdate();
+                    readGeneratedKeys(ps, keys);
+                }
+                return keys;
+            });
+    }
+
+    private static void readGeneratedKeys(PreparedStatement ps, List<Number> keys) throws SQLException {
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            while (rs.next()) {
+                keys.add((Number) rs.getObject(1));
+            }
+        }
+    }
+
+    /**
+     * Updates the given entities in JDBC batches; every entity must match exactly one row.
+     *
+     * @throws VersionConflictException listing every row updated since its entity was read.
+     */
+    private <S extends T> void updateBatch(List<S> entities) {
+        String updateQuery = statements.update();
+        List<Object[]> values = new ArrayList<>(entities.size());
+        List<ID> ids = new ArrayList<>(entities.size());
+        for (S entity : entities) {
+            values.add(columnsValues(entity, updateColumns));
+            ids.add(idFromEntity(entity));
+        }
+        int[] rowsAffected = executeBatch(updateQuery, values, columnsTypes(updateColumns));
+        Set<ID> conflicts = versionConflicts(ids, rowsAffected);
+        if (!conflicts.isEmpty()) {
+            List<ID> conflicting = new ArrayList<>(conflicts.size());
+            for (ID id : ids) {
+                if (conflicts.contains(id)) {
+                    conflicting.add(id);
+                }
+            }
+            throw new VersionConflictException(tableDesc.getTableName(), conflicting);
+        }
+        for (int index = 0; index < rowsAffected.length; index++) {
+            int count = rowsAffected[index];
+            if (count == 0) {
+                throw new NoRecordUpdatedException(tableDesc.getTableName(), ids.get(index));
+            }
+            if (count > 1) {
+                throw new JdbcUpdateAffectedIncorrectNumberOfRowsException(updateQuery, 1, count);
+            }
+        }
+        if (versionProperty != null) {
+            entities.forEach(this::incrementVersion);
+        }
+    }
+
+    /**
+     * @param rowsAffected The rows updated for each id.
+     * @return The ids that matched no row while their row exists, which is a version conflict when the
+     *         version is checked; empty otherwise.
+     */
+    private Set<ID> versionConflicts(List<ID> ids, int[] rowsAffected) {
+        if (versionProperty == null) {
+            return Collections.emptySet();
+        }
+        List<ID> missed = new ArrayList<>();
+        for (int i = 0; i < rowsAffected.length; i++) {
+            if (rowsAffected[i] == 0) {
+                missed.add(ids.get(i));
+            }
+        }
+        if (missed.isEmpty()) {
+            return Collections.emptySet();
+        }
+        // only the ids, read from the primary that was just written
+        Set<ID> existing = new HashSet<>();
+        int chunkSize = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        for (int from = 0; from < missed.size(); from += chunkSize) {
+            Object[] params = padInList(missed.subList(from, Math.min(from + chunkSize, missed.size())));
+            existing.addAll(jdbcTemplate.queryForList(statements.selectPKsByPKs(params.length), params, idAccessor.getIdType()));
+        }
+        return existing;
+    }
+
+    private void incrementVersion(T entity) {
+        Object version = versionProperty.getValue(entity);
+        Object next;
+        if (version instanceof Long) {
+            next = (Long) version + 1;
+        } else if (version instanceof Integer) {
+            next = (Integer) version + 1;
+        } else if (version instanceof Short) {
+            next = (short) ((Short) version + 1);
+        } else {
+            throw new InvalidDataAccessApiUsageException(
+                "The version of " + entityClass.getSimpleName() + " must be a long, int or short, but was " + version);
+        }
+        versionProperty.setValue(entity, next);
+    }
+
+    /**
+     * Runs the statement once per row, in JDBC batches of {@link #getBatchSize()} rows.
+     *
+     * @return The number of rows affected by each run, in order; {@link java.sql.Statement#SUCCESS_NO_INFO}
+     *         when the driver doesn't tell.
+     */
+    private int[] executeBatch(String sql, List<Object[]> values, int[] types) {
+        int[][] batches = jdbcTemplate.batchUpdate(sql, values, batchSize,
+            (PreparedStatement ps, Object[] row) -> {
+                for (int i = 0; i < row.length; ++i) {
+                    StatementCreatorUtils.setParameterValue(ps, i + 1, types[i], row[i]);
+                }
+            });
+        int[] rowsAffected = new int[values.size()];
+        int index = 0;
+        for (int[] batch : batches) {
+            for (int count : batch) {
+                rowsAffected[index++] = count;
+            }
+        }
+        return rowsAffected;
     }
 
     @SuppressWarnings("unchecked")
-    private ID extractValueWithCorrectIdClassType(GeneratedKeyHolder keyHolder, Class<? extends Serializable> clazz) {
-        if (keyHolder.getKey() == null) {
+    private ID extractValueWithCorrectIdClassType(Number key, Class<? extends Serializable> clazz) {
+        if (key == null) {
             return null;
         }
         if (clazz.getTypeName().equals(Long.class.getTypeName())) {
-            return (ID)(Long)keyHolder.getKey().longValue();
+            return (ID)(Long)key.longValue();
         }
         if (clazz.getTypeName().equals(Integer.class.getTypeName())) {
-            return (ID)(Integer)keyHolder.getKey().intValue();
+            return (ID)(Integer)key.intValue();
         }
         if (clazz.getTypeName().equals(Short.class.getTypeName())) {
-            return (ID)(Short)keyHolder.getKey().shortValue();
+            return (ID)(Short)key.shortValue();
         }
         if (clazz.getTypeName().equals(Byte.class.getTypeName())) {
-            return (ID)(Byte)keyHolder.getKey().byteValue();
+            return (ID)(Byte)key.byteValue();
         }
-        return (ID) keyHolder.getKey();
+        return (ID) key;
     }
 
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Version of a row or of a set of rows, read from the version and last modified columns of the table
+ * without reading the rows, see {@link JdbcRepository#findVersion(Serializable)}. Suited to HTTP
+ * conditional requests: {@link #getTag()} as entity tag, {@link #getLastModified()} as Last-Modified date.
+ */
+public final class EntityVersion implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String tag;
+    private final long lastModified;
+
+    private EntityVersion(String tag, long lastModified) {
+        this.tag = tag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param version      The version column value, or {@code null}.
+     * @param lastModified The last modified column value, or {@code null}.
+     */
+    public static EntityVersion of(Object version, Timestamp lastModified) {
+        long millis = (lastModified != null) ? lastModified.getTime() : -1L;
+        return new EntityVersion((version != null) ? version.toString() : Long.toString(millis), millis);
+    }
+
+    /**
+     * @param count        The number of rows.
+     * @param versions     The sum of their version column values, or {@code null}.
+     * @param lastModified The latest of their last modified column values, or {@code null}.
+     */
+    public static EntityVersion ofRows(long count, Object versions, Timestamp lastModified) {
+        long millis = (lastModified != null) ? lastModified.getTime() : -1L;
+        return new EntityVersion(count + "-" + ((versions != null) ? versions : 0) + "-" + millis, millis);
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return The last modification in milliseconds since the epoch, or {@code -1} if unknown.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EntityVersion)) {
+            return false;
+        }
+        EntityVersion other = (EntityVersion) o;
+        return lastModified == other.lastModified && tag.equals(other.tag);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tag, lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return "EntityVersion[" + tag + "]";
+    }
+}
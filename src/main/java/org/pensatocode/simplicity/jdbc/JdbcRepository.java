@@ -18,11 +18,15 @@ package org.pensatocode.simplicity.jdbc;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * JDBC specific extension of {@link org.springframework.data.repository.Repository}.
@@ -33,10 +37,37 @@ import java.util.List;
 @NoRepositoryBean
 public interface JdbcRepository<T, ID extends Serializable> {
 
+    /**
+     * Count reported by {@link #updateAll(Iterable)} for the entities whose row was updated since they were read.
+     */
+    int VERSION_CONFLICT = -1;
+
+    /**
+     * @return The domain type the repository manages.
+     */
+    Class<T> getEntityClass();
+
     Long count();
 
+    /**
+     * @return The count given by the repository's {@link org.pensatocode.simplicity.jdbc.count.CountStrategy},
+     *         which may be cached or estimated.
+     */
     Long getAtomicCount();
 
+    Long count(String whereClause);
+
+    /**
+     * @param params The values bound to the {@code ?} placeholders of the where clause.
+     */
+    Long count(String whereClause, Object... params);
+
+    /**
+     * @param params The values bound to the {@code :name} placeholders of the where clause; collections
+     *               are expanded into lists, as in {@code id IN (:ids)}.
+     */
+    Long count(String whereClause, Map<String, ?> params);
+
     Boolean exists(ID id);
 
     List<T> findAll();
@@ -51,12 +82,103 @@ public interface JdbcRepository<T, ID extends Serializable> {
 
     Page<T> findAll(String whereClause, Pageable pageable);
 
+    /**
+     * Same as {@link #findAll(String, Sort)}, with values bound to the {@code ?} placeholders of the where
+     * clause instead of literals, so that one statement serves every value.
+     */
+    List<T> findAll(String whereClause, Object[] params, Sort sort);
+
+    Page<T> findAll(String whereClause, Object[] params, Pageable pageable);
+
+    /**
+     * Same as {@link #findAll(String, Object[], Sort)}, with named parameters, see {@link #count(String, Map)}.
+     */
+    List<T> findAll(String whereClause, Map<String, ?> params, Sort sort);
+
+    Page<T> findAll(String whereClause, Map<String, ?> params, Pageable pageable);
+
+    /**
+     * Same as {@link #findAll(Pageable)} without counting the rows: one row past the page is read
+     * to tell whether there is a next page.
+     */
+    Slice<T> findSlice(Pageable pageable);
+
+    Slice<T> findSlice(String whereClause, Pageable pageable);
+
+    Slice<T> findSlice(String whereClause, Object[] params, Pageable pageable);
+
     List<T> findAll(Iterable<ID> ids);
 
+    /**
+     * Same as {@link #findAll(String, Sort)}, selecting only the columns of the projection.
+     */
+    <P> List<P> findAll(Projection<P> projection, String whereClause, Sort sort);
+
+    <P> Page<P> findAll(Projection<P> projection, String whereClause, Pageable pageable);
+
+    /**
+     * Same as {@link #findAll(String, Object[], Sort)}, selecting only the columns of the projection.
+     */
+    <P> List<P> findAll(Projection<P> projection, String whereClause, Object[] params, Sort sort);
+
+    <P> Page<P> findAll(Projection<P> projection, String whereClause, Object[] params, Pageable pageable);
+
+    Stream<T> streamAll();
+
+    Stream<T> streamAll(String whereClause, Sort sort);
+
+    Stream<T> streamAll(String whereClause, Object[] params, Sort sort);
+
+    void findAll(RowCallbackHandler callback);
+
+    void findAll(String whereClause, Sort sort, RowCallbackHandler callback);
+
+    /**
+     * Reads the rows of the page into the given callback, without mapping them to entities.
+     */
+    void findAll(Pageable pageable, RowCallbackHandler callback);
+
+    KeysetSlice<T> findAllAfter(KeysetCursor cursor, Sort sort, int limit);
+
+    KeysetSlice<T> findAllAfter(String whereClause, KeysetCursor cursor, Sort sort, int limit);
+
     T findOne(ID id);
 
+    /**
+     * @return The version of the row, read from its version or last modified column without reading the row,
+     *         or {@code null} if the row doesn't exist or the table isn't versioned.
+     */
+    EntityVersion findVersion(ID id);
+
+    /**
+     * @return The version of the whole table, or {@code null} if the table has no last modified column.
+     */
+    EntityVersion findVersion();
+
     Integer delete(ID id);
 
+    /**
+     * Deletes the rows of the given ids in chunks of a few statements.
+     *
+     * @return The number of rows deleted.
+     */
+    Integer delete(Iterable<ID> ids);
+
+    /**
+     * Deletes the rows of the given ids one statement per id, sent in batches within one transaction.
+     *
+     * @return The number of rows deleted for each id, in order.
+     */
+    int[] deleteEach(Iterable<ID> ids);
+
+    Integer deleteAll();
+
+    /**
+     * @param params The values bound to the placeholders of the where clause.
+     * @return The number of rows deleted.
+     */
+    Integer deleteAll(String whereClause, Object... params);
+
     <S extends T> S save(S entity);
 
     <S extends T> List<S> save(Iterable<S> entities);
@@ -66,4 +188,20 @@ public interface JdbcRepository<T, ID extends Serializable> {
     <S extends T> Integer update(S entity);
 
     <S extends T> Integer update(S entity, ID id);
+
+    /**
+     * Updates the given entities in batches, within one transaction.
+     *
+     * @return The number of rows updated for each entity, in order: 0 for the entities without a row, and
+     *         {@link #VERSION_CONFLICT} for those whose row was updated since they were read.
+     */
+    <S extends T> int[] updateAll(Iterable<S> entities);
+
+    /**
+     * Inserts the entity, or updates the row with the same id, in a single round trip where the dialect allows it.
+     * A row with a checked version is updated only if its version is the one of the entity, as by {@link #update(Object)}.
+     */
+    <S extends T> S upsert(S entity);
+
+    <S extends T> List<S> upsert(Iterable<S> entities);
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Continuation point of a keyset (seek) pagination: the values of the sort columns, primary key
+ * included, of the last row of a page.
+ *
+ * <p>{@link #encode()} turns it into an opaque, URL-safe token that clients hand back to get the
+ * next page, see {@link JdbcRepository#findAllAfter(KeysetCursor, org.springframework.data.domain.Sort, int)}.
+ * Tokens only carry plain values (numbers, strings, booleans, dates and UUIDs), never serialized objects.
+ */
+public final class KeysetCursor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte
+        STRING = 'S',
+        LONG = 'J',
+        INTEGER = 'I',
+        SHORT = 'H',
+        BOOLEAN = 'Z',
+        DOUBLE = 'D',
+        FLOAT = 'F',
+        DECIMAL = 'M',
+        DATE = 'd',
+        DATE_TIME = 't',
+        INSTANT = 'T',
+        UUID_VALUE = 'U';
+
+    private final Object[] values;
+
+    private KeysetCursor(Object[] values) {
+        this.values = values;
+    }
+
+    /**
+     * @param values The values of the sort columns of the last row read, in sort order, primary key last.
+     */
+    public static KeysetCursor of(Object... values) {
+        if (values == null || values.length == 0) {
+            throw new InvalidDataAccessApiUsageException("A keyset cursor requires at least one value.");
+        }
+        Object[] copy = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            copy[i] = normalize(values[i]);
+        }
+        return new KeysetCursor(copy);
+    }
+
+    /**
+     * @param token A token created by {@link #encode()}.
+     * @throws InvalidDataAccessApiUsageException if the token is malformed.
+     */
+    public static KeysetCursor decode(String token) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            Object[] values = new Object[in.readUnsignedByte()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue(in);
+            }
+            if (in.available() > 0) {
+                throw new IOException("Unexpected trailing bytes");
+            }
+            return new KeysetCursor(values);
+        } catch (IOException | IllegalArgumentException | DateTimeException ex) {
+            throw new InvalidDataAccessApiUsageException("Malformed keyset cursor: " + token, ex);
+        }
+    }
+
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(values.length);
+            for (Object value : values) {
+                writeValue(out, value);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    public Object[] getValues() {
+        return values.clone();
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof KeysetCursor && Arrays.equals(values, ((KeysetCursor) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+
+    private static Object normalize(Object value) {
+        if (value == null) {
+            throw new InvalidDataAccessApiUsageException("Keyset pagination does not support null sort values.");
+        }
+        if (value instanceof java.sql.Timestamp) {
+            return ((java.sql.Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof java.util.Date) {
+            return ((java.util.Date) value).toInstant();
+        }
+        if (value instanceof Byte) {
+            return ((Byte) value).shortValue();
+        }
+        if (value instanceof String || value instanceof Long || value instanceof Integer || value instanceof Short
+            || value instanceof Boolean || value instanceof Double || value instanceof Float
+            || value instanceof BigDecimal || value instanceof LocalDate || value instanceof LocalDateTime
+            || value instanceof Instant || value instanceof UUID) {
+            return value;
+        }
+        throw new InvalidDataAccessApiUsageException(
+            "Unsupported keyset cursor value type: " + value.getClass().getName());
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            out.writeUTF(value.toString());
+        } else if (value instanceof LocalDate) {
+            out.writeByte(DATE);
+            out.writeLong(((LocalDate) value).toEpochDay());
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(DATE_TIME);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Instant) {
+            out.writeByte(INSTANT);
+            out.writeLong(((Instant) value).getEpochSecond());
+            out.writeInt(((Instant) value).getNano());
+        } else {
+            out.writeByte(UUID_VALUE);
+            out.writeLong(((UUID) value).getMostSignificantBits());
+            out.writeLong(((UUID) value).getLeastSignificantBits());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case STRING: return in.readUTF();
+            case LONG: return in.readLong();
+            case INTEGER: return in.readInt();
+            case SHORT: return in.readShort();
+            case BOOLEAN: return in.readBoolean();
+            case DOUBLE: return in.readDouble();
+            case FLOAT: return in.readFloat();
+            case DECIMAL: return new BigDecimal(in.readUTF());
+            case DATE: return LocalDate.ofEpochDay(in.readLong());
+            case DATE_TIME: return LocalDateTime.parse(in.readUTF());
+            case INSTANT: return Instant.ofEpochSecond(in.readLong(), in.readInt());
+            case UUID_VALUE: return new UUID(in.readLong(), in.readLong());
+            default: throw new IOException("Unknown value type: " + type);
+        }
+    }
+}
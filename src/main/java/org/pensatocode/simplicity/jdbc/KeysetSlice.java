@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A page read by keyset (seek) pagination. Instead of a page number and a total count, it
+ * carries the cursor to pass back to read the rows that follow.
+ *
+ * @param <T> the domain type the repository manages.
+ */
+public class KeysetSlice<T> implements Iterable<T> {
+
+    private final List<T> content;
+    private final KeysetCursor nextCursor;
+
+    public KeysetSlice(List<T> content, KeysetCursor nextCursor) {
+        this.content = Collections.unmodifiableList(content);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getNumberOfElements() {
+        return content.size();
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * @return The cursor of the next slice, or {@code null} if this is the last one.
+     */
+    public KeysetCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return The opaque token of the next slice, or {@code null} if this is the last one.
+     */
+    public String getNext() {
+        return nextCursor != null ? nextCursor.encode() : null;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return content.iterator();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc;
+
+import org.pensatocode.simplicity.jdbc.mapper.EntityModel;
+import org.pensatocode.simplicity.jdbc.mapper.EntityRowMapper;
+import org.pensatocode.simplicity.jdbc.mapper.ResultSetColumns;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.pensatocode.simplicity.util.StringUtil.convertToSnakeCase;
+
+/**
+ * The columns to read into a type other than the entity, so that queries select only those columns,
+ * see {@link JdbcRepository#findAll(Projection, String, org.springframework.data.domain.Pageable)}.
+ *
+ * <p>The projected type is either a class, whose persistent fields name the columns like the fields of an
+ * entity, or an interface, whose getters ({@code getUserName()}, {@code isEnabled()}) name them and are
+ * backed by the values read.
+ *
+ * @param <P> the projected type.
+ */
+public final class Projection<P> {
+
+    private static final ClassValue<Projection<?>> PROJECTIONS = new ClassValue<>() {
+        @Override
+        protected Projection<?> computeValue(Class<?> type) {
+            return new Projection<>(type);
+        }
+    };
+
+    private final Class<P> type;
+    private final List<String> columns;
+    private final RowMapper<P> rowMapper;
+
+    private Projection(Class<P> type) {
+        this.type = type;
+        if (type.isInterface()) {
+            Map<Method, Integer> getters = new HashMap<>();
+            List<Class<?>> types = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (Method method : type.getMethods()) {
+                String property = propertyName(method);
+                if (property == null) {
+                    continue;
+                }
+                String column = convertToSnakeCase(property);
+                int index = names.indexOf(column);
+                if (index < 0) {
+                    index = names.size();
+                    names.add(column);
+                    types.add(method.getReturnType());
+                }
+                getters.put(method, index);
+            }
+            this.columns = Collections.unmodifiableList(names);
+            this.rowMapper = new ProxyRowMapper<>(type, getters, columns, types.toArray(new Class<?>[0]));
+        } else {
+            EntityModel<P> model = EntityModel.of(type);
+            List<String> names = new ArrayList<>();
+            for (EntityModel.Property property : model.getProperties()) {
+                names.add(property.getColumn());
+            }
+            this.columns = Collections.unmodifiableList(names);
+            this.rowMapper = new EntityRowMapper<>(model);
+        }
+        if (columns.isEmpty()) {
+            throw new InvalidDataAccessApiUsageException(type.getName() + " doesn't project any column.");
+        }
+    }
+
+    /**
+     * @param type A class with persistent fields, or an interface with getters.
+     * @return The projection of the type, built once per type.
+     */
+    @SuppressWarnings("unchecked")
+    public static <P> Projection<P> of(Class<P> type) {
+        return (Projection<P>) PROJECTIONS.get(type);
+    }
+
+    public Class<P> getType() {
+        return type;
+    }
+
+    /**
+     * @return The column names, in snake case.
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public RowMapper<P> getRowMapper() {
+        return rowMapper;
+    }
+
+    @Override
+    public String toString() {
+        return "Projection" + columns + " of " + type.getName();
+    }
+
+    private static String propertyName(Method method) {
+        if (method.getParameterCount() > 0 || method.getReturnType() == void.class
+            || Modifier.isStatic(method.getModifiers()) || method.isDefault()) {
+            return null;
+        }
+        String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3) {
+            return Character.toLowerCase(name.charAt(3)) + name.substring(4);
+        }
+        if (name.startsWith("is") && name.length() > 2
+            && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+            return Character.toLowerCase(name.charAt(2)) + name.substring(3);
+        }
+        return null;
+    }
+
+    /**
+     * Maps rows to proxies of an interface, each backed by the array of its column values. Columns are read
+     * by label, as paged queries may select others before them.
+     */
+    private static final class ProxyRowMapper<P> implements RowMapper<P> {
+
+        private final Class<P> type;
+        private final Map<Method, Integer> getters;
+        private final Class<?>[] types;
+        private final ResultSetColumns resultSetColumns;
+
+        ProxyRowMapper(Class<P> type, Map<Method, Integer> getters, List<String> columns, Class<?>[] types) {
+            this.type = type;
+            this.getters = getters;
+            this.types = types;
+            this.resultSetColumns = new ResultSetColumns(types.length,
+                label -> columns.indexOf(label.toLowerCase(Locale.ROOT)));
+        }
+
+        @Override
+        public P mapRow(ResultSet rs, int rowNum) throws SQLException {
+            int[] columns = resultSetColumns.resolve(rs);
+            Object[] values = new Object[types.length];
+            for (int i = 0; i < types.length; i++) {
+                if (columns[i] > 0) {
+                    values[i] = JdbcUtils.getResultSetValue(rs, columns[i], types[i]);
+                }
+            }
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{ type }, new Values(this, values)));
+        }
+
+        private static Object defaultValue(Class<?> primitive) {
+            return Array.get(Array.newInstance(primitive, 1), 0);
+        }
+    }
+
+    /**
+     * Handler of one proxy, answering its getters from the values of its row.
+     */
+    private static final class Values implements InvocationHandler {
+
+        private final ProxyRowMapper<?> mapper;
+        private final Object[] values;
+
+        Values(ProxyRowMapper<?> mapper, Object[] values) {
+            this.mapper = mapper;
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Integer index = mapper.getters.get(method);
+            if (index != null) {
+                Object value = values[index];
+                return (value == null && method.getReturnType().isPrimitive())
+                    ? ProxyRowMapper.defaultValue(method.getReturnType()) : value;
+            }
+            if (method.isDefault()) {
+                return MethodHandles.privateLookupIn(mapper.type, MethodHandles.lookup())
+                    .unreflectSpecial(method, mapper.type)
+                    .bindTo(proxy)
+                    .invokeWithArguments(args == null ? new Object[0] : args);
+            }
+            switch (method.getName()) {
+                case "equals":
+                    return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+                        && Proxy.getInvocationHandler(args[0]) instanceof Values
+                        && Arrays.equals(values, ((Values) Proxy.getInvocationHandler(args[0])).values);
+                case "hashCode":
+                    return Arrays.hashCode(values);
+                case "toString":
+                    return mapper.type.getSimpleName() + Arrays.toString(values);
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        }
+    }
+}
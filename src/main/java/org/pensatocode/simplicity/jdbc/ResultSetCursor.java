@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Forward-only cursor over an open {@link ResultSet}, exposed as a {@link Stream}.
+ * Rows are mapped one at a time as the stream is consumed; the result set, its statement
+ * and the connection are released when the stream is closed, fully consumed, or fails.
+ *
+ * <p>A connection taken outside a transaction has its auto-commit turned off while the cursor is open,
+ * so that drivers honour the fetch size, and turned back on when it is closed.
+ */
+class ResultSetCursor<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResultSetCursor.class);
+
+    private final DataSource dataSource;
+    private final Connection connection;
+    private final boolean autoCommit;
+    private final Statement statement;
+    private final ResultSet resultSet;
+    private final RowMapper<T> rowMapper;
+    private final SQLExceptionTranslator translator;
+    private final String sql;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private int rowNum = 0;
+
+    /**
+     * @param autoCommit Whether to turn the auto-commit of the connection back on when closing.
+     */
+    ResultSetCursor(DataSource dataSource, Connection connection, boolean autoCommit, Statement statement,
+                    ResultSet resultSet, RowMapper<T> rowMapper, SQLExceptionTranslator translator, String sql) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED);
+        this.dataSource = dataSource;
+        this.connection = connection;
+        this.autoCommit = autoCommit;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.rowMapper = rowMapper;
+        this.translator = translator;
+        this.sql = sql;
+    }
+
+    Stream<T> stream() {
+        return StreamSupport.stream(this, false).onClose(this::close);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (closed.get()) {
+            return false;
+        }
+        try {
+            if (!resultSet.next()) {
+                close();
+                return false;
+            }
+            action.accept(rowMapper.mapRow(resultSet, rowNum++));
+            return true;
+        } catch (SQLException ex) {
+            close();
+            throw translator.translate("ResultSetCursor", sql, ex);
+        } catch (RuntimeException | Error ex) {
+            // a failing row mapper or consumer leaves the stream unusable, closed or not
+            close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            JdbcUtils.closeResultSet(resultSet);
+            JdbcUtils.closeStatement(statement);
+            restoreAutoCommit(connection, autoCommit);
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * Turns auto-commit back on, which ends the transaction of the read, before the connection is released.
+     */
+    static void restoreAutoCommit(Connection connection, boolean autoCommit) {
+        if (!autoCommit) {
+            return;
+        }
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ex) {
+            LOG.debug("Could not restore auto-commit of a streaming connection", ex);
+        }
+    }
+}
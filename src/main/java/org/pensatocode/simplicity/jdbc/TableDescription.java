@@ -17,6 +17,7 @@
  */
 package org.pensatocode.simplicity.jdbc;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static java.util.Collections.singletonList;
@@ -28,6 +29,8 @@ public class TableDescription {
     private String fromClause;
     private List<String> pkColumns = singletonList("id");
     private List<String> columns;
+    private String versionColumn;
+    private String lastModifiedColumn;
 
 
     public TableDescription() {
@@ -72,4 +75,59 @@ public class TableDescription {
     public List<String> getColumns() {
         return columns;
     }
+
+    /**
+     * @return The column incremented on every update of a row, or {@code null}.
+     */
+    public String getVersionColumn() {
+        return versionColumn;
+    }
+
+    public void setVersionColumn(String versionColumn) {
+        this.versionColumn = versionColumn;
+    }
+
+    /**
+     * @return The timestamp column set on every insert and update of a row, or {@code null}.
+     */
+    public String getLastModifiedColumn() {
+        return lastModifiedColumn;
+    }
+
+    public void setLastModifiedColumn(String lastModifiedColumn) {
+        this.lastModifiedColumn = lastModifiedColumn;
+    }
+
+    /**
+     * @return Whether rows have a version or a last modified column, see {@link #getVersionColumn()}.
+     */
+    public boolean isVersioned() {
+        return versionColumn != null || lastModifiedColumn != null;
+    }
+
+    /**
+     * @return Whether updates are checked against the version of the row, which happens when the version
+     *         column is one of the mapped columns, so that the version read with the entity can be bound.
+     */
+    public boolean isVersionChecked() {
+        return versionColumn != null && columns != null && columns.contains(versionColumn);
+    }
+
+    /**
+     * @param projected The columns to select, primary key columns included or not.
+     * @return A description of the same table whose select clause lists only the given columns.
+     */
+    public TableDescription project(List<String> projected) {
+        List<String> others = new ArrayList<>(projected.size());
+        for (String column : projected) {
+            if (!pkColumns.contains(column)) {
+                others.add(column);
+            }
+        }
+        TableDescription projection = new TableDescription(tableName, others, String.join(", ", projected), fromClause,
+            pkColumns.toArray(new String[0]));
+        projection.setVersionColumn(versionColumn);
+        projection.setLastModifiedColumn(lastModifiedColumn);
+        return projection;
+    }
 }
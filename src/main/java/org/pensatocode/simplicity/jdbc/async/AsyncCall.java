@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Task of a call of {@link AsyncJdbcRepository}, completing its future with the result of the call.
+ * Unlike the tasks of {@link CompletableFuture#supplyAsync(Supplier, java.util.concurrent.Executor)}, its
+ * future can be failed by the {@link BoundedExecutor} when the call can't run.
+ */
+final class AsyncCall<R> implements Runnable {
+
+    private final CompletableFuture<R> future = new CompletableFuture<>();
+    private final Supplier<R> call;
+
+    AsyncCall(Supplier<R> call) {
+        this.call = call;
+    }
+
+    CompletableFuture<R> future() {
+        return future;
+    }
+
+    @Override
+    public void run() {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            future.complete(call.get());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    void fail(Throwable e) {
+        future.completeExceptionally(e);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.async;
+
+import org.pensatocode.simplicity.jdbc.AbstractJdbcRepository;
+import org.pensatocode.simplicity.jdbc.JdbcRepository;
+import org.pensatocode.simplicity.jdbc.KeysetCursor;
+import org.pensatocode.simplicity.jdbc.KeysetSlice;
+import org.pensatocode.simplicity.jdbc.routing.ReadRouting;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Non-blocking facade of a {@link JdbcRepository}: every call runs on an executor and returns a
+ * {@link CompletableFuture}, so independent queries can run in parallel, e.g.
+ *
+ * <pre>
+ * CompletableFuture&lt;User&gt; user = users.findOne(userId);
+ * CompletableFuture&lt;Page&lt;Comment&gt;&gt; comments = comments.findAll(PageRequest.of(0, 20));
+ * CompletableFuture.allOf(user, comments).join();
+ * </pre>
+ *
+ * The calls run on other threads, outside of any transaction of the caller; each repository call runs
+ * in its own transaction, as configured on the repository. They share the read stickiness of the calling
+ * thread, see {@link ReadRouting#withStickiness(java.util.function.Supplier)}.
+ *
+ * @param <T> the domain type the repository manages.
+ * @param <ID> the type of the id of the entity the repository manages.
+ */
+public class AsyncJdbcRepository<T, ID extends Serializable> {
+
+    private final JdbcRepository<T, ID> repository;
+    private final Executor executor;
+
+    /**
+     * Runs the calls on the executor shared by the data source of the repository, see
+     * {@link BoundedExecutor#forDataSource(DataSource)}.
+     */
+    public AsyncJdbcRepository(AbstractJdbcRepository<T, ID> repository) {
+        this(repository, BoundedExecutor.forDataSource(repository.getJdbcTemplate().getDataSource()));
+    }
+
+    /**
+     * Runs the calls on the executor shared by the given data source, see {@link BoundedExecutor#forDataSource(DataSource)}.
+     * Useful when the repository is a proxy of its interface.
+     */
+    public AsyncJdbcRepository(JdbcRepository<T, ID> repository, DataSource dataSource) {
+        this(repository, BoundedExecutor.forDataSource(dataSource));
+    }
+
+    /**
+     * @param executor The executor of the calls; wrap it in a {@link BoundedExecutor} to limit how many
+     *                 connections the calls may take at once.
+     */
+    public AsyncJdbcRepository(JdbcRepository<T, ID> repository, Executor executor) {
+        Assert.notNull(repository, "The repository must not be null.");
+        Assert.notNull(executor, "The executor must not be null.");
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    public JdbcRepository<T, ID> getRepository() {
+        return repository;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Runs any call of the repository asynchronously.
+     */
+    public <R> CompletableFuture<R> async(Function<? super JdbcRepository<T, ID>, R> call) {
+        AsyncCall<R> task = new AsyncCall<>(ReadRouting.withStickiness(() -> call.apply(repository)));
+        executor.execute(task);
+        return task.future();
+    }
+
+    public CompletableFuture<Long> count() {
+        return async(JdbcRepository::count);
+    }
+
+    public CompletableFuture<Boolean> exists(ID id) {
+        return async(r -> r.exists(id));
+    }
+
+    public CompletableFuture<T> findOne(ID id) {
+        return async(r -> r.findOne(id));
+    }
+
+    public CompletableFuture<List<T>> findAll() {
+        return async(JdbcRepository::findAll);
+    }
+
+    public CompletableFuture<List<T>> findAll(Sort sort) {
+        return async(r -> r.findAll(sort));
+    }
+
+    public CompletableFuture<Page<T>> findAll(Pageable pageable) {
+        return async(r -> r.findAll(pageable));
+    }
+
+    public CompletableFuture<List<T>> findAll(String whereClause) {
+        return async(r -> r.findAll(whereClause));
+    }
+
+    public CompletableFuture<List<T>> findAll(String whereClause, Sort sort) {
+        return async(r -> r.findAll(whereClause, sort));
+    }
+
+    public CompletableFuture<Page<T>> findAll(String whereClause, Pageable pageable) {
+        return async(r -> r.findAll(whereClause, pageable));
+    }
+
+    public CompletableFuture<List<T>> findAll(String whereClause, Object[] params, Sort sort) {
+        return async(r -> r.findAll(whereClause, params, sort));
+    }
+
+    public CompletableFuture<Page<T>> findAll(String whereClause, Object[] params, Pageable pageable) {
+        return async(r -> r.findAll(whereClause, params, pageable));
+    }
+
+    public CompletableFuture<List<T>> findAll(Iterable<ID> ids) {
+        return async(r -> r.findAll(ids));
+    }
+
+    public CompletableFuture<Slice<T>> findSlice(Pageable pageable) {
+        return async(r -> r.findSlice(pageable));
+    }
+
+    public CompletableFuture<Slice<T>> findSlice(String whereClause, Pageable pageable) {
+        return async(r -> r.findSlice(whereClause, pageable));
+    }
+
+    public CompletableFuture<KeysetSlice<T>> findAllAfter(KeysetCursor cursor, Sort sort, int limit) {
+        return async(r -> r.findAllAfter(cursor, sort, limit));
+    }
+
+    public CompletableFuture<KeysetSlice<T>> findAllAfter(String whereClause, KeysetCursor cursor, Sort sort, int limit) {
+        return async(r -> r.findAllAfter(whereClause, cursor, sort, limit));
+    }
+
+    public <S extends T> CompletableFuture<S> save(S entity) {
+        return async(r -> r.save(entity));
+    }
+
+    public <S extends T> CompletableFuture<List<S>> save(Iterable<S> entities) {
+        return async(r -> r.save(entities));
+    }
+
+    public CompletableFuture<Integer> delete(ID id) {
+        return async(r -> r.delete(id));
+    }
+
+    public CompletableFuture<Integer> delete(Iterable<ID> ids) {
+        return async(r -> r.delete(ids));
+    }
+
+    public CompletableFuture<Integer> deleteAll(String whereClause, Object... params) {
+        return async(r -> r.deleteAll(whereClause, params));
+    }
+}
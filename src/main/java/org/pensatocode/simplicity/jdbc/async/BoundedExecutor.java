@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.async;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor that runs at most a fixed number of tasks at a time on a delegate executor. Tasks over the
+ * limit wait in a queue instead of holding a thread, so the limit costs nothing while they wait.
+ *
+ * <p>Repositories using the same connection pool should share one instance (see
+ * {@link #forDataSource(DataSource)}), so that together they never take more than their share of it.
+ *
+ * <p>A task the delegate rejects, when it was shut down for instance, is failed: the future of a call of
+ * {@link AsyncJdbcRepository} completes exceptionally, and other {@link Future} tasks are cancelled.
+ */
+public class BoundedExecutor implements Executor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoundedExecutor.class);
+
+    /**
+     * Pool size properties of the common connection pools: HikariCP, Commons DBCP 2, Tomcat JDBC and c3p0.
+     */
+    private static final String[] POOL_SIZE_PROPERTIES = { "maximumPoolSize", "maxTotal", "maxActive", "maxPoolSize" };
+
+    private static final Map<DataSource, BoundedExecutor> SHARED = new WeakHashMap<>();
+
+    private final Executor delegate;
+    private final boolean ownsDelegate;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    public BoundedExecutor(Executor delegate, int maxConcurrency) {
+        this(delegate, false, maxConcurrency);
+    }
+
+    private BoundedExecutor(Executor delegate, boolean ownsDelegate, int maxConcurrency) {
+        Assert.notNull(delegate, "The executor must not be null.");
+        Assert.isTrue(maxConcurrency > 0, "The maximum concurrency must be positive.");
+        this.delegate = delegate;
+        this.ownsDelegate = ownsDelegate;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * @return The executor shared by the async repositories of the given data source: at most half of the
+     *         connections of its pool, so that blocking callers still get the other half, on
+     *         {@link #defaultExecutor()}. Shut it down with {@link #shutdown(DataSource)} when the data
+     *         source is closed.
+     */
+    public static BoundedExecutor forDataSource(DataSource dataSource) {
+        synchronized (SHARED) {
+            return SHARED.computeIfAbsent(dataSource,
+                ds -> new BoundedExecutor(defaultExecutor(), true, Math.max(1, poolSize(ds) / 2)));
+        }
+    }
+
+    /**
+     * Shuts down the executor shared by the given data source, if any; the next call of
+     * {@link #forDataSource(DataSource)} creates another. Tasks already running complete, waiting ones fail.
+     */
+    public static void shutdown(DataSource dataSource) {
+        BoundedExecutor shared;
+        synchronized (SHARED) {
+            shared = SHARED.remove(dataSource);
+        }
+        if (shared != null) {
+            shared.shutdown();
+        }
+    }
+
+    /**
+     * @return Virtual threads when the runtime has them (Java 21+), otherwise a pool of daemon threads;
+     *         either way the number of threads in use is bounded by the limit of the {@link BoundedExecutor}.
+     */
+    public static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "simplicity-async-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return The maximum size of the connection pool behind the data source, or the number of processors
+     *         if it can't be told.
+     */
+    public static int poolSize(DataSource dataSource) {
+        DataSource target = dataSource;
+        while (target instanceof DelegatingDataSource && ((DelegatingDataSource) target).getTargetDataSource() != null) {
+            target = ((DelegatingDataSource) target).getTargetDataSource();
+        }
+        if (target != null) {
+            BeanWrapper pool = PropertyAccessorFactory.forBeanPropertyAccess(target);
+            for (String property : POOL_SIZE_PROPERTIES) {
+                if (pool.isReadableProperty(property)) {
+                    Object size = pool.getPropertyValue(property);
+                    if (size instanceof Number && ((Number) size).intValue() > 0) {
+                        return ((Number) size).intValue();
+                    }
+                }
+            }
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        LOG.info("Pool size of {} is unknown, using the number of processors: {}", dataSource, processors);
+        return processors;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return The number of tasks running now.
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return The number of tasks waiting for a free slot.
+     */
+    public int getQueuedCount() {
+        return pending.size();
+    }
+
+    /**
+     * Shuts down the delegate when this executor created it, see {@link #forDataSource(DataSource)}; an
+     * executor given to the constructor is left to its owner.
+     */
+    public void shutdown() {
+        if (ownsDelegate) {
+            ((ExecutorService) delegate).shutdown();
+        }
+    }
+
+    /**
+     * @throws java.util.concurrent.RejectedExecutionException if the delegate rejects the given task at once.
+     */
+    @Override
+    public void execute(Runnable task) {
+        Assert.notNull(task, "The task must not be null.");
+        pending.add(task);
+        drain(task);
+    }
+
+    /**
+     * Hands the waiting tasks to the delegate while permits are free. Runs on the thread submitting a task,
+     * or on the worker thread of the task that just completed, so a rejection is only thrown back to the
+     * caller of {@link #execute(Runnable)} for its own task: the others are failed.
+     */
+    private void drain(Runnable submitted) {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Runnable task = pending.poll();
+            if (task == null) {
+                permits.release();
+                continue;
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                        drain(null);
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                if (task == submitted) {
+                    throw e;
+                }
+                reject(task, e);
+            }
+        }
+    }
+
+    private static void reject(Runnable task, RuntimeException e) {
+        if (task instanceof AsyncCall) {
+            ((AsyncCall<?>) task).fail(e);
+        } else if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        } else {
+            LOG.error("Task rejected by the executor, dropped: {}", task, e);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.cache;
+
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Bounded cache of the entities read by a repository.
+ *
+ * <p>Entries are kept in LRU order and bounded by count and, optionally, by weight. When the cache is
+ * full, a new entry is only admitted if its keys have been requested more often lately than the
+ * least recently used entry (TinyLFU admission, counted by a {@link FrequencySketch}), so a scan of
+ * cold rows doesn't flush the hot ones. Entries expire a fixed time after they were loaded.
+ *
+ * <p>Lookups read a concurrent map without locking. Their accesses are recorded in a small ring buffer,
+ * replayed into the LRU order and the sketch under the lock once it fills up or before an entry is added;
+ * accesses overwritten before a replay are lost, which only blurs the recency and frequency estimates.
+ *
+ * <p>Concurrent misses of the same key share a single load. A key invalidated while it is loading
+ * is not cached with the loaded value. Cached entities are shared by every caller and must be
+ * treated as read only.
+ *
+ * @param <K> The key type, the entity id.
+ * @param <V> The entity type.
+ */
+public class EntityCache<K, V> {
+
+    private final long maximumSize;
+    private final long maximumWeight;
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+    private final long expireAfterWrite;
+
+    private static final int ACCESS_BUFFER_SIZE = 128;
+
+    private final ConcurrentMap<K, Entry<V>> data = new ConcurrentHashMap<>();
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final AtomicReferenceArray<K> accesses = new AtomicReferenceArray<>(ACCESS_BUFFER_SIZE);
+    private final AtomicLong accessCount = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private EntityCache(Builder builder) {
+        this.maximumSize = builder.maximumSize;
+        this.maximumWeight = builder.maximumWeight;
+        this.weigher = builder.weigher;
+        this.expireAfterWrite = builder.expireAfterWrite;
+        this.sketch = new FrequencySketch(maximumSize == Long.MAX_VALUE ? 1024 : maximumSize);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The cached value, or {@code null} if the key isn't cached.
+     */
+    public V getIfPresent(K key) {
+        V value = lookup(key);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * @return The cached value, or {@code null} if the key isn't cached, without counting a hit or a miss,
+     *         nor an access for the admission policy.
+     */
+    public V peek(K key) {
+        Entry<V> entry = data.get(key);
+        return (entry == null || System.nanoTime() - entry.writtenAt >= expireAfterWrite) ? null : entry.value;
+    }
+
+    /**
+     * Returns the cached value of the key, loading it on a miss. Only the lookups count as accesses
+     * for the admission policy.
+     *
+     * @param loader Reads the value of a missing key; a {@code null} result is returned but not cached.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = lookup(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> running = loading.putIfAbsent(key, load);
+        if (running != null) {
+            return join(running);
+        }
+        loads.increment();
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            loading.remove(key, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+        lock.lock();
+        try {
+            // an invalidation during the load removed it from the map, its value may be stale
+            if (loading.remove(key, load) && value != null) {
+                put(key, value);
+            }
+        } finally {
+            lock.unlock();
+        }
+        load.complete(value);
+        return value;
+    }
+
+    public void put(K key, V value) {
+        Assert.notNull(value, "Cached values must not be null.");
+        long entryWeight = weigher.applyAsLong(key, value);
+        Entry<V> entry = new Entry<>(value, entryWeight, System.nanoTime());
+        lock.lock();
+        try {
+            drainAccesses();
+            Entry<V> previous = entries.put(key, entry);
+            data.put(key, entry);
+            weight += entryWeight - (previous == null ? 0L : previous.weight);
+            if (previous == null || entryWeight > previous.weight) {
+                evict(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            loading.remove(key);
+            remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            loading.clear();
+            entries.clear();
+            data.clear();
+            weight = 0L;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long size() {
+        return data.size();
+    }
+
+    public CacheStats stats() {
+        long size;
+        long weight;
+        lock.lock();
+        try {
+            size = entries.size();
+            weight = this.weight;
+        } finally {
+            lock.unlock();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), loads.sum(), evictions.sum(), expirations.sum(), size, weight);
+    }
+
+    private V lookup(K key) {
+        recordAccess(key);
+        Entry<V> entry = data.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.writtenAt >= expireAfterWrite) {
+            lock.lock();
+            try {
+                if (data.get(key) == entry) {
+                    remove(key);
+                    expirations.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Records the access in the ring buffer, replaying the buffer when this access fills it, unless another
+     * thread holds the lock.
+     */
+    private void recordAccess(K key) {
+        long count = accessCount.getAndIncrement();
+        int index = (int) (count & (ACCESS_BUFFER_SIZE - 1));
+        accesses.lazySet(index, key);
+        if (index == ACCESS_BUFFER_SIZE - 1 && lock.tryLock()) {
+            try {
+                drainAccesses();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replays the recorded accesses into the sketch and the LRU order. Called with the lock held.
+     */
+    private void drainAccesses() {
+        for (int i = 0; i < ACCESS_BUFFER_SIZE; i++) {
+            K key = accesses.getAndSet(i, null);
+            if (key != null) {
+                sketch.increment(key);
+                entries.get(key);
+            }
+        }
+    }
+
+    /**
+     * Brings the cache back within its bounds after {@code candidate} was added, evicting the least
+     * recently used entries unless the candidate is less popular than them.
+     */
+    private void evict(K candidate) {
+        Iterator<Map.Entry<K, Entry<V>>> lru = entries.entrySet().iterator();
+        while ((entries.size() > maximumSize || weight > maximumWeight) && lru.hasNext()) {
+            Map.Entry<K, Entry<V>> victim = lru.next();
+            if (victim.getKey().equals(candidate)) {
+                continue;
+            }
+            K evicted = sketch.frequency(candidate) > sketch.frequency(victim.getKey()) ? victim.getKey() : candidate;
+            if (evicted == candidate) {
+                remove(candidate);
+                evictions.increment();
+                return;
+            }
+            weight -= victim.getValue().weight;
+            lru.remove();
+            data.remove(victim.getKey());
+            evictions.increment();
+        }
+        if (entries.size() > maximumSize || weight > maximumWeight) {
+            // the candidate alone is over the bounds
+            remove(candidate);
+            evictions.increment();
+        }
+    }
+
+    private void remove(K key) {
+        data.remove(key);
+        Entry<V> removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+        private final long writtenAt;
+
+        private Entry(V value, long weight, long writtenAt) {
+            this.value = value;
+            this.weight = weight;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    public static final class Builder {
+
+        private long maximumSize = Long.MAX_VALUE;
+        private long maximumWeight = Long.MAX_VALUE;
+        private ToLongBiFunction<Object, Object> weigher = (key, value) -> 1L;
+        private long expireAfterWrite = Long.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        public Builder maximumSize(long maximumSize) {
+            Assert.isTrue(maximumSize >= 0, "The maximum size must not be negative.");
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param weigher The weight of an entry, e.g. an estimate of its size in bytes.
+         */
+        @SuppressWarnings("unchecked")
+        public <K, V> Builder maximumWeight(long maximumWeight, ToLongBiFunction<? super K, ? super V> weigher) {
+            Assert.isTrue(maximumWeight >= 0, "The maximum weight must not be negative.");
+            Assert.notNull(weigher, "The weigher must not be null.");
+            this.maximumWeight = maximumWeight;
+            this.weigher = (ToLongBiFunction<Object, Object>) weigher;
+            return this;
+        }
+
+        public Builder expireAfterWrite(Duration timeToLive) {
+            Assert.isTrue(!timeToLive.isNegative(), "The time to live must not be negative.");
+            this.expireAfterWrite = timeToLive.toNanos();
+            return this;
+        }
+
+        public <K, V> EntityCache<K, V> build() {
+            Assert.isTrue(maximumSize != Long.MAX_VALUE || maximumWeight != Long.MAX_VALUE,
+                "The cache must be bounded by size or weight.");
+            return new EntityCache<>(this);
+        }
+    }
+}
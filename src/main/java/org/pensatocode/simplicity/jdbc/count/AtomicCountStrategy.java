@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.count;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count seeded with {@code SELECT count(*)} on first use and then adjusted by the inserts and deletes
+ * of the repository. Writes made before the seed, or by other processes, are not followed.
+ */
+public class AtomicCountStrategy implements CountStrategy {
+
+    private static final long UNSEEDED = -1L;
+
+    private final AtomicLong counter = new AtomicLong(UNSEEDED);
+
+    @Override
+    public long count(RowCounter counter) {
+        long count = this.counter.get();
+        if (count == UNSEEDED) {
+            synchronized (this) {
+                count = this.counter.get();
+                if (count == UNSEEDED) {
+                    count = counter.exactCount();
+                    this.counter.set(count);
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void rowsInserted(long rows) {
+        add(rows);
+    }
+
+    @Override
+    public void rowsDeleted(long rows) {
+        add(-rows);
+    }
+
+    @Override
+    public void invalidate() {
+        counter.set(UNSEEDED);
+    }
+
+    private void add(long rows) {
+        if (rows != 0) {
+            // an unseeded counter stays unseeded, the seed will include these rows
+            counter.getAndUpdate(count -> count == UNSEEDED ? UNSEEDED : Math.max(0L, count + rows));
+        }
+    }
+}
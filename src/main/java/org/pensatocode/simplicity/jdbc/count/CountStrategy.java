@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.count;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * How a repository obtains the total number of rows of its table, as reported by the pages it returns.
+ *
+ * <p>Stateful strategies keep a count per table, so every repository needs its own instance;
+ * the factory methods below always return a new one.
+ */
+public interface CountStrategy {
+
+    /**
+     * @param counter The row counts of the repository table.
+     * @return The number of rows of the table.
+     */
+    long count(RowCounter counter);
+
+    /**
+     * Called after this repository has inserted rows.
+     */
+    default void rowsInserted(long rows) {
+    }
+
+    /**
+     * Called after this repository has deleted rows.
+     */
+    default void rowsDeleted(long rows) {
+    }
+
+    /**
+     * Called when this repository changed the table by an unknown number of rows.
+     */
+    default void invalidate() {
+    }
+
+    /**
+     * @return A strategy that runs {@code SELECT count(*)} on every call.
+     */
+    static CountStrategy exact() {
+        return new ExactCountStrategy();
+    }
+
+    /**
+     * @return A strategy that counts the rows once and then only follows the inserts and deletes of
+     *         this repository. Cheap, but it drifts when other processes write to the table.
+     */
+    static CountStrategy atomic() {
+        return new AtomicCountStrategy();
+    }
+
+    /**
+     * @return A strategy that keeps the exact count for the given time and then refreshes it in the background.
+     */
+    static CountStrategy ttl(Duration timeToLive) {
+        return new TtlCountStrategy(timeToLive);
+    }
+
+    /**
+     * @param executor The executor of the background refreshes.
+     */
+    static CountStrategy ttl(Duration timeToLive, Executor executor) {
+        return new TtlCountStrategy(timeToLive, executor);
+    }
+
+    /**
+     * @return A strategy that reads the row count estimated by the database statistics,
+     *         falling back to the exact count when there is no estimate.
+     */
+    static CountStrategy estimated() {
+        return new EstimatedCountStrategy();
+    }
+}
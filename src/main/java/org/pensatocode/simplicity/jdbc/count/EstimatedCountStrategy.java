@@ -0,0 +1,30 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.count;
+
+/**
+ * Count taken from the database statistics (e.g. {@code pg_class.reltuples} on PostgreSQL). The
+ * estimate is only as fresh as the last time the database analyzed the table, but it is read
+ * without scanning it.
+ */
+public class EstimatedCountStrategy implements CountStrategy {
+
+    @Override
+    public long count(RowCounter counter) {
+        long estimate = counter.estimatedCount();
+        return estimate < 0 ? counter.exactCount() : estimate;
+    }
+}
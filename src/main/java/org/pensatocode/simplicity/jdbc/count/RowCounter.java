@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.count;
+
+/**
+ * Source of row counts of one table, given by the repository to its {@link CountStrategy}.
+ */
+public interface RowCounter {
+
+    /**
+     * @return The number of rows of the table, read with {@code SELECT count(*)}.
+     */
+    long exactCount();
+
+    /**
+     * @return The number of rows of the table according to the database statistics, or {@code -1} when
+     *         the database doesn't keep any statistics for the table.
+     */
+    long estimatedCount();
+}
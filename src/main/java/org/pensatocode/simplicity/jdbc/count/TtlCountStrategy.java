@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.count;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exact count kept for a time to live. The first call counts synchronously; once the count expires it
+ * is still returned while a single refresh runs on the executor, so readers never wait for a
+ * {@code count(*)} after the first one. Inserts and deletes of the repository are applied to the
+ * kept count in the meantime.
+ */
+public class TtlCountStrategy implements CountStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TtlCountStrategy.class);
+
+    private final long timeToLive;
+    private final Executor executor;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Refreshes on daemon threads shared by the strategies built without an executor, rather than on the common
+     * pool, whose few threads shouldn't block on a {@code count(*)}.
+     */
+    public TtlCountStrategy(Duration timeToLive) {
+        this(timeToLive, RefreshExecutor.INSTANCE);
+    }
+
+    public TtlCountStrategy(Duration timeToLive, Executor executor) {
+        Assert.isTrue(!timeToLive.isNegative(), "The time to live must not be negative.");
+        Assert.notNull(executor, "The executor must not be null.");
+        this.timeToLive = timeToLive.toNanos();
+        this.executor = executor;
+    }
+
+    @Override
+    public long count(RowCounter counter) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = new Snapshot(counter.exactCount(), System.nanoTime());
+                    snapshot = current;
+                }
+            }
+        } else if (System.nanoTime() - current.takenAt >= timeToLive && refreshing.compareAndSet(false, true)) {
+            refresh(counter);
+        }
+        return current.count;
+    }
+
+    @Override
+    public void rowsInserted(long rows) {
+        add(rows);
+    }
+
+    @Override
+    public void rowsDeleted(long rows) {
+        add(-rows);
+    }
+
+    @Override
+    public synchronized void invalidate() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            snapshot = new Snapshot(current.count, current.takenAt - timeToLive);
+        }
+    }
+
+    private synchronized void add(long rows) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            snapshot = new Snapshot(Math.max(0L, current.count + rows), current.takenAt);
+        }
+    }
+
+    private void refresh(RowCounter counter) {
+        try {
+            executor.execute(() -> {
+                try {
+                    long startedAt = System.nanoTime();
+                    long count = counter.exactCount();
+                    synchronized (this) {
+                        snapshot = new Snapshot(count, startedAt);
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warn("Row count refresh failed, the previous count is kept: {}", e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Created on first use; idle threads end after a minute.
+     */
+    private static final class RefreshExecutor {
+
+        private static final AtomicInteger THREADS = new AtomicInteger();
+        private static final Executor INSTANCE = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "simplicity-count-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Snapshot {
+        private final long count;
+        private final long takenAt;
+
+        private Snapshot(long count, long takenAt) {
+            this.count = count;
+            this.takenAt = takenAt;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.exception;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Exception thrown when updating rows whose version changed since they were read, see
+ * {@link org.pensatocode.simplicity.jdbc.TableDescription#isVersionChecked()}. Unlike
+ * {@link NoRecordUpdatedException}, the rows exist: reading them again and retrying may succeed.
+ */
+public class VersionConflictException extends OptimisticLockingFailureException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String tableName;
+    private final List<?> ids;
+
+    /**
+     * @param ids The ids of the rows in conflict.
+     */
+    public VersionConflictException(String tableName, List<?> ids) {
+        super(format("Rows with id in %s of table %s were updated by another transaction", ids, tableName));
+        this.tableName = tableName;
+        this.ids = List.copyOf(ids);
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public List<?> getIds() {
+        return ids;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.mapper;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Mapping of an entity generated at compile time for the classes annotated with {@link JdbcEntity}: the
+ * same columns as its {@link EntityModel}, with a row mapper and an id accessor that read and write the
+ * properties directly instead of through reflection.
+ *
+ * <p>The generated class is named after the entity, {@code Comment_Metadata} for {@code Comment} and
+ * {@code Outer_Inner_Metadata} for a nested {@code Outer.Inner}, in the same package, and is found by
+ * {@link #of(Class)}.
+ *
+ * @param <T> the domain type.
+ * @param <ID> the type of the id of the domain type.
+ */
+public interface EntityMetadata<T, ID extends Serializable> {
+
+    String CLASS_SUFFIX = "_Metadata";
+
+    Class<T> getEntityClass();
+
+    /**
+     * @return The persistent properties, in the order of the entity fields.
+     */
+    List<String> getProperties();
+
+    /**
+     * @return The column of each property, in the same order.
+     */
+    List<String> getColumns();
+
+    /**
+     * @return The name of the id property, see {@link JdbcEntity#id()}.
+     */
+    String getIdName();
+
+    TransactionalRowMapper<T> getRowMapper();
+
+    IdAccessor<T, ID> getIdAccessor();
+
+    /**
+     * @return The generated metadata of the entity class, or {@code null} if it wasn't generated.
+     */
+    static <T> EntityMetadata<T, ?> of(Class<T> entityClass) {
+        return GeneratedMetadata.of(entityClass);
+    }
+}
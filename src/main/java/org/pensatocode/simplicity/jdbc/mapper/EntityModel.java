@@ -0,0 +1,361 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.mapper;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.SqlTypeValue;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.pensatocode.simplicity.util.StringUtil.convertToSnakeCase;
+
+/**
+ * Mapping model of an entity class, built once per class from its declared fields: one
+ * {@link Property} per persistent field, with its column name, SQL type and a {@link VarHandle}
+ * to read and write it. Static, transient and synthetic fields are not persistent; persistent fields
+ * can't be final.
+ *
+ * @param <T> the domain type.
+ */
+public final class EntityModel<T> {
+
+    private static final ClassValue<EntityModel<?>> MODELS = new ClassValue<>() {
+        @Override
+        protected EntityModel<?> computeValue(Class<?> type) {
+            return new EntityModel<>(type);
+        }
+    };
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final List<Property> properties;
+    private final Map<String, Property> byName;
+
+    private EntityModel(Class<T> type) {
+        this.type = type;
+        MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new InvalidDataAccessApiUsageException("Cannot access the fields of " + type.getName(), e);
+        }
+        MethodHandle noArgs;
+        try {
+            noArgs = lookup.findConstructor(type, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            noArgs = null;
+        }
+        this.constructor = noArgs;
+        List<Property> list = new ArrayList<>();
+        Map<String, Property> names = new HashMap<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (!isPersistent(field)) {
+                continue;
+            }
+            if (Modifier.isFinal(field.getModifiers())) {
+                // its column would be selected, but the value read could never be set
+                throw new InvalidDataAccessApiUsageException("Persistent field " + field
+                    + " can't be final, make it transient to leave it out");
+            }
+            Property property;
+            try {
+                property = new Property(list.size(), field, lookup.unreflectVarHandle(field));
+            } catch (IllegalAccessException e) {
+                throw new InvalidDataAccessApiUsageException("Cannot access field " + field, e);
+            }
+            list.add(property);
+            names.put(property.getColumn().toLowerCase(Locale.ROOT), property);
+            names.putIfAbsent(property.getName().toLowerCase(Locale.ROOT), property);
+        }
+        this.properties = Collections.unmodifiableList(list);
+        this.byName = names;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> EntityModel<T> of(Class<T> type) {
+        return (EntityModel<T>) MODELS.get(type);
+    }
+
+    public static boolean isPersistent(Field field) {
+        int modifiers = field.getModifiers();
+        return !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic();
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @param name A column name or a field name, in any case.
+     * @return The matching property, or {@code null} if there is none.
+     */
+    public Property getProperty(String name) {
+        return byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return A new instance through the no-arguments constructor.
+     */
+    @SuppressWarnings("unchecked")
+    public T newInstance() {
+        if (constructor == null) {
+            throw new InvalidDataAccessApiUsageException(type.getName() + " has no constructor without arguments");
+        }
+        try {
+            return (T) constructor.invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvalidDataAccessApiUsageException("Failed to instantiate " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Reads one column of the current row into a property of the target.
+     */
+    @FunctionalInterface
+    interface ColumnReader {
+        void read(ResultSet rs, int column, Object target) throws SQLException;
+    }
+
+    /**
+     * A persistent field of the entity.
+     */
+    public static final class Property {
+
+        private final int index;
+        private final String name;
+        private final String column;
+        private final Class<?> type;
+        private final int sqlType;
+        private final VarHandle handle;
+        private final ColumnReader reader;
+
+        Property(int index, Field field, VarHandle handle) {
+            this.index = index;
+            this.name = field.getName();
+            this.column = convertToSnakeCase(field.getName());
+            this.type = field.getType();
+            this.sqlType = sqlType(type);
+            this.handle = handle;
+            this.reader = reader(type, handle);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * @return The {@link Types} code to bind the property with, or {@link SqlTypeValue#TYPE_UNKNOWN}.
+         */
+        public int getSqlType() {
+            return sqlType;
+        }
+
+        /**
+         * @return The value of the property, converted to a type JDBC drivers can bind.
+         */
+        public Object getValue(Object entity) {
+            Object value = handle.get(entity);
+            if (value instanceof Enum) {
+                return ((Enum<?>) value).name();
+            }
+            if (value instanceof Character) {
+                return value.toString();
+            }
+            if (value instanceof Instant) {
+                return Timestamp.from((Instant) value);
+            }
+            return value;
+        }
+
+        public void setValue(Object entity, Object value) {
+            handle.set(entity, value);
+        }
+
+        /**
+         * Reads the given column of the current row into this property of the target, using the
+         * typed getter matching the field type.
+         */
+        public void read(ResultSet rs, int column, Object target) throws SQLException {
+            reader.read(rs, column, target);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static ColumnReader reader(Class<?> type, VarHandle handle) {
+            if (type == long.class) {
+                return (rs, i, target) -> handle.set(target, rs.getLong(i));
+            }
+            if (type == int.class) {
+                return (rs, i, target) -> handle.set(target, rs.getInt(i));
+            }
+            if (type == short.class) {
+                return (rs, i, target) -> handle.set(target, rs.getShort(i));
+            }
+            if (type == byte.class) {
+                return (rs, i, target) -> handle.set(target, rs.getByte(i));
+            }
+            if (type == double.class) {
+                return (rs, i, target) -> handle.set(target, rs.getDouble(i));
+            }
+            if (type == float.class) {
+                return (rs, i, target) -> handle.set(target, rs.getFloat(i));
+            }
+            if (type == boolean.class) {
+                return (rs, i, target) -> handle.set(target, rs.getBoolean(i));
+            }
+            if (type == char.class) {
+                return (rs, i, target) -> {
+                    String value = rs.getString(i);
+                    handle.set(target, value == null || value.isEmpty() ? '\u0000' : value.charAt(0));
+                };
+            }
+            if (type == Long.class) {
+                return (rs, i, target) -> {
+                    long value = rs.getLong(i);
+                    handle.set(target, rs.wasNull() ? null : (Long) value);
+                };
+            }
+            if (type == Integer.class) {
+                return (rs, i, target) -> {
+                    int value = rs.getInt(i);
+                    handle.set(target, rs.wasNull() ? null : (Integer) value);
+                };
+            }
+            if (type == String.class) {
+                return (rs, i, target) -> handle.set(target, rs.getString(i));
+            }
+            if (type == BigDecimal.class) {
+                return (rs, i, target) -> handle.set(target, rs.getBigDecimal(i));
+            }
+            if (type == byte[].class) {
+                return (rs, i, target) -> handle.set(target, rs.getBytes(i));
+            }
+            if (type == Character.class) {
+                return (rs, i, target) -> {
+                    String value = rs.getString(i);
+                    handle.set(target, value == null || value.isEmpty() ? null : (Character) value.charAt(0));
+                };
+            }
+            if (type == Instant.class) {
+                return (rs, i, target) -> {
+                    Timestamp value = rs.getTimestamp(i);
+                    handle.set(target, value == null ? null : value.toInstant());
+                };
+            }
+            if (type == java.util.Date.class) {
+                return (rs, i, target) -> {
+                    Timestamp value = rs.getTimestamp(i);
+                    handle.set(target, value == null ? null : new java.util.Date(value.getTime()));
+                };
+            }
+            if (type.isEnum()) {
+                return (rs, i, target) -> {
+                    String value = rs.getString(i);
+                    handle.set(target, value == null ? null : Enum.valueOf((Class<Enum>) type, value));
+                };
+            }
+            return (rs, i, target) -> handle.set(target, rs.getObject(i, type));
+        }
+
+        private static int sqlType(Class<?> type) {
+            if (type == String.class || type.isEnum()) {
+                return Types.VARCHAR;
+            }
+            if (type == long.class || type == Long.class) {
+                return Types.BIGINT;
+            }
+            if (type == int.class || type == Integer.class) {
+                return Types.INTEGER;
+            }
+            if (type == short.class || type == Short.class) {
+                return Types.SMALLINT;
+            }
+            if (type == byte.class || type == Byte.class) {
+                return Types.TINYINT;
+            }
+            if (type == boolean.class || type == Boolean.class) {
+                return Types.BOOLEAN;
+            }
+            if (type == double.class || type == Double.class) {
+                return Types.DOUBLE;
+            }
+            if (type == float.class || type == Float.class) {
+                return Types.REAL;
+            }
+            if (type == char.class || type == Character.class) {
+                return Types.CHAR;
+            }
+            if (type == BigDecimal.class) {
+                return Types.NUMERIC;
+            }
+            if (type == LocalDate.class || type == java.sql.Date.class) {
+                return Types.DATE;
+            }
+            if (type == LocalTime.class || type == java.sql.Time.class) {
+                return Types.TIME;
+            }
+            if (type == LocalDateTime.class || type == Instant.class
+                || type == java.util.Date.class || type == Timestamp.class) {
+                return Types.TIMESTAMP;
+            }
+            if (type == OffsetDateTime.class) {
+                return Types.TIMESTAMP_WITH_TIMEZONE;
+            }
+            if (type == byte[].class) {
+                return Types.VARBINARY;
+            }
+            return SqlTypeValue.TYPE_UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.mapper;
+
+import org.pensatocode.simplicity.jdbc.mapper.EntityModel.Property;
+import org.pensatocode.simplicity.util.WeakIdentityMap;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link TransactionalRowMapper} generated from an {@link EntityModel}, so no mapping code has to be written.
+ *
+ * <p>Rows are read by column index, resolved once per result set from its metadata, with the typed
+ * getter matching each field ({@code getLong}, {@code getInt}...). Values to write are copied straight
+ * from the fields into the parameter array, without building a column map per entity.
+ *
+ * @param <T> the domain type.
+ */
+public class EntityRowMapper<T> extends TransactionalRowMapper<T> {
+
+    private final EntityModel<T> model;
+    private final Map<String, Integer> types;
+    private final ResultSetColumns resultSetColumns;
+    private final WeakIdentityMap<String[], ColumnSelection> selections = new WeakIdentityMap<>();
+
+    public EntityRowMapper(EntityModel<T> model) {
+        this.model = model;
+        Map<String, Integer> sqlTypes = new LinkedHashMap<>();
+        for (Property property : model.getProperties()) {
+            sqlTypes.put(property.getColumn(), property.getSqlType());
+        }
+        this.types = Collections.unmodifiableMap(sqlTypes);
+        this.resultSetColumns = new ResultSetColumns(model.getProperties().size(), label -> {
+            Property property = model.getProperty(label);
+            return (property != null) ? property.getIndex() : -1;
+        });
+    }
+
+    public EntityRowMapper(Class<T> type) {
+        this(EntityModel.of(type));
+    }
+
+    public EntityModel<T> getModel() {
+        return model;
+    }
+
+    @Override
+    public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        int[] columns = resultSetColumns.resolve(rs);
+        T entity = model.newInstance();
+        List<Property> properties = model.getProperties();
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] > 0) {
+                properties.get(i).read(rs, columns[i], entity);
+            }
+        }
+        return entity;
+    }
+
+    @Override
+    public Map<String, Object> mapColumns(T entity) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Property property : model.getProperties()) {
+            values.put(property.getColumn(), property.getValue(entity));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Integer> mapTypes() {
+        return types;
+    }
+
+    @Override
+    public List<Object> columnsValues(T entity, List<String> columns) throws NoSuchFieldException {
+        return Arrays.asList(values(entity, resolve(columns.toArray(new String[0])).properties));
+    }
+
+    /**
+     * Unlike the map based implementation, {@code null} values are allowed.
+     */
+    @Override
+    public Object[] columnsValues(T entity, String[] columns) throws NoSuchFieldException {
+        return values(entity, select(columns).properties);
+    }
+
+    @Override
+    public int[] columnsTypes(String... columns) throws NoSuchFieldException {
+        return select(columns).types.clone();
+    }
+
+    private Object[] values(T entity, Property[] properties) {
+        Object[] result = new Object[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            result[i] = properties[i].getValue(entity);
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the properties of the given column names. Repositories pass the same few arrays over and
+     * over (insert, update, upsert columns), so each resolution is kept by array identity.
+     */
+    private ColumnSelection select(String[] columns) throws NoSuchFieldException {
+        ColumnSelection current = selections.get(columns);
+        if (current == null) {
+            current = resolve(columns);
+            selections.putIfAbsent(columns, current);
+        }
+        return current;
+    }
+
+    private ColumnSelection resolve(String[] columns) throws NoSuchFieldException {
+        Property[] properties = new Property[columns.length];
+        int[] sqlTypes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Property property = model.getProperty(columns[i]);
+            if (property == null) {
+                throw new NoSuchFieldException("Column name not found in entity: " + columns[i]);
+            }
+            properties[i] = property;
+            sqlTypes[i] = property.getSqlType();
+        }
+        return new ColumnSelection(properties, sqlTypes);
+    }
+
+    private static final class ColumnSelection {
+
+        private final Property[] properties;
+        private final int[] types;
+
+        ColumnSelection(Property[] properties, int[] types) {
+            this.properties = properties;
+            this.types = types;
+        }
+    }
+}
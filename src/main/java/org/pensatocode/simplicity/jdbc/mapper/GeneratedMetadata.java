@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.mapper;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+
+import java.util.Optional;
+
+/**
+ * Finds the {@link EntityMetadata} generated for an entity class, once per class.
+ */
+final class GeneratedMetadata {
+
+    private static final ClassValue<Optional<EntityMetadata<?, ?>>> METADATA = new ClassValue<>() {
+        @Override
+        protected Optional<EntityMetadata<?, ?>> computeValue(Class<?> type) {
+            String name = type.getName().replace('$', '_') + EntityMetadata.CLASS_SUFFIX;
+            if (!ClassUtils.isPresent(name, type.getClassLoader())) {
+                return Optional.empty();
+            }
+            Class<?> metadataClass = ClassUtils.resolveClassName(name, type.getClassLoader());
+            if (!EntityMetadata.class.isAssignableFrom(metadataClass)) {
+                return Optional.empty();
+            }
+            // Outer$Inner and a top level Outer_Inner share the same name
+            EntityMetadata<?, ?> metadata = (EntityMetadata<?, ?>) BeanUtils.instantiateClass(metadataClass);
+            return (metadata.getEntityClass() == type) ? Optional.of(metadata) : Optional.empty();
+        }
+    };
+
+    private GeneratedMetadata() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> EntityMetadata<T, ?> of(Class<T> entityClass) {
+        return (EntityMetadata<T, ?>) METADATA.get(entityClass).orElse(null);
+    }
+}
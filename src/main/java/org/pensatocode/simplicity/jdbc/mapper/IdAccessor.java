@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.mapper;
+
+import java.io.Serializable;
+
+/**
+ * Reads and writes the id property of an entity. Resolved once per entity class, so the write
+ * path doesn't pay for introspection on every call.
+ *
+ * @param <T> the domain type.
+ * @param <ID> the type of the id of the domain type.
+ */
+public interface IdAccessor<T, ID extends Serializable> {
+
+    ID getId(T entity);
+
+    void setId(T entity, ID id);
+
+    /**
+     * @return The type of the id property, with primitives boxed.
+     */
+    Class<ID> getIdType();
+
+    /**
+     * @return An accessor using the id property's getter and setter, or the field itself when there are none.
+     * @throws org.springframework.dao.InvalidDataAccessApiUsageException if the class has no such property.
+     */
+    static <T, ID extends Serializable> IdAccessor<T, ID> of(Class<T> entityClass, String idName) {
+        return new MethodHandleIdAccessor<>(entityClass, idName);
+    }
+}
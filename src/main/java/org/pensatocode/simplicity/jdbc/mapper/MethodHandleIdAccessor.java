@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.mapper;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.util.ClassUtils;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import static org.pensatocode.simplicity.util.StringUtil.capitalize;
+
+/**
+ * {@link IdAccessor} backed by {@link MethodHandle}s to the id getter and setter, falling back to
+ * the id field when the class doesn't declare them.
+ */
+class MethodHandleIdAccessor<T, ID extends Serializable> implements IdAccessor<T, ID> {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<T> entityClass;
+    private final String idName;
+    private final Class<ID> idType;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+
+    @SuppressWarnings("unchecked")
+    MethodHandleIdAccessor(Class<T> entityClass, String idName) {
+        this.entityClass = entityClass;
+        this.idName = idName;
+        Field field = findField(entityClass, idName);
+        Method getterMethod = findGetter(entityClass, idName);
+        if (getterMethod == null && field == null) {
+            throw new InvalidDataAccessApiUsageException(
+                "No getter or field for id property '" + idName + "' in " + entityClass.getName());
+        }
+        Class<?> type = getterMethod != null ? getterMethod.getReturnType() : field.getType();
+        Method setterMethod = findSetter(entityClass, idName, type);
+        if (setterMethod == null && (field == null || Modifier.isFinal(field.getModifiers()))) {
+            throw new InvalidDataAccessApiUsageException(
+                "No setter or writable field for id property '" + idName + "' in " + entityClass.getName());
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            this.getter = (getterMethod != null ? lookup.unreflect(accessible(getterMethod))
+                : lookup.unreflectGetter(accessible(field))).asType(GETTER_TYPE);
+            this.setter = (setterMethod != null ? lookup.unreflect(accessible(setterMethod))
+                : lookup.unreflectSetter(accessible(field))).asType(SETTER_TYPE);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new InvalidDataAccessApiUsageException(
+                "Cannot access id property '" + idName + "' in " + entityClass.getName(), e);
+        }
+        this.idType = (Class<ID>) ClassUtils.resolvePrimitiveIfNecessary(type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ID getId(T entity) {
+        try {
+            return (ID) (Object) getter.invokeExact((Object) entity);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvalidDataAccessApiUsageException(
+                "Failed to read id property '" + idName + "' of " + entityClass.getName(), e);
+        }
+    }
+
+    @Override
+    public void setId(T entity, ID id) {
+        try {
+            setter.invokeExact((Object) entity, (Object) id);
+        } catch (ClassCastException e) {
+            throw new InvalidDataAccessApiUsageException(
+                "Cannot set id " + id + " on property '" + idName + "' of " + entityClass.getName(), e);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvalidDataAccessApiUsageException(
+                "Failed to write id property '" + idName + "' of " + entityClass.getName(), e);
+        }
+    }
+
+    @Override
+    public Class<ID> getIdType() {
+        return idType;
+    }
+
+    private static Method findGetter(Class<?> clazz, String property) {
+        for (String name : new String[]{ "get" + capitalize(property), "is" + capitalize(property) }) {
+            try {
+                Method method = clazz.getMethod(name);
+                if (method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                // try the next naming convention
+            }
+        }
+        return null;
+    }
+
+    private static Method findSetter(Class<?> clazz, String property, Class<?> type) {
+        String name = "set" + capitalize(property);
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == 1
+                && method.getParameterTypes()[0].isAssignableFrom(type)
+                && !Modifier.isStatic(method.getModifiers())) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static <A extends AccessibleObject> A accessible(A member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    private static Field findField(Class<?> clazz, String property) {
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(property);
+            } catch (NoSuchFieldException e) {
+                // look in the superclass
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.mapper;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToIntFunction;
+
+import static org.springframework.jdbc.support.JdbcUtils.lookupColumnName;
+
+/**
+ * Resolves the column index of each property of a row mapper in the result sets it maps.
+ *
+ * <p>Each thread keeps the indexes of the result set it is mapping, so they are resolved once per result
+ * set however many queries run at the same time. The indexes are also kept by the column labels of the
+ * result set, so that another execution of the same query only reads its labels.
+ */
+public final class ResultSetColumns {
+
+    private static final int MAX_SHAPES = 64;
+
+    private final int size;
+    private final ToIntFunction<String> property;
+    private final ConcurrentMap<String, int[]> shapes = new ConcurrentHashMap<>();
+    private final ThreadLocal<Shape> current = new ThreadLocal<>();
+
+    /**
+     * @param size     The number of properties.
+     * @param property The index of the property read from a column label, or -1 if none.
+     */
+    public ResultSetColumns(int size, ToIntFunction<String> property) {
+        this.size = size;
+        this.property = property;
+    }
+
+    /**
+     * @return The column index of each property in the result set, 0 when the column is absent.
+     *         The array is shared, and must not be modified.
+     */
+    public int[] resolve(ResultSet rs) throws SQLException {
+        Shape shape = current.get();
+        if (shape == null || shape.resultSet.get() != rs) {
+            shape = new Shape(rs, columns(rs.getMetaData()));
+            current.set(shape);
+        }
+        return shape.columns;
+    }
+
+    private int[] columns(ResultSetMetaData metaData) throws SQLException {
+        int count = metaData.getColumnCount();
+        String[] labels = new String[count];
+        for (int index = 1; index <= count; index++) {
+            labels[index - 1] = lookupColumnName(metaData, index);
+        }
+        String signature = String.join("\u0000", labels);
+        int[] columns = shapes.get(signature);
+        if (columns != null) {
+            return columns;
+        }
+        columns = new int[size];
+        for (int index = 1; index <= count; index++) {
+            int i = property.applyAsInt(labels[index - 1]);
+            if (i >= 0 && columns[i] == 0) {
+                columns[i] = index;
+            }
+        }
+        // ad hoc queries could have any labels, only so many are kept
+        if (shapes.size() < MAX_SHAPES) {
+            shapes.putIfAbsent(signature, columns);
+        }
+        return columns;
+    }
+
+    private static final class Shape {
+
+        private final WeakReference<ResultSet> resultSet;
+        private final int[] columns;
+
+        Shape(ResultSet rs, int[] columns) {
+            this.resultSet = new WeakReference<>(rs);
+            this.columns = columns;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records repository operations in a Micrometer {@link MeterRegistry}; {@code micrometer-core} must be
+ * on the classpath. Meters, all tagged with {@code repository} and {@code method}:
+ *
+ * <ul>
+ *     <li>{@code simplicity.repository.operations}: latency histogram, also tagged with {@code outcome};</li>
+ *     <li>{@code simplicity.repository.phase}: time per {@code phase} ({@code sql}, {@code execution}, {@code mapping});</li>
+ *     <li>{@code simplicity.repository.rows}: rows returned or affected;</li>
+ *     <li>{@code simplicity.repository.batch.size}: entities or ids given to bulk operations;</li>
+ *     <li>{@code simplicity.repository.count.refresh}: time of the {@code count(*)} runs of the count strategy
+ *     (tagged with {@code repository} only).</li>
+ * </ul>
+ *
+ * The meters of each repository and method are registered once, on its first operation.
+ */
+public class MicrometerRepositoryMetrics implements RepositoryMetrics {
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, ConcurrentMap<String, Meters>> meters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> countRefreshes = new ConcurrentHashMap<>();
+
+    public MicrometerRepositoryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void operationCompleted(OperationSample sample) {
+        Meters meters = meters(sample.getRepository(), sample.getMethod());
+        if (!sample.isSucceeded()) {
+            meters.errors.record(sample.getTotalNanos(), TimeUnit.NANOSECONDS);
+            return;
+        }
+        meters.successes.record(sample.getTotalNanos(), TimeUnit.NANOSECONDS);
+        meters.sql.record(sample.getSqlNanos(), TimeUnit.NANOSECONDS);
+        meters.execution.record(sample.getExecutionNanos(), TimeUnit.NANOSECONDS);
+        meters.mapping.record(sample.getMappingNanos(), TimeUnit.NANOSECONDS);
+        if (sample.getRows() >= 0) {
+            meters.rows.record(sample.getRows());
+        }
+        if (sample.getBatchSize() >= 0) {
+            meters.batchSize.record(sample.getBatchSize());
+        }
+    }
+
+    @Override
+    public void countRefreshed(String repository, long nanos) {
+        Timer timer = countRefreshes.get(repository);
+        if (timer == null) {
+            timer = countRefreshes.computeIfAbsent(repository, name -> Timer.builder("simplicity.repository.count.refresh")
+                .tag("repository", name)
+                .register(registry));
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Meters meters(String repository, String method) {
+        ConcurrentMap<String, Meters> methods = meters.get(repository);
+        if (methods == null) {
+            methods = meters.computeIfAbsent(repository, name -> new ConcurrentHashMap<>());
+        }
+        Meters current = methods.get(method);
+        if (current == null) {
+            current = methods.computeIfAbsent(method, name -> new Meters(registry, Tags.of("repository", repository, "method", name)));
+        }
+        return current;
+    }
+
+    /**
+     * The meters of one method of a repository.
+     */
+    private static final class Meters {
+
+        private final Timer successes;
+        private final Timer errors;
+        private final Timer sql;
+        private final Timer execution;
+        private final Timer mapping;
+        private final DistributionSummary rows;
+        private final DistributionSummary batchSize;
+
+        Meters(MeterRegistry registry, Tags tags) {
+            this.successes = operations(registry, tags, "success");
+            this.errors = operations(registry, tags, "error");
+            this.sql = phase(registry, tags, "sql");
+            this.execution = phase(registry, tags, "execution");
+            this.mapping = phase(registry, tags, "mapping");
+            this.rows = DistributionSummary.builder("simplicity.repository.rows")
+                .tags(tags)
+                .register(registry);
+            this.batchSize = DistributionSummary.builder("simplicity.repository.batch.size")
+                .tags(tags)
+                .register(registry);
+        }
+
+        private static Timer operations(MeterRegistry registry, Tags tags, String outcome) {
+            return Timer.builder("simplicity.repository.operations")
+                .tags(tags)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+        }
+
+        private static Timer phase(MeterRegistry registry, Tags tags, String phase) {
+            return Timer.builder("simplicity.repository.phase")
+                .tags(tags)
+                .tag("phase", phase)
+                .register(registry);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.metrics;
+
+/**
+ * Measures of one completed repository operation.
+ */
+public final class OperationSample {
+
+    private final String repository;
+    private final String method;
+    private final boolean succeeded;
+    private final long totalNanos;
+    private final long sqlNanos;
+    private final long mappingNanos;
+    private final long rows;
+    private final int batchSize;
+
+    OperationSample(String repository, String method, boolean succeeded, long totalNanos, long sqlNanos,
+                    long mappingNanos, long rows, int batchSize) {
+        this.repository = repository;
+        this.method = method;
+        this.succeeded = succeeded;
+        this.totalNanos = totalNanos;
+        this.sqlNanos = sqlNanos;
+        this.mappingNanos = mappingNanos;
+        this.rows = rows;
+        this.batchSize = batchSize;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return Time spent building (or looking up) the SQL statements.
+     */
+    public long getSqlNanos() {
+        return sqlNanos;
+    }
+
+    /**
+     * @return Time spent in the row mapper.
+     */
+    public long getMappingNanos() {
+        return mappingNanos;
+    }
+
+    /**
+     * @return Time spent in JDBC, i.e. everything but building the SQL and mapping the rows.
+     */
+    public long getExecutionNanos() {
+        return Math.max(0L, totalNanos - sqlNanos - mappingNanos);
+    }
+
+    /**
+     * @return The number of rows returned or affected, or {@code -1} if the operation didn't report it.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The number of entities or ids given to a bulk operation, or {@code -1} for single-row operations.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public String toString() {
+        return repository + "." + method + "{succeeded=" + succeeded + ", totalNanos=" + totalNanos +
+            ", sqlNanos=" + sqlNanos + ", mappingNanos=" + mappingNanos + ", rows=" + rows +
+            ", batchSize=" + batchSize + "}";
+    }
+}
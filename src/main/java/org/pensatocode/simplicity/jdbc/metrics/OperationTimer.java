@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.metrics;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Times one repository operation and its phases. Used as:
+ *
+ * <pre>
+ * OperationTimer timer = OperationTimer.start(metrics, repository, "findAll");
+ * try {
+ *     long mark = timer.mark();
+ *     String sql = statements.selectAll();
+ *     timer.sqlBuilt(mark);
+ *     return timer.rows(jdbcTemplate.query(sql, timer.timeMapping(rowMapper)));
+ * } finally {
+ *     timer.stop();
+ * }
+ * </pre>
+ *
+ * When the metrics are disabled, {@link #start} returns a shared timer that does nothing, not even
+ * read the clock. Not thread safe: a timer belongs to the thread running the operation.
+ */
+public class OperationTimer {
+
+    private static final OperationTimer NOOP = new OperationTimer(null, null, null, 0L);
+
+    private final RepositoryMetrics metrics;
+    private final String repository;
+    private final String method;
+    private final long startedAt;
+    private long sqlNanos;
+    private long mappingNanos;
+    private long rows = -1L;
+    private int batchSize = -1;
+    private boolean succeeded;
+
+    private OperationTimer(RepositoryMetrics metrics, String repository, String method, long startedAt) {
+        this.metrics = metrics;
+        this.repository = repository;
+        this.method = method;
+        this.startedAt = startedAt;
+    }
+
+    public static OperationTimer start(RepositoryMetrics metrics, String repository, String method) {
+        if (!metrics.isEnabled()) {
+            return NOOP;
+        }
+        return new OperationTimer(metrics, repository, method, System.nanoTime());
+    }
+
+    /**
+     * @return The current time, to be given to {@link #sqlBuilt(long)}.
+     */
+    public long mark() {
+        return this == NOOP ? 0L : System.nanoTime();
+    }
+
+    /**
+     * Adds the time since {@code mark} to the SQL building phase.
+     */
+    public void sqlBuilt(long mark) {
+        if (this != NOOP) {
+            sqlNanos += System.nanoTime() - mark;
+        }
+    }
+
+    /**
+     * @return The mapper, timed as the mapping phase of this operation.
+     */
+    public <T> RowMapper<T> timeMapping(RowMapper<T> rowMapper) {
+        if (this == NOOP) {
+            return rowMapper;
+        }
+        return new TimedRowMapper<>(rowMapper);
+    }
+
+    public void batchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Marks the operation as succeeded with the given number of rows returned or affected.
+     */
+    public void rows(long rows) {
+        this.rows = rows;
+        this.succeeded = true;
+    }
+
+    /**
+     * Marks the operation as succeeded.
+     */
+    public void succeeded() {
+        this.succeeded = true;
+    }
+
+    /**
+     * Reports the operation; one not marked as succeeded is reported as failed.
+     */
+    public void stop() {
+        if (this == NOOP) {
+            return;
+        }
+        long totalNanos = System.nanoTime() - startedAt;
+        metrics.operationCompleted(new OperationSample(
+            repository, method, succeeded, totalNanos, sqlNanos, mappingNanos, rows, batchSize));
+    }
+
+    private final class TimedRowMapper<T> implements RowMapper<T> {
+
+        private final RowMapper<T> rowMapper;
+
+        private TimedRowMapper(RowMapper<T> rowMapper) {
+            this.rowMapper = rowMapper;
+        }
+
+        @Override
+        public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return rowMapper.mapRow(rs, rowNum);
+            } finally {
+                mappingNanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.metrics;
+
+/**
+ * Receives the measures of the operations of a repository, see
+ * {@link org.pensatocode.simplicity.jdbc.AbstractJdbcRepository#setMetrics(RepositoryMetrics)}.
+ *
+ * <p>Implementations are called on the thread of the operation, right after it completes, and must be
+ * thread safe and fast; {@link MicrometerRepositoryMetrics} records them in a Micrometer registry.
+ */
+public interface RepositoryMetrics {
+
+    /**
+     * Metrics that record nothing: operations aren't even timed.
+     */
+    RepositoryMetrics NONE = new RepositoryMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void operationCompleted(OperationSample sample) {
+        }
+    };
+
+    /**
+     * @return Whether the repository should measure its operations at all.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    void operationCompleted(OperationSample sample);
+
+    /**
+     * Called when the repository ran a {@code count(*)} for its {@link org.pensatocode.simplicity.jdbc.count.CountStrategy},
+     * i.e. when the strategy seeded or refreshed its count.
+     */
+    default void countRefreshed(String repository, long nanos) {
+    }
+}
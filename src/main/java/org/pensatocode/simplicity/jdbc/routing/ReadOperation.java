@@ -0,0 +1,30 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.routing;
+
+import org.pensatocode.simplicity.jdbc.sql.SqlStatements;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * A read of a repository, run against the template and the statements of the chosen target.
+ *
+ * @param <R> the result type.
+ */
+@FunctionalInterface
+public interface ReadOperation<R> {
+
+    R run(JdbcTemplate jdbcTemplate, SqlStatements statements);
+}
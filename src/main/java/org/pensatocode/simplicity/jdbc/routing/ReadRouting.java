@@ -0,0 +1,271 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.routing;
+
+import org.pensatocode.simplicity.jdbc.sql.SqlStatements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Sends the reads of repositories to replica data sources, see
+ * {@link org.pensatocode.simplicity.jdbc.AbstractJdbcRepository#setReadRouting(ReadRouting)}.
+ *
+ * <p>Reads stay on the primary:
+ * <ul>
+ *     <li>inside a read-write transaction, whose changes the replicas can't see;</li>
+ *     <li>for the {@linkplain #getStickiness() stickiness} window after the current thread wrote through
+ *     a repository, so that a request reads its own writes despite the replication lag;</li>
+ *     <li>when no replica is available.</li>
+ * </ul>
+ * A replica that fails to give a connection is excluded for the {@linkplain #getRetryAfter() retry delay}
+ * and the read is run again on the primary, unless it already handed rows to a callback, see
+ * {@link #readRows(JdbcTemplate, SqlStatements, Function, RowCallbackHandler, Function)}. Every replica gets the dialect resolved for it by
+ * {@link org.pensatocode.simplicity.jdbc.sql.SqlGeneratorFactory}.
+ *
+ * <p>The reads of repositories are {@code @Transactional(readOnly=true)}: under a
+ * {@link org.springframework.jdbc.datasource.DataSourceTransactionManager}, their transaction checks out a
+ * connection of the primary before the read is routed. Give the transaction manager and the repositories a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} of the primary, so that its
+ * connections are only taken by the statements that run on it.
+ *
+ * <p>Calls of {@link org.pensatocode.simplicity.jdbc.async.AsyncJdbcRepository} run with the stickiness of
+ * the calling thread, see {@link #withStickiness(Supplier)}. One routing can be shared by the repositories of
+ * the same databases.
+ */
+public final class ReadRouting {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadRouting.class);
+
+    public static final Duration DEFAULT_STICKINESS = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(10);
+
+    private final List<ReplicaTarget> replicas;
+    private final ReplicaSelector selector;
+    private final Duration stickiness;
+    private final Duration retryAfter;
+    /**
+     * The time of the last write of the current thread, shared with the calls it runs on other threads.
+     */
+    private static final ThreadLocal<AtomicLong> LAST_WRITE = new ThreadLocal<>();
+
+    /**
+     * @param selector   Chooses among the available replicas.
+     * @param stickiness How long the reads of a thread stay on the primary after it wrote; zero to never stay.
+     * @param retryAfter How long a failed replica is excluded.
+     */
+    public ReadRouting(ReplicaSelector selector, Duration stickiness, Duration retryAfter, List<DataSource> replicas) {
+        Assert.notNull(selector, "The replica selector must not be null.");
+        Assert.isTrue(!stickiness.isNegative(), "The stickiness must not be negative.");
+        Assert.isTrue(!retryAfter.isNegative(), "The retry delay must not be negative.");
+        Assert.notEmpty(replicas, "At least one replica is required.");
+        List<ReplicaTarget> targets = new ArrayList<>(replicas.size());
+        for (DataSource replica : replicas) {
+            Assert.notNull(replica, "Replicas must not be null.");
+            targets.add(new ReplicaTarget(replica));
+        }
+        this.replicas = Collections.unmodifiableList(targets);
+        this.selector = selector;
+        this.stickiness = stickiness;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return A routing taking the replicas in turn, with the default stickiness and retry delay.
+     */
+    public static ReadRouting roundRobin(DataSource... replicas) {
+        return new ReadRouting(ReplicaSelector.roundRobin(), DEFAULT_STICKINESS, DEFAULT_RETRY_AFTER, List.of(replicas));
+    }
+
+    /**
+     * @return A routing taking the replica running the fewest reads, with the default stickiness and retry delay.
+     */
+    public static ReadRouting leastBusy(DataSource... replicas) {
+        return new ReadRouting(ReplicaSelector.leastBusy(), DEFAULT_STICKINESS, DEFAULT_RETRY_AFTER, List.of(replicas));
+    }
+
+    public List<ReplicaTarget> getReplicas() {
+        return replicas;
+    }
+
+    public Duration getStickiness() {
+        return stickiness;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Keeps the reads of the current thread on the primary for the stickiness window; called by repositories
+     * after every write.
+     */
+    public void markWritten() {
+        if (!stickiness.isZero()) {
+            lastWrite().set(System.nanoTime());
+        }
+    }
+
+    /**
+     * Ends the stickiness of the current thread, typically when a request completes on a pooled thread.
+     */
+    public void resetStickiness() {
+        LAST_WRITE.remove();
+    }
+
+    /**
+     * @return Whether the reads of the current thread go to the primary because of a recent write.
+     */
+    public boolean isSticky() {
+        AtomicLong written = LAST_WRITE.get();
+        return written != null && written.get() != 0L && System.nanoTime() - written.get() < stickiness.toNanos();
+    }
+
+    /**
+     * Wraps a call to run on another thread with the stickiness of the current thread: its reads stay on the
+     * primary after a recent write of the current thread, and its writes keep the reads of the current thread
+     * on the primary.
+     */
+    public static <R> Supplier<R> withStickiness(Supplier<R> call) {
+        AtomicLong written = lastWrite();
+        return () -> {
+            AtomicLong previous = LAST_WRITE.get();
+            LAST_WRITE.set(written);
+            try {
+                return call.get();
+            } finally {
+                if (previous != null) {
+                    LAST_WRITE.set(previous);
+                } else {
+                    LAST_WRITE.remove();
+                }
+            }
+        };
+    }
+
+    private static AtomicLong lastWrite() {
+        AtomicLong written = LAST_WRITE.get();
+        if (written == null) {
+            written = new AtomicLong();
+            LAST_WRITE.set(written);
+        }
+        return written;
+    }
+
+    /**
+     * Runs the read on a replica, or on the primary when the read must stay there or the replica fails.
+     * A read returning a {@link Stream} counts as running on the replica until the stream is closed.
+     *
+     * @param primaryStatements The statements of the repository on the primary.
+     * @param replicaStatements The statements of the repository on a replica, built for its dialect.
+     */
+    public <R> R read(JdbcTemplate primary, SqlStatements primaryStatements,
+                      Function<ReplicaTarget, SqlStatements> replicaStatements, ReadOperation<R> operation) {
+        return read(primary, primaryStatements, replicaStatements, operation, () -> true);
+    }
+
+    /**
+     * Runs a read handing its rows to a callback on a replica, or on the primary when the read must stay there
+     * or the replica fails before the callback got a row. A replica failing afterwards is excluded all the
+     * same, but the exception is thrown: running the read again would hand the first rows twice.
+     *
+     * @param operation Runs the read with the callback it is given, which passes the rows to {@code callback}.
+     */
+    public void readRows(JdbcTemplate primary, SqlStatements primaryStatements,
+                         Function<ReplicaTarget, SqlStatements> replicaStatements, RowCallbackHandler callback,
+                         Function<RowCallbackHandler, ReadOperation<?>> operation) {
+        boolean[] delivered = new boolean[1];
+        RowCallbackHandler tracked = rs -> {
+            delivered[0] = true;
+            callback.processRow(rs);
+        };
+        read(primary, primaryStatements, replicaStatements, operation.apply(tracked), () -> !delivered[0]);
+    }
+
+    private <R> R read(JdbcTemplate primary, SqlStatements primaryStatements,
+                       Function<ReplicaTarget, SqlStatements> replicaStatements, ReadOperation<R> operation,
+                       BooleanSupplier retryable) {
+        ReplicaTarget target = isSticky() || inReadWriteTransaction() ? null : select();
+        if (target == null) {
+            return operation.run(primary, primaryStatements);
+        }
+        target.readStarted();
+        boolean streaming = false;
+        try {
+            R result = operation.run(target.getJdbcTemplate(), replicaStatements.apply(target));
+            if (result instanceof Stream) {
+                streaming = true;
+                return onClose(result, target);
+            }
+            return result;
+        } catch (DataAccessResourceFailureException | TransientDataAccessResourceException | RecoverableDataAccessException e) {
+            target.failed(System.nanoTime() + retryAfter.toNanos());
+            LOG.warn("Replica {} failed, reading from the primary for the next {}", target.getDataSource(), retryAfter, e);
+            if (!retryable.getAsBoolean()) {
+                throw e;
+            }
+        } finally {
+            if (!streaming) {
+                target.readFinished();
+            }
+        }
+        return operation.run(primary, primaryStatements);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> R onClose(R stream, ReplicaTarget target) {
+        return (R) ((Stream<?>) stream).onClose(target::readFinished);
+    }
+
+    private ReplicaTarget select() {
+        long now = System.nanoTime();
+        List<ReplicaTarget> available = replicas;
+        for (ReplicaTarget replica : replicas) {
+            if (!replica.isAvailable(now)) {
+                available = new ArrayList<>(replicas.size());
+                for (ReplicaTarget candidate : replicas) {
+                    if (candidate.isAvailable(now)) {
+                        available.add(candidate);
+                    }
+                }
+                break;
+            }
+        }
+        return available.isEmpty() ? null : selector.select(available);
+    }
+
+    private static boolean inReadWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+            && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+}
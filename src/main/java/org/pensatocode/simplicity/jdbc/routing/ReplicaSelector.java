@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.routing;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the replica that serves a read.
+ *
+ * <p>Selectors may keep state, so every {@link ReadRouting} needs its own instance;
+ * the factory methods below always return a new one.
+ */
+@FunctionalInterface
+public interface ReplicaSelector {
+
+    /**
+     * @param candidates The replicas available, never empty.
+     * @return One of the candidates.
+     */
+    ReplicaTarget select(List<ReplicaTarget> candidates);
+
+    /**
+     * @return A selector that takes the candidates in turn.
+     */
+    static ReplicaSelector roundRobin() {
+        AtomicInteger next = new AtomicInteger();
+        return candidates -> candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * @return A selector that takes the candidate running the fewest reads of this routing, starting
+     *         the search at a rotating position so that ties are spread.
+     */
+    static ReplicaSelector leastBusy() {
+        AtomicInteger next = new AtomicInteger();
+        return candidates -> {
+            int size = candidates.size();
+            int start = Math.floorMod(next.getAndIncrement(), size);
+            ReplicaTarget best = candidates.get(start);
+            for (int i = 1; i < size && best.getActiveReads() > 0; i++) {
+                ReplicaTarget candidate = candidates.get((start + i) % size);
+                if (candidate.getActiveReads() < best.getActiveReads()) {
+                    best = candidate;
+                }
+            }
+            return best;
+        };
+    }
+}
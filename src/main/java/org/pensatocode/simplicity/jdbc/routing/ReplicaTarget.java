@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.routing;
+
+import org.pensatocode.simplicity.jdbc.sql.SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SqlGeneratorFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A replica data source of a {@link ReadRouting}, with the number of reads it is running and the
+ * time it is excluded until after a failure.
+ */
+public final class ReplicaTarget {
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final AtomicInteger activeReads = new AtomicInteger();
+    private volatile SqlGenerator sqlGenerator;
+    private volatile boolean failed;
+    private volatile long failedUntil;
+
+    ReplicaTarget(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * @return The generator of the replica's dialect, resolved by {@link SqlGeneratorFactory} on first use.
+     * @throws org.springframework.dao.DataAccessResourceFailureException if the replica can't be probed.
+     */
+    public SqlGenerator getSqlGenerator() {
+        SqlGenerator generator = sqlGenerator;
+        if (generator == null) {
+            generator = SqlGeneratorFactory.getInstance().getGenerator(dataSource);
+            sqlGenerator = generator;
+        }
+        return generator;
+    }
+
+    public int getActiveReads() {
+        return activeReads.get();
+    }
+
+    /**
+     * @return Whether the replica takes reads at the given {@link System#nanoTime()}.
+     */
+    boolean isAvailable(long now) {
+        return !failed || now - failedUntil >= 0;
+    }
+
+    void failed(long until) {
+        failedUntil = until;
+        failed = true;
+    }
+
+    void readStarted() {
+        activeReads.incrementAndGet();
+    }
+
+    void readFinished() {
+        activeReads.decrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaTarget[" + dataSource + "]";
+    }
+}
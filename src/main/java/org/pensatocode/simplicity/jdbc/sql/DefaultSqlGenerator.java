@@ -25,6 +25,7 @@ import org.springframework.data.domain.Sort.Order;
 
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.StringJoiner;
 
@@ -55,10 +56,25 @@ public class DefaultSqlGenerator implements SqlGenerator {
         return format("SELECT count(*) FROM %s", table.getTableName());
     }
 
+    public String count(TableDescription table, String whereClause) {
+        if (isBlank(whereClause)) {
+            return count(table);
+        }
+        return format("SELECT count(*) FROM %s WHERE %s", table.getFromClause(), whereClause);
+    }
+
+    public String estimatedCount(TableDescription table) {
+        return null;
+    }
+
     public String deleteAll(TableDescription table) {
         return format("DELETE FROM %s", table.getTableName());
     }
 
+    public String deleteAll(TableDescription table, String whereClause) {
+        return format("%s WHERE %s", deleteAll(table), whereClause);
+    }
+
     public String deleteByPK(TableDescription table) {
         return format("DELETE FROM %s WHERE %s",
             table.getTableName(),
@@ -97,6 +113,24 @@ public class DefaultSqlGenerator implements SqlGenerator {
         return sb.toString();
     }
 
+    public boolean supportsMultiRowInsert() {
+        return false;
+    }
+
+    public String insert(TableDescription table, Boolean autoGeneratedKey, int rows) {
+        List<String> columns = autoGeneratedKey ? table.getColumns() : allColumns(table);
+        String row = "(" + repeat(PARAM, COMMA, columns.size()) + ")";
+        StringBuilder sb = new StringBuilder();
+        sb
+            .append("INSERT INTO ")
+            .append(table.getTableName())
+            .append(" (")
+            .append(toFormattedString(columns))
+            .append(") VALUES ")
+            .append(repeat(row, COMMA, rows));
+        return sb.toString();
+    }
+
     public String selectAll(TableDescription table) {
         return format("SELECT %s FROM %s", table.getSelectClause(), table.getFromClause());
     }
@@ -134,22 +168,254 @@ public class DefaultSqlGenerator implements SqlGenerator {
     }
 
     public String selectAll(TableDescription table, Sort sort) {
-        return format("%S %S",selectAll(table), orderByClause(sort));
+        return format("%s%s", selectAll(table), orderByClause(sort));
     }
 
     public String selectAll(TableDescription table, String whereClause, Sort sort) {
-        return format("%S %S",selectAll(table, whereClause), orderByClause(sort));
+        return format("%s%s", selectAll(table, whereClause), orderByClause(sort));
+    }
+
+    public String selectPage(TableDescription table, String whereClause, Sort sort) {
+        Sort order = sort.isSorted() ? sort : sortByPKs(table.getPkColumns());
+        StringBuilder sb = new StringBuilder();
+        sb
+            .append("SELECT t2__.* FROM ( ")
+            .append("SELECT row_number() OVER ( ")
+            .append(orderByClause(order))
+            .append(" ) AS rn__, t1__.* ")
+            .append("FROM ( ")
+            .append(selectAll(table))
+            .append(" ) t1__ ");
+        if (!isBlank(whereClause)) {
+            sb
+                .append("WHERE ")
+                .append(whereClause);
+        }
+        sb.append(") t2__ WHERE t2__.rn__ BETWEEN ? AND ?");
+        return sb.toString();
+    }
+
+    public Object[] pageParams(long offset, int pageSize) {
+        return new Object[]{ offset + 1, offset + pageSize };
+    }
+
+    public String selectKeyset(TableDescription table, String whereClause, Sort sort, boolean seek) {
+        String where = seek ? and(whereClause, seekPredicate(sort)) : whereClause;
+        StringBuilder sb = new StringBuilder();
+        sb
+            .append("SELECT t2__.* FROM ( ")
+            .append("SELECT row_number() OVER ( ")
+            .append(orderByClause(sort))
+            .append(" ) AS rn__, t1__.* ")
+            .append("FROM ( ")
+            .append(selectAll(table))
+            .append(" ) t1__ ");
+        if (!isBlank(where)) {
+            sb
+                .append("WHERE ")
+                .append(where);
+        }
+        sb.append(") t2__ WHERE t2__.rn__ <= ? ORDER BY t2__.rn__");
+        return sb.toString();
+    }
+
+    public Object[] keysetParams(Sort sort, Object[] cursorValues, int limit) {
+        if (cursorValues == null) {
+            return new Object[]{ limit };
+        }
+        int size = cursorValues.length;
+        Object[] params = new Object[size * (size + 1) / 2 + 1];
+        int index = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j <= i; j++) {
+                params[index++] = cursorValues[j];
+            }
+        }
+        params[index] = limit;
+        return params;
+    }
+
+    public String selectVersionByPK(TableDescription table) {
+        return format("SELECT %s, %s FROM %s WHERE %s",
+            orNull(table.getVersionColumn()),
+            orNull(table.getLastModifiedColumn()),
+            table.getTableName(),
+            joinWithSuffix(EQ_PARAM, AND, table.getPkColumns()));
+    }
+
+    public String selectVersion(TableDescription table, String whereClause) {
+        String version = (table.getVersionColumn() != null) ? "SUM(" + table.getVersionColumn() + ")" : "NULL";
+        String lastModified = (table.getLastModifiedColumn() != null) ? "MAX(" + table.getLastModifiedColumn() + ")" : "NULL";
+        String select = format("SELECT COUNT(*), %s, %s FROM %s", version, lastModified, table.getTableName());
+        return isBlank(whereClause) ? select : format("%s WHERE %s", select, whereClause);
+    }
+
+    private static String orNull(String column) {
+        return (column != null) ? column : "NULL";
     }
 
     public String selectByPK(TableDescription table) {
         return format("%s WHERE %s", selectAll(table), joinWithSuffix(EQ_PARAM, AND, table.getPkColumns()));
     }
 
+    public String selectByPKs(TableDescription table, int count) {
+        return format("%s WHERE %s IN (%s)", selectAll(table), table.getPkColumns().get(0), repeat(PARAM, COMMA, count));
+    }
+
+    public String selectPKsByPKs(TableDescription table, int count) {
+        String pk = table.getPkColumns().get(0);
+        return format("SELECT %s FROM %s WHERE %s IN (%s)", pk, table.getTableName(), pk, repeat(PARAM, COMMA, count));
+    }
+
+    public boolean supportsArrayParameter() {
+        return false;
+    }
+
+    public String deleteByPKs(TableDescription table, int count) {
+        return format("%s WHERE %s IN (%s)", deleteAll(table), table.getPkColumns().get(0), repeat(PARAM, COMMA, count));
+    }
+
+    /**
+     * @throws UnsupportedOperationException unless the dialect {@link #supportsArrayParameter() supports arrays}.
+     */
+    public String deleteByPKArray(TableDescription table) {
+        throw new UnsupportedOperationException(
+            getClass().getSimpleName() + " does not support array parameters");
+    }
+
+    public String selectByPKArray(TableDescription table) {
+        throw new UnsupportedOperationException(
+            getClass().getSimpleName() + " does not support array parameters");
+    }
+
     public String update(TableDescription table) {
+        return update(table, table.getColumns());
+    }
+
+    /**
+     * With a {@link TableDescription#getVersionColumn() version column}, the version is incremented instead of
+     * set and, when it is {@link TableDescription#isVersionChecked() checked}, bound after the primary key.
+     */
+    public String update(TableDescription table, List<String> columns) {
+        String version = table.getVersionColumn();
+        if (version == null) {
+            return format("UPDATE %s SET %s WHERE %s",
+                table.getTableName(),
+                joinWithSuffix(EQ_PARAM, COMMA, columns),
+                joinWithSuffix(EQ_PARAM, AND, table.getPkColumns()));
+        }
+        List<String> set = new ArrayList<>(columns);
+        set.remove(version);
+        String increment = format("%1$s = %1$s + 1", version);
+        String where = joinWithSuffix(EQ_PARAM, AND, table.getPkColumns());
         return format("UPDATE %s SET %s WHERE %s",
             table.getTableName(),
-            joinWithSuffix(EQ_PARAM, COMMA, table.getColumns()),
-            joinWithSuffix(EQ_PARAM, AND, table.getPkColumns()));
+            set.isEmpty() ? increment : joinWithSuffix(EQ_PARAM, COMMA, set) + COMMA + increment,
+            table.isVersionChecked() ? where + AND + version + EQ_PARAM : where);
+    }
+
+    public boolean supportsUpsert() {
+        return false;
+    }
+
+    public boolean supportsUpsert(TableDescription table) {
+        return supportsUpsert();
+    }
+
+    public String upsert(TableDescription table) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support single statement upserts.");
+    }
+
+    /**
+     * MERGE statement of SQL:2003, merging the row of the given source table into {@code t__}. The version
+     * column is incremented and, when checked, matched with {@code WHEN MATCHED AND} of SQL:2008, see
+     * {@link #isMergeUpdateFiltered()}.
+     *
+     * @param source The source table, aliased {@code s__}, with one column named after each table column.
+     */
+    protected String merge(TableDescription table, String source) {
+        String version = table.getVersionColumn();
+        List<String> set = new ArrayList<>(table.getColumns());
+        set.remove(version);
+        StringBuilder sb = new StringBuilder();
+        sb
+            .append(mergeInto(table))
+            .append(" USING ")
+            .append(source)
+            .append(" ON (")
+            .append(joinEach("t__.%1$s = s__.%1$s", AND, table.getPkColumns()))
+            .append(")");
+        if (version != null) {
+            String check = format("t__.%1$s = s__.%1$s", version);
+            String increment = format("t__.%1$s = t__.%1$s + 1", version);
+            String assignments = set.isEmpty() ? increment : joinEach("t__.%1$s = s__.%1$s", COMMA, set) + COMMA + increment;
+            if (!table.isVersionChecked()) {
+                sb.append(" WHEN MATCHED THEN UPDATE SET ").append(assignments);
+            } else if (isMergeUpdateFiltered()) {
+                sb.append(" WHEN MATCHED THEN UPDATE SET ").append(assignments).append(" WHERE ").append(check);
+            } else {
+                sb.append(" WHEN MATCHED AND ").append(check).append(" THEN UPDATE SET ").append(assignments);
+            }
+        } else if (!set.isEmpty()) {
+            sb
+                .append(" WHEN MATCHED THEN UPDATE SET ")
+                .append(joinEach("t__.%1$s = s__.%1$s", COMMA, set));
+        }
+        sb
+            .append(" WHEN NOT MATCHED THEN INSERT (")
+            .append(toFormattedString(allColumns(table)))
+            .append(") VALUES (")
+            .append(upsertValues(table, "s__.%1$s"))
+            .append(")");
+        return sb.toString();
+    }
+
+    /**
+     * @return Whether MERGE filters its update with a WHERE clause after the SET, as Oracle does, instead of
+     *         a {@code WHEN MATCHED AND} condition.
+     */
+    protected boolean isMergeUpdateFiltered() {
+        return false;
+    }
+
+    /**
+     * @param pattern Format of the value of each column, referenced as {@code %1$s}.
+     * @return The values inserted by an upsert: a {@link TableDescription#isVersionChecked() checked} version
+     *         is inserted incremented, as an update leaves it.
+     */
+    protected String upsertValues(TableDescription table, String pattern) {
+        String version = table.isVersionChecked() ? table.getVersionColumn() : null;
+        StringJoiner sj = new StringJoiner(COMMA);
+        for (String column : allColumns(table)) {
+            String value = format(pattern, column);
+            sj.add(column.equals(version) ? value + " + 1" : value);
+        }
+        return sj.toString();
+    }
+
+    /**
+     * @return The target of {@link #merge(TableDescription, String)}, aliased {@code t__}.
+     */
+    protected String mergeInto(TableDescription table) {
+        return format("MERGE INTO %s t__", table.getTableName());
+    }
+
+    /**
+     * @param pattern Format of each element, referenced as {@code %1$s}.
+     */
+    protected String joinEach(String pattern, String delimiter, List<String> elements) {
+        StringJoiner sj = new StringJoiner(delimiter);
+        for (String e : elements) {
+            sj.add(format(pattern, e));
+        }
+        return sj.toString();
+    }
+
+    protected List<String> allColumns(TableDescription table) {
+        List<String> columns = new ArrayList<>(table.getPkColumns().size() + table.getColumns().size());
+        columns.addAll(table.getPkColumns());
+        columns.addAll(table.getColumns());
+        return columns;
     }
 
     protected Sort sortByPKs(List<String> pks) {
@@ -161,6 +427,41 @@ public class DefaultSqlGenerator implements SqlGenerator {
         return Sort.by(Direction.ASC, copy);
     }
 
+    protected String selectOrdered(TableDescription table, String whereClause, Sort sort) {
+        String select = isBlank(whereClause) ? selectAll(table) : selectAll(table, whereClause);
+        return sort.isSorted() ? select + orderByClause(sort) : select;
+    }
+
+    /**
+     * Predicate of the rows that follow a row in the given order, written out as
+     * {@code (a > ?) OR (a = ? AND b > ?) OR ...} which every database understands.
+     */
+    protected String seekPredicate(Sort sort) {
+        List<Order> orders = sort.toList();
+        StringJoiner or = new StringJoiner(OR, "(", ")");
+        for (int i = 0; i < orders.size(); i++) {
+            StringJoiner and = new StringJoiner(AND, "(", ")");
+            for (int j = 0; j < i; j++) {
+                and.add(convertToSnakeCase(orders.get(j).getProperty()) + EQ_PARAM);
+            }
+            Order order = orders.get(i);
+            and.add(convertToSnakeCase(order.getProperty()) + (order.isAscending() ? " > ?" : " < ?"));
+            or.add(and.toString());
+        }
+        return or.toString();
+    }
+
+    protected String and(String whereClause, String predicate) {
+        if (isBlank(whereClause)) {
+            return predicate;
+        }
+        return "(" + whereClause + ")" + AND + predicate;
+    }
+
+    protected boolean isBlank(String whereClause) {
+        return whereClause == null || whereClause.isBlank();
+    }
+
     protected String orderByClause(Sort sort) {
         StringJoiner sj = new StringJoiner(COMMA, " ORDER BY ", BLANK);
         for(Order order: sort) {
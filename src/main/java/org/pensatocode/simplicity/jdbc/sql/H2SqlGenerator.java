@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.sql;
+
+import org.pensatocode.simplicity.jdbc.TableDescription;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.StringJoiner;
+
+import static java.lang.String.format;
+import static org.pensatocode.simplicity.util.IterableUtil.toFormattedString;
+import static org.pensatocode.simplicity.util.StringUtil.repeat;
+
+/**
+ * SQL Generator for H2, which on top of LIMIT ... OFFSET accepts
+ * array parameters in {@code = ANY(?)} predicates.
+ */
+public class H2SqlGenerator extends LimitOffsetSqlGenerator {
+
+    @Override
+    public boolean isCompatible(DatabaseMetaData metadata) throws SQLException {
+        return "H2".equals(metadata.getDatabaseProductName());
+    }
+
+    @Override
+    public String estimatedCount(TableDescription table) {
+        return "SELECT ROW_COUNT_ESTIMATE FROM INFORMATION_SCHEMA.TABLES"
+            + " WHERE TABLE_SCHEMA = SCHEMA() AND UPPER(TABLE_NAME) = UPPER(?)";
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    @Override
+    public String upsert(TableDescription table) {
+        List<String> columns = allColumns(table);
+        if (table.getVersionColumn() != null) {
+            // MERGE ... KEY can't increment nor check the version; H2 types the parameters of VALUES, not of SELECT ? AS,
+            // and names their columns C1, C2...
+            StringJoiner sj = new StringJoiner(COMMA);
+            for (int i = 0; i < columns.size(); i++) {
+                sj.add(format("C%d AS %s", i + 1, columns.get(i)));
+            }
+            return merge(table, format("(SELECT %s FROM (VALUES (%s))) s__", sj, repeat(PARAM, COMMA, columns.size())));
+        }
+        return format("MERGE INTO %s (%s) KEY (%s) VALUES (%s)",
+            table.getTableName(),
+            toFormattedString(columns),
+            toFormattedString(table.getPkColumns()),
+            repeat(PARAM, COMMA, columns.size()));
+    }
+
+    @Override
+    public boolean supportsArrayParameter() {
+        return true;
+    }
+
+    @Override
+    public String selectByPKArray(TableDescription table) {
+        return format("%s WHERE %s = ANY(?)", selectAll(table), table.getPkColumns().get(0));
+    }
+
+    @Override
+    public String deleteByPKArray(TableDescription table) {
+        return format("%s WHERE %s = ANY(?)", deleteAll(table), table.getPkColumns().get(0));
+    }
+}
@@ -18,13 +18,18 @@ package org.pensatocode.simplicity.jdbc.sql;
 
 import org.pensatocode.simplicity.jdbc.TableDescription;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.StringJoiner;
 
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
+import static org.pensatocode.simplicity.util.StringUtil.convertToSnakeCase;
+import static org.pensatocode.simplicity.util.StringUtil.repeat;
 
 /**
  * SQL Generator for DB servers that support LIMIT ... OFFSET clause:
@@ -41,6 +46,11 @@ public class LimitOffsetSqlGenerator extends DefaultSqlGenerator {
         return SUPPORTED_PRODUCTS.contains(metadata.getDatabaseProductName());
     }
 
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return true;
+    }
+
     @Override
     public String selectAll(TableDescription table, Pageable page) {
         if (page.getSort().isUnsorted()) {
@@ -61,4 +71,51 @@ public class LimitOffsetSqlGenerator extends DefaultSqlGenerator {
             selectAll(table, whereClause, page.getSort()), page.getPageSize(), page.getOffset());
     }
 
+    @Override
+    public String selectPage(TableDescription table, String whereClause, Sort sort) {
+        return selectOrdered(table, whereClause, sort) + " LIMIT ? OFFSET ?";
+    }
+
+    @Override
+    public Object[] pageParams(long offset, int pageSize) {
+        return new Object[]{ pageSize, offset };
+    }
+
+    @Override
+    public String selectKeyset(TableDescription table, String whereClause, Sort sort, boolean seek) {
+        String where = seek ? and(whereClause, seekPredicate(sort)) : whereClause;
+        return selectOrdered(table, where, sort) + " LIMIT ?";
+    }
+
+    @Override
+    public Object[] keysetParams(Sort sort, Object[] cursorValues, int limit) {
+        if (cursorValues == null || !isUniform(sort)) {
+            return super.keysetParams(sort, cursorValues, limit);
+        }
+        Object[] params = Arrays.copyOf(cursorValues, cursorValues.length + 1);
+        params[cursorValues.length] = limit;
+        return params;
+    }
+
+    /**
+     * Uses a row value comparison, {@code (a, b) > (?, ?)}, when all columns are sorted in the same
+     * direction, which lets the database seek a composite index directly.
+     */
+    @Override
+    protected String seekPredicate(Sort sort) {
+        if (!isUniform(sort)) {
+            return super.seekPredicate(sort);
+        }
+        StringJoiner columns = new StringJoiner(COMMA, "(", ")");
+        for (Sort.Order order : sort) {
+            columns.add(convertToSnakeCase(order.getProperty()));
+        }
+        return format("%s %s (%s)", columns, sort.iterator().next().isAscending() ? ">" : "<",
+            repeat(PARAM, COMMA, sort.toList().size()));
+    }
+
+    private boolean isUniform(Sort sort) {
+        return sort.stream().map(Sort.Order::getDirection).distinct().count() == 1;
+    }
+
 }
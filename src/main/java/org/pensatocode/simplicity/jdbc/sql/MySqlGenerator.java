@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.sql;
+
+import org.pensatocode.simplicity.jdbc.TableDescription;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+import static java.lang.String.format;
+
+/**
+ * SQL Generator for MySQL and MariaDB, which on top of LIMIT ... OFFSET upsert
+ * with {@code INSERT ... ON DUPLICATE KEY UPDATE}.
+ */
+public class MySqlGenerator extends LimitOffsetSqlGenerator {
+
+    @Override
+    public boolean isCompatible(DatabaseMetaData metadata) throws SQLException {
+        String productName = metadata.getDatabaseProductName();
+        return "MySQL".equals(productName) || "MariaDB".equals(productName);
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    /**
+     * Rows with a checked version are upserted with an update followed by an insert instead: MySQL counts
+     * a row left unchanged like an updated one by default, so a conflicting version can't be told apart.
+     */
+    @Override
+    public boolean supportsUpsert(TableDescription table) {
+        return !table.isVersionChecked();
+    }
+
+    /**
+     * Without other columns, the primary key is assigned to itself, which leaves the row untouched.
+     */
+    @Override
+    public String upsert(TableDescription table) {
+        String upsert = insert(table, false) + " ON DUPLICATE KEY UPDATE " + joinEach("%1$s = VALUES(%1$s)", COMMA,
+            table.getColumns().isEmpty() ? table.getPkColumns() : table.getColumns());
+        String version = table.getVersionColumn();
+        return (version != null) ? upsert + COMMA + format("%1$s = %1$s + 1", version) : upsert;
+    }
+}
@@ -39,6 +39,21 @@ public class Oracle9SqlGenerator extends DefaultSqlGenerator {
         return "Oracle".equals(metadata.getDatabaseProductName());
     }
 
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    @Override
+    public String upsert(TableDescription table) {
+        return merge(table, format("(SELECT %s FROM dual) s__", joinEach("? AS %1$s", COMMA, allColumns(table))));
+    }
+
+    @Override
+    protected boolean isMergeUpdateFiltered() {
+        return true;
+    }
+
     @Override
     public String selectAll(TableDescription table, Pageable page) {
         Sort sort = page.getSort().isSorted() ? page.getSort() : sortByPKs(table.getPkColumns());
@@ -62,4 +77,25 @@ public class Oracle9SqlGenerator extends DefaultSqlGenerator {
             page.getOffset(),
             page.getPageSize());
     }
+
+    @Override
+    public String selectPage(TableDescription table, String whereClause, Sort sort) {
+        Sort order = sort.isSorted() ? sort : sortByPKs(table.getPkColumns());
+
+        return format("SELECT t2__.* FROM ( "
+                + "SELECT t1__.*, ROWNUM as rn__ FROM ( %s ) t1__ "
+                + ") t2__ WHERE t2__.rn__ > ? AND ROWNUM <= ?",
+            selectOrdered(table, whereClause, order));
+    }
+
+    @Override
+    public Object[] pageParams(long offset, int pageSize) {
+        return new Object[]{ offset, pageSize };
+    }
+
+    @Override
+    public String selectKeyset(TableDescription table, String whereClause, Sort sort, boolean seek) {
+        String where = seek ? and(whereClause, seekPredicate(sort)) : whereClause;
+        return format("SELECT t1__.* FROM ( %s ) t1__ WHERE ROWNUM <= ?", selectOrdered(table, where, sort));
+    }
 }
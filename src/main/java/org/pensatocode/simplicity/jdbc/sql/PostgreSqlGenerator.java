@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.sql;
+
+import org.pensatocode.simplicity.jdbc.TableDescription;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+import static org.pensatocode.simplicity.util.IterableUtil.toFormattedString;
+
+/**
+ * SQL Generator for PostgreSQL, which on top of LIMIT ... OFFSET accepts
+ * array parameters in {@code = ANY(?)} predicates.
+ */
+public class PostgreSqlGenerator extends LimitOffsetSqlGenerator {
+
+    @Override
+    public boolean isCompatible(DatabaseMetaData metadata) throws SQLException {
+        return "PostgreSQL".equals(metadata.getDatabaseProductName());
+    }
+
+    /**
+     * {@code reltuples} is -1 for tables that were never vacuumed or analyzed (PostgreSQL 14+),
+     * which reads as "no estimate".
+     */
+    @Override
+    public String estimatedCount(TableDescription table) {
+        return "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = to_regclass(?)";
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    @Override
+    public String upsert(TableDescription table) {
+        String version = table.getVersionColumn();
+        List<String> set = new ArrayList<>(table.getColumns());
+        set.remove(version);
+        String conflict = format("INSERT INTO %s AS t__ (%s) VALUES (%s) ON CONFLICT (%s) DO ",
+            table.getTableName(),
+            toFormattedString(allColumns(table)),
+            upsertValues(table, PARAM),
+            toFormattedString(table.getPkColumns()));
+        if (version == null) {
+            return set.isEmpty() ? conflict + "NOTHING" : conflict + "UPDATE SET " + joinEach("%1$s = EXCLUDED.%1$s", COMMA, set);
+        }
+        String increment = format("%1$s = t__.%1$s + 1", version);
+        String update = conflict + "UPDATE SET "
+            + (set.isEmpty() ? increment : joinEach("%1$s = EXCLUDED.%1$s", COMMA, set) + COMMA + increment);
+        // EXCLUDED holds the inserted values, so the version bound plus one
+        return table.isVersionChecked() ? update + format(" WHERE t__.%1$s = EXCLUDED.%1$s - 1", version) : update;
+    }
+
+    @Override
+    public boolean supportsArrayParameter() {
+        return true;
+    }
+
+    @Override
+    public String selectByPKArray(TableDescription table) {
+        return format("%s WHERE %s = ANY(?)", selectAll(table), table.getPkColumns().get(0));
+    }
+
+    @Override
+    public String deleteByPKArray(TableDescription table) {
+        return format("%s WHERE %s = ANY(?)", deleteAll(table), table.getPkColumns().get(0));
+    }
+}
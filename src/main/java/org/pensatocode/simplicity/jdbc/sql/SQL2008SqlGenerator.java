@@ -28,6 +28,7 @@ import static java.lang.String.format;
 /**
  * SQL Generator for DB servers that support the SQL:2008 standard OFFSET
  * feature: Apache Derby, Microsoft SQL Server 2012, and Oracle 12c.
+ * SQL Server is served by {@link SqlServerGenerator}, which upserts too.
  */
 public class SQL2008SqlGenerator extends DefaultSqlGenerator {
 
@@ -56,4 +57,23 @@ public class SQL2008SqlGenerator extends DefaultSqlGenerator {
         return format("%s OFFSET %d ROWS FETCH NEXT %d ROW ONLY",
             selectAll(table, whereClause, sort), page.getOffset(), page.getPageSize());
     }
+
+    @Override
+    public String selectPage(TableDescription table, String whereClause, Sort sort) {
+        Sort order = sort.isSorted() ? sort : sortByPKs(table.getPkColumns());
+
+        return selectOrdered(table, whereClause, order) + " OFFSET ? ROWS FETCH NEXT ? ROW ONLY";
+    }
+
+    @Override
+    public Object[] pageParams(long offset, int pageSize) {
+        return new Object[]{ offset, pageSize };
+    }
+
+    @Override
+    public String selectKeyset(TableDescription table, String whereClause, Sort sort, boolean seek) {
+        String where = seek ? and(whereClause, seekPredicate(sort)) : whereClause;
+        // SQL Server only accepts FETCH after an OFFSET
+        return selectOrdered(table, where, sort) + " OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+    }
 }
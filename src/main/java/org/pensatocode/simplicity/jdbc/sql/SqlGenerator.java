@@ -23,6 +23,7 @@ import org.springframework.data.domain.Sort;
 
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.List;
 
 public interface SqlGenerator {
 
@@ -36,14 +37,67 @@ public interface SqlGenerator {
 
     String count(TableDescription table);
 
+    /**
+     * @return The count of the rows matched by the where clause.
+     */
+    String count(TableDescription table, String whereClause);
+
+    /**
+     * Query of the row count kept in the database statistics, read without scanning the table.
+     *
+     * @return A select of a single number bound with the table name as its only parameter,
+     *         or {@code null} if the database has no such statistics.
+     */
+    String estimatedCount(TableDescription table);
+
     String deleteAll(TableDescription table);
 
+    String deleteAll(TableDescription table, String whereClause);
+
     String deleteByPK(TableDescription table);
 
+    /**
+     * @return A delete of the rows whose primary key is in a list of {@code count} placeholders.
+     */
+    String deleteByPKs(TableDescription table, int count);
+
+    /**
+     * Array variant of {@link #deleteByPKs(TableDescription, int)}, only used when
+     * {@link #supportsArrayParameter()} is true.
+     */
+    String deleteByPKArray(TableDescription table);
+
     String existsByPK(TableDescription table);
 
+    /**
+     * @return A select of the version and the last modified columns of one row, by primary key;
+     *         a column the table doesn't have reads as {@code NULL}.
+     * @see TableDescription#isVersioned()
+     */
+    String selectVersionByPK(TableDescription table);
+
+    /**
+     * @param whereClause The where clause, or {@code null} for all rows.
+     * @return A select of the row count, the sum of the versions and the latest modification of the rows,
+     *         which together change whenever a row is inserted, updated or deleted.
+     */
+    String selectVersion(TableDescription table, String whereClause);
+
     String insert(TableDescription table, Boolean autoGeneratedKey);
 
+    /**
+     * @return Whether the database accepts a single INSERT with several rows in its VALUES clause.
+     */
+    boolean supportsMultiRowInsert();
+
+    /**
+     * Multi-row variant of {@link #insert(TableDescription, Boolean)}, only used when
+     * {@link #supportsMultiRowInsert()} is true.
+     *
+     * @param rows The number of rows in the VALUES clause.
+     */
+    String insert(TableDescription table, Boolean autoGeneratedKey, int rows);
+
     String selectAll(TableDescription table);
 
     String selectAll(TableDescription table, String whereClause);
@@ -56,7 +110,98 @@ public interface SqlGenerator {
 
     String selectAll(TableDescription table, String whereClause, Sort sort);
 
+    /**
+     * Same as {@link #selectAll(TableDescription, String, Pageable)}, but the page boundaries are left as
+     * {@code ?} placeholders, so the statement only depends on the sort and can be reused for every page.
+     *
+     * @param whereClause The where clause, or {@code null} to select all rows.
+     * @param sort The page order; the primary key order is used by dialects that require one.
+     * @return The paged select statement, to be bound with {@link #pageParams(long, int)}.
+     */
+    String selectPage(TableDescription table, String whereClause, Sort sort);
+
+    /**
+     * @return The values to bind to the placeholders of {@link #selectPage(TableDescription, String, Sort)},
+     *         in the order they appear in the statement.
+     */
+    Object[] pageParams(long offset, int pageSize);
+
+    /**
+     * Select for keyset (seek) pagination: the first rows in the given order that follow a given row, with
+     * the row limit left as a {@code ?} placeholder. The sort must end with the primary key, so the order is total.
+     *
+     * @param whereClause The where clause, or {@code null} to page over all rows.
+     * @param sort The page order, primary key last.
+     * @param seek Whether to include the seek predicate, i.e. {@code false} for the first page.
+     * @return The select statement, to be bound with {@link #keysetParams(Sort, Object[], int)}.
+     */
+    String selectKeyset(TableDescription table, String whereClause, Sort sort, boolean seek);
+
+    /**
+     * @param sort The sort given to {@link #selectKeyset(TableDescription, String, Sort, boolean)}.
+     * @param cursorValues The values of the sort columns of the last row read, or {@code null} for the first page.
+     * @param limit The maximum number of rows to read.
+     * @return The values to bind to the placeholders of the keyset select, in the order they appear in the statement.
+     */
+    Object[] keysetParams(Sort sort, Object[] cursorValues, int limit);
+
     String selectByPK(TableDescription table);
 
+    /**
+     * @param count The number of {@code ?} placeholders in the IN list.
+     * @return A select of the rows whose primary key is in a list of {@code count} values.
+     */
+    String selectByPKs(TableDescription table, int count);
+
+    /**
+     * @param count The number of {@code ?} placeholders in the IN list.
+     * @return A select of the primary key only of the rows whose primary key is in a list of {@code count} values.
+     */
+    String selectPKsByPKs(TableDescription table, int count);
+
+    /**
+     * @return Whether the database accepts a whole {@link java.sql.Array} bound to a single placeholder,
+     *         as in {@link #selectByPKArray(TableDescription)}.
+     */
+    boolean supportsArrayParameter();
+
+    /**
+     * Array variant of {@link #selectByPKs(TableDescription, int)}, only used when
+     * {@link #supportsArrayParameter()} is true.
+     *
+     * @return A select of the rows whose primary key is in the array bound to its single placeholder.
+     */
+    String selectByPKArray(TableDescription table);
+
     String update(TableDescription table);
+
+    /**
+     * @param columns The columns to set, a subset of the table columns.
+     * @return An update of the given columns only, bound with their values followed by the primary key values
+     *         and, when {@link TableDescription#isVersionChecked() checked}, the version read with the row.
+     */
+    String update(TableDescription table, List<String> columns);
+
+    /**
+     * @return Whether the database can insert or update a row in a single statement, see {@link #upsert(TableDescription)}.
+     */
+    boolean supportsUpsert();
+
+    /**
+     * @return Whether the rows of the given table can be upserted in a single statement, which must then
+     *         check their version when it is {@link TableDescription#isVersionChecked() checked}.
+     */
+    boolean supportsUpsert(TableDescription table);
+
+    /**
+     * Statement that inserts a row, or updates it if a row with the same primary key exists (MERGE or
+     * equivalent); only used when {@link #supportsUpsert(TableDescription)} is true.
+     *
+     * <p>When the version is {@link TableDescription#isVersionChecked() checked}, the row is updated only if
+     * its version is the one bound, and no row is counted otherwise. The version is incremented whether the
+     * row is inserted or updated, so that it is one more than the bound version either way.
+     *
+     * @return The upsert statement, bound with the primary key values followed by the other column values.
+     */
+    String upsert(TableDescription table);
 }
@@ -16,31 +16,53 @@
  */
 package org.pensatocode.simplicity.jdbc.sql;
 
+import org.pensatocode.simplicity.util.WeakIdentityMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.util.ClassUtils;
 
 import javax.sql.DataSource;
-import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
-import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
+/**
+ * Chooses the {@link SqlGenerator} of a data source from its database metadata.
+ *
+ * <p>The metadata is read once per data source, on a connection that is closed right after, and the
+ * choice is cached for as long as the data source lives. The probe can be skipped altogether by
+ * naming the dialect in the {@value #DIALECT_PROPERTY} system property (or the
+ * {@code SIMPLICITY_SQL_DIALECT} environment variable), by {@link #setDialect(SqlGenerator)} or, for
+ * one data source, by {@link #registerDataSource(DataSource, SqlGenerator)}.
+ */
 public class SqlGeneratorFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(SqlGeneratorFactory.class);
 
+    /**
+     * System property naming the dialect of every data source: {@code default}, {@code limit-offset},
+     * {@code sql2008}, {@code sqlserver}, {@code oracle9}, {@code mysql}, {@code postgresql}, {@code h2}, or the class name
+     * of a {@link SqlGenerator}.
+     */
+    public static final String DIALECT_PROPERTY = "simplicity.sql.dialect";
+
     private static final SqlGeneratorFactory INSTANCE = new SqlGeneratorFactory(true);
 
-    private final Deque<SqlGenerator> generators = new ArrayDeque<>();
+    private final Deque<SqlGenerator> generators = new ConcurrentLinkedDeque<>();
 
-    private final Map<DataSource, SqlGenerator> cache = new WeakHashMap<>(2, 1.0f);
+    private final WeakIdentityMap<DataSource, SqlGenerator> cache = new WeakIdentityMap<>();
+
+    private volatile SqlGenerator dialect;
 
     /**
-     * @param registerDefault Whether to register default (built-in) generators.
+     * @param registerDefault Whether to register default (built-in) generators and read the dialect
+     *                        from the {@value #DIALECT_PROPERTY} system property.
      * @see #getInstance()
      */
     public SqlGeneratorFactory(boolean registerDefault) {
@@ -48,7 +70,16 @@ public class SqlGeneratorFactory {
             registerGenerator(new DefaultSqlGenerator());
             registerGenerator(new LimitOffsetSqlGenerator());
             registerGenerator(new SQL2008SqlGenerator());
+            registerGenerator(new SqlServerGenerator());
             registerGenerator(new Oracle9SqlGenerator());
+            registerGenerator(new MySqlGenerator());
+            registerGenerator(new PostgreSqlGenerator());
+            registerGenerator(new H2SqlGenerator());
+            String configured = System.getProperty(DIALECT_PROPERTY, System.getenv("SIMPLICITY_SQL_DIALECT"));
+            if (configured != null && !configured.isBlank()) {
+                this.dialect = forName(configured);
+                LOG.info("Using SQL Generator {} for every dataSource, as configured", dialect.getClass().getName());
+            }
         }
     }
 
@@ -60,8 +91,36 @@ public class SqlGeneratorFactory {
     }
 
     /**
-     *
-     * @param jdbcTemplate@return An SQL Generator compatible with the given {@code dataSource}.
+     * @param name A dialect name, see {@link #DIALECT_PROPERTY}, or the class name of a {@link SqlGenerator}.
+     * @return A new generator of the named dialect.
+     * @throws IllegalArgumentException if the name doesn't match any dialect.
+     */
+    public static SqlGenerator forName(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "default": return new DefaultSqlGenerator();
+            case "limit-offset": return new LimitOffsetSqlGenerator();
+            case "sql2008": return new SQL2008SqlGenerator();
+            case "sqlserver": return new SqlServerGenerator();
+            case "oracle9": return new Oracle9SqlGenerator();
+            case "mysql": return new MySqlGenerator();
+            case "postgresql": return new PostgreSqlGenerator();
+            case "h2": return new H2SqlGenerator();
+            default:
+        }
+        try {
+            Class<?> generatorClass = ClassUtils.forName(name.trim(), SqlGeneratorFactory.class.getClassLoader());
+            if (!SqlGenerator.class.isAssignableFrom(generatorClass)) {
+                throw new IllegalArgumentException(name + " is not a SqlGenerator.");
+            }
+            return (SqlGenerator) BeanUtils.instantiateClass(generatorClass);
+        } catch (ClassNotFoundException | LinkageError ex) {
+            throw new IllegalArgumentException("Unknown SQL dialect: " + name, ex);
+        }
+    }
+
+    /**
+     * @param jdbcTemplate The template of the repository.
+     * @return An SQL Generator compatible with the data source of the given {@code jdbcTemplate}.
      * @throws DataAccessResourceFailureException if exception is thrown when
      *         trying to obtain Connection or MetaData from the
      *         {@code dataSource}.
@@ -70,41 +129,51 @@ public class SqlGeneratorFactory {
     public SqlGenerator getGenerator(JdbcTemplate jdbcTemplate) {
 
         if (jdbcTemplate == null || jdbcTemplate.getDataSource() == null) {
-            return new LimitOffsetSqlGenerator();
+            return (dialect != null) ? dialect : new LimitOffsetSqlGenerator();
         }
+        return getGenerator(jdbcTemplate.getDataSource());
+    }
 
-        DataSource dataSource = jdbcTemplate.getDataSource();
-
-        if (cache.containsKey(dataSource)) {
-            return cache.get(dataSource);
+    /**
+     * @see #getGenerator(JdbcTemplate)
+     */
+    public SqlGenerator getGenerator(DataSource dataSource) {
+        SqlGenerator generator = cache.get(dataSource);
+        if (generator != null) {
+            return generator;
         }
+        if (dialect != null) {
+            return dialect;
+        }
+        // concurrent first calls may probe more than once, but they all agree on the result
+        generator = probe(dataSource);
+        SqlGenerator previous = cache.putIfAbsent(dataSource, generator);
+        return (previous != null) ? previous : generator;
+    }
 
-        DatabaseMetaData metaData;
+    private SqlGenerator probe(DataSource dataSource) {
         try {
-            metaData = dataSource.getConnection().getMetaData();
-        } catch (SQLException ex) {
+            return (SqlGenerator) JdbcUtils.extractDatabaseMetaData(dataSource, metaData -> {
+                for (SqlGenerator generator : generators) {
+                    try {
+                        if (generator.isCompatible(metaData)) {
+                            LOG.info("Using SQL Generator {} for dataSource {}",
+                                generator.getClass().getName(), dataSource.getClass());
+                            return generator;
+                        }
+                    } catch (SQLException ex) {
+                        LOG.warn("Exception occurred when invoking isCompatible() on {}",
+                            generator.getClass().getSimpleName(), ex);
+                    }
+                }
+                // This should not happen, because registry should always contain one
+                // "default" generator that returns true for every DatabaseMetaData.
+                throw new IllegalStateException("No compatible SQL Generator found.");
+            });
+        } catch (MetaDataAccessException ex) {
             throw new DataAccessResourceFailureException(
                 "Failed to retrieve database metadata", ex);
         }
-
-        for (SqlGenerator generator : generators) {
-            try {
-                if (generator.isCompatible(metaData)) {
-                    LOG.info("Using SQL Generator {} for dataSource {}",
-                        generator.getClass().getName(), dataSource.getClass());
-
-                    cache.put(dataSource, generator);
-                    return generator;
-                }
-            } catch (SQLException ex) {
-                LOG.warn("Exception occurred when invoking isCompatible() on {}",
-                    generator.getClass().getSimpleName(), ex);
-            }
-        }
-
-        // This should not happen, because registry should always contain one
-        // "default" generator that returns true for every DatabaseMetaData.
-        throw new IllegalStateException("No compatible SQL Generator found.");
     }
 
     /**
@@ -116,11 +185,31 @@ public class SqlGeneratorFactory {
         generators.push(sqlGenerator);
     }
 
+    /**
+     * Sets the generator of the given data source, which is then never probed.
+     */
+    public void registerDataSource(DataSource dataSource, SqlGenerator sqlGenerator) {
+        cache.put(dataSource, sqlGenerator);
+    }
+
+    public SqlGenerator getDialect() {
+        return dialect;
+    }
+
+    /**
+     * @param dialect The generator of every data source that wasn't registered with
+     *                {@link #registerDataSource(DataSource, SqlGenerator)}, or {@code null} to probe them.
+     */
+    public void setDialect(SqlGenerator dialect) {
+        this.dialect = dialect;
+    }
+
     /**
      * Removes all generators from the factory's registry.
      */
     public void clear() {
         generators.clear();
         cache.clear();
+        dialect = null;
     }
 }
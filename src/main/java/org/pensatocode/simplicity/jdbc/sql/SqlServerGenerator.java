@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.sql;
+
+import org.pensatocode.simplicity.jdbc.TableDescription;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+import static java.lang.String.format;
+
+/**
+ * SQL Generator for Microsoft SQL Server 2012 or newer, which on top of the SQL:2008 OFFSET upserts with
+ * {@code MERGE}. The merge holds its range lock until the end of the transaction, without which two
+ * concurrent upserts of the same new row may both try to insert it.
+ */
+public class SqlServerGenerator extends SQL2008SqlGenerator {
+
+    @Override
+    public boolean isCompatible(DatabaseMetaData metadata) throws SQLException {
+        return "Microsoft SQL Server".equals(metadata.getDatabaseProductName())
+            && metadata.getDatabaseMajorVersion() >= 11;  // >= 2012
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    /**
+     * SQL Server requires MERGE statements to be terminated by a semicolon.
+     */
+    @Override
+    public String upsert(TableDescription table) {
+        return merge(table, format("(SELECT %s) s__", joinEach("? AS %1$s", COMMA, allColumns(table)))) + ";";
+    }
+
+    @Override
+    protected String mergeInto(TableDescription table) {
+        return format("MERGE INTO %s WITH (HOLDLOCK) AS t__", table.getTableName());
+    }
+}
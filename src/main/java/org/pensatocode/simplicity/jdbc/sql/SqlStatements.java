@@ -0,0 +1,307 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.jdbc.sql;
+
+import org.pensatocode.simplicity.jdbc.Projection;
+import org.pensatocode.simplicity.jdbc.TableDescription;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Statement table of a repository: the SQL generated by a {@link SqlGenerator} for one
+ * {@link TableDescription}, built once instead of on every call.
+ *
+ * <p>Statements that depend on a where clause or a sort are generated on first use and kept
+ * by shape. Page boundaries are never part of the shape, they are bound as parameters (see
+ * {@link #pageParams(Pageable)}), so every page of the same query reuses one statement.
+ */
+public class SqlStatements {
+
+    /**
+     * Upper bound of cached statement shapes; where clauses are free text, so the cache must not
+     * grow with them. Shapes beyond this limit are generated on every call.
+     */
+    static final int MAX_SHAPES = 256;
+
+    private final SqlGenerator generator;
+    private final TableDescription table;
+
+    private final String count;
+    private final String estimatedCount;
+    private final String deleteAll;
+    private final String deleteByPK;
+    private final String existsByPK;
+    private final String insertWithGeneratedKey;
+    private final String insertWithAssignedKey;
+    private final String selectAll;
+    private final String selectByPK;
+    private final String update;
+
+    private final ConcurrentMap<Object, String> shapes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Projection<?>, SqlStatements> projections = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ParsedSql> namedClauses = new ConcurrentHashMap<>();
+
+
+    public SqlStatements(SqlGenerator generator, TableDescription table) {
+        this.generator = generator;
+        this.table = table;
+        this.count = generator.count(table);
+        this.estimatedCount = generator.estimatedCount(table);
+        this.deleteAll = generator.deleteAll(table);
+        this.deleteByPK = generator.deleteByPK(table);
+        this.existsByPK = generator.existsByPK(table);
+        this.insertWithGeneratedKey = generator.insert(table, true);
+        this.insertWithAssignedKey = generator.insert(table, false);
+        this.selectAll = generator.selectAll(table);
+        this.selectByPK = generator.selectByPK(table);
+        this.update = generator.update(table);
+    }
+
+    public SqlGenerator getGenerator() {
+        return generator;
+    }
+
+    public TableDescription getTable() {
+        return table;
+    }
+
+    public String count() {
+        return count;
+    }
+
+    public String count(String whereClause) {
+        if (isBlank(whereClause)) {
+            return count;
+        }
+        return shape(() -> generator.count(table, whereClause), "count", whereClause);
+    }
+
+    /**
+     * @return The estimated count query, see {@link SqlGenerator#estimatedCount(TableDescription)}, or {@code null}.
+     */
+    public String estimatedCount() {
+        return estimatedCount;
+    }
+
+    public String deleteAll() {
+        return deleteAll;
+    }
+
+    public String deleteAll(String whereClause) {
+        if (isBlank(whereClause)) {
+            return deleteAll;
+        }
+        return shape(() -> generator.deleteAll(table, whereClause), "delete-where", whereClause);
+    }
+
+    public String deleteByPK() {
+        return deleteByPK;
+    }
+
+    /**
+     * @param count The size of the IN list, padded like {@link #selectByPKs(int)}.
+     */
+    public String deleteByPKs(int count) {
+        return shape(() -> generator.deleteByPKs(table, count), "delete-in", count);
+    }
+
+    public String deleteByPKArray() {
+        return shape(() -> generator.deleteByPKArray(table), "delete-array");
+    }
+
+    public String existsByPK() {
+        return existsByPK;
+    }
+
+    public String insert(boolean autoGeneratedKey) {
+        return autoGeneratedKey ? insertWithGeneratedKey : insertWithAssignedKey;
+    }
+
+    /**
+     * @param rows The number of rows in the VALUES clause, see {@link SqlGenerator#supportsMultiRowInsert()}.
+     */
+    public String insert(boolean autoGeneratedKey, int rows) {
+        if (rows == 1) {
+            return insert(autoGeneratedKey);
+        }
+        return shape(() -> generator.insert(table, autoGeneratedKey, rows), "insert", autoGeneratedKey, rows);
+    }
+
+    public String selectAll() {
+        return selectAll;
+    }
+
+    public String selectAll(String whereClause) {
+        if (isBlank(whereClause)) {
+            return selectAll;
+        }
+        return shape(() -> generator.selectAll(table, whereClause), "where", whereClause);
+    }
+
+    public String selectAll(Sort sort) {
+        if (sort.isUnsorted()) {
+            return selectAll;
+        }
+        return shape(() -> generator.selectAll(table, sort), "sort", sort);
+    }
+
+    public String selectAll(String whereClause, Sort sort) {
+        if (sort.isUnsorted()) {
+            return selectAll(whereClause);
+        }
+        if (isBlank(whereClause)) {
+            return selectAll(sort);
+        }
+        return shape(() -> generator.selectAll(table, whereClause, sort), "where-sort", whereClause, sort);
+    }
+
+    /**
+     * @param whereClause The where clause, or {@code null} to page over all rows.
+     * @return The paged select for the given sort, to be bound with {@link #pageParams(Pageable)}.
+     */
+    public String selectPage(String whereClause, Sort sort) {
+        return shape(() -> generator.selectPage(table, whereClause, sort), "page", whereClause, sort);
+    }
+
+    public Object[] pageParams(Pageable page) {
+        return generator.pageParams(page.getOffset(), page.getPageSize());
+    }
+
+    /**
+     * @return The parameters of {@link #selectPage(String, Sort)} reading one row past the page,
+     *         to tell whether a next page exists without counting.
+     */
+    public Object[] sliceParams(Pageable page) {
+        return generator.pageParams(page.getOffset(), page.getPageSize() + 1);
+    }
+
+    /**
+     * @param sort The keyset order, primary key last.
+     * @param seek Whether the statement reads the rows after a cursor, see {@link SqlGenerator#selectKeyset}.
+     */
+    public String selectKeyset(String whereClause, Sort sort, boolean seek) {
+        return shape(() -> generator.selectKeyset(table, whereClause, sort, seek), "keyset", whereClause, sort, seek);
+    }
+
+    public String selectByPK() {
+        return selectByPK;
+    }
+
+    public String selectVersionByPK() {
+        return shape(() -> generator.selectVersionByPK(table), "version-pk");
+    }
+
+    public String selectVersion(String whereClause) {
+        return shape(() -> generator.selectVersion(table, whereClause), "version", whereClause);
+    }
+
+    /**
+     * @param count The size of the IN list; callers should pad it to a few fixed sizes to keep this cache small.
+     */
+    public String selectByPKs(int count) {
+        return shape(() -> generator.selectByPKs(table, count), "in", count);
+    }
+
+    /**
+     * @param count The size of the IN list, padded like {@link #selectByPKs(int)}.
+     */
+    public String selectPKsByPKs(int count) {
+        return shape(() -> generator.selectPKsByPKs(table, count), "pk-in", count);
+    }
+
+    public String selectByPKArray() {
+        return shape(() -> generator.selectByPKArray(table), "array");
+    }
+
+    public String update() {
+        return update;
+    }
+
+    /**
+     * @param columns The changed columns, see {@link SqlGenerator#update(TableDescription, List)}.
+     */
+    public String update(List<String> columns) {
+        if (columns.size() == table.getColumns().size()) {
+            return update;
+        }
+        return shape(() -> generator.update(table, columns), "update", columns);
+    }
+
+    /**
+     * @return The upsert statement, see {@link SqlGenerator#upsert(TableDescription)}; generated on first
+     *         use, since most dialects don't support it.
+     */
+    public String upsert() {
+        return shape(() -> generator.upsert(table), "upsert");
+    }
+
+    /**
+     * @return The statements of the table narrowed to the columns of the projection, built once per projection.
+     * @throws InvalidDataAccessApiUsageException if the projection names a column the table doesn't have.
+     */
+    public SqlStatements project(Projection<?> projection) {
+        return projections.computeIfAbsent(projection, p -> {
+            for (String column : p.getColumns()) {
+                if (!table.getPkColumns().contains(column) && !table.getColumns().contains(column)) {
+                    throw new InvalidDataAccessApiUsageException(
+                        p + " names column " + column + ", which " + table.getTableName() + " doesn't have.");
+                }
+            }
+            return new SqlStatements(generator, table.project(p.getColumns()));
+        });
+    }
+
+    /**
+     * @return The where clause parsed for its named parameters, kept like the statement shapes.
+     */
+    public ParsedSql parseNamed(String whereClause) {
+        ParsedSql parsed = namedClauses.get(whereClause);
+        if (parsed != null) {
+            return parsed;
+        }
+        parsed = NamedParameterUtils.parseSqlStatement(whereClause);
+        if (namedClauses.size() < MAX_SHAPES) {
+            namedClauses.putIfAbsent(whereClause, parsed);
+        }
+        return parsed;
+    }
+
+    private static boolean isBlank(String whereClause) {
+        return whereClause == null || whereClause.isBlank();
+    }
+
+    protected String shape(Supplier<String> sqlSupplier, Object... key) {
+        Object shapeKey = Arrays.asList(key);
+        String sql = shapes.get(shapeKey);
+        if (sql != null) {
+            return sql;
+        }
+        sql = sqlSupplier.get();
+        if (shapes.size() < MAX_SHAPES) {
+            shapes.putIfAbsent(shapeKey, sql);
+        }
+        return sql;
+    }
+}
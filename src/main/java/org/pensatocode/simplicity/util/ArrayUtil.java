@@ -17,6 +17,7 @@
 package org.pensatocode.simplicity.util;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -44,6 +45,21 @@ public final class ArrayUtil {
         return new Object[]{ obj };
     }
 
+    /**
+     * @return The elements of the first array followed by the elements of the second one.
+     */
+    public static Object[] concat(Object[] first, Object[] second) {
+        if (second.length == 0) {
+            return first;
+        }
+        if (first.length == 0) {
+            return second;
+        }
+        Object[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
     @SafeVarargs
     @SuppressWarnings("unchecked")
     public static <T> T[] wrapToArray(Class<T> clazz, List<T> list, T... extras) {
@@ -23,6 +23,9 @@ import static java.lang.Math.max;
 
 public final class StringUtil {
 
+    private static final Pattern SNAKE_CASE_WORD = Pattern.compile("(_)([a-z])");
+    private static final Pattern CAMEL_CASE_WORD = Pattern.compile("(.)(\\p{Upper})");
+
     private StringUtil() {
     }
 
@@ -51,8 +54,7 @@ public final class StringUtil {
     }
 
     public static String convertToCamelCase(String input, boolean capitalize) {
-        final Pattern pattern = Pattern.compile("(_)([a-z])");
-        Matcher matcher = pattern.matcher(input);
+        Matcher matcher = SNAKE_CASE_WORD.matcher(input);
         StringBuilder sb = new StringBuilder();
         while (matcher.find()) {
             matcher.appendReplacement(sb, matcher.group(2).toUpperCase());
@@ -65,10 +67,7 @@ public final class StringUtil {
     }
 
     public static String convertToSnakeCase(String input) {
-        final Pattern pattern = Pattern.compile("(.)(\\p{Upper})");
-        final String replacementPattern = "$1_$2";
-        Matcher matcher = pattern.matcher(input);
-        return matcher.replaceAll(replacementPattern).toLowerCase();
+        return CAMEL_CASE_WORD.matcher(input).replaceAll("$1_$2").toLowerCase();
     }
 
     public static String capitalize(String str) {
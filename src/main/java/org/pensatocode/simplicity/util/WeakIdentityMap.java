@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent map whose keys are compared by identity and weakly referenced, so an entry goes away with
+ * its key. Lookups don't lock; entries of collected keys are purged on writes.
+ */
+public final class WeakIdentityMap<K, V> {
+
+    private final ConcurrentMap<Object, V> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+    public V get(K key) {
+        return map.get(new LookupKey(key));
+    }
+
+    /**
+     * @return The value already mapped to the key, or {@code null} if the given one was added.
+     */
+    public V putIfAbsent(K key, V value) {
+        purge();
+        return map.putIfAbsent(new WeakKey<>(key, queue), value);
+    }
+
+    public V put(K key, V value) {
+        purge();
+        return map.put(new WeakKey<>(key, queue), value);
+    }
+
+    public V remove(K key) {
+        purge();
+        return map.remove(new LookupKey(key));
+    }
+
+    public void clear() {
+        map.clear();
+        purge();
+    }
+
+    public int size() {
+        purge();
+        return map.size();
+    }
+
+    private void purge() {
+        Reference<? extends K> collected;
+        while ((collected = queue.poll()) != null) {
+            map.remove(collected);
+        }
+    }
+
+    private static Object referent(Object key) {
+        return (key instanceof WeakKey) ? ((WeakKey<?>) key).get() : ((LookupKey) key).key;
+    }
+
+    /**
+     * Key held by the map. Its hash is taken while the referent is alive, so it can still be removed
+     * once the referent is collected.
+     */
+    private static final class WeakKey<K> extends WeakReference<K> {
+
+        private final int hash;
+
+        private WeakKey(K key, ReferenceQueue<K> queue) {
+            super(key, queue);
+            this.hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof WeakKey) && !(other instanceof LookupKey)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == referent(other);
+        }
+    }
+
+    /**
+     * Short-lived strong key of lookups, saving a reference allocation on reads.
+     */
+    private static final class LookupKey {
+
+        private final Object key;
+
+        private LookupKey(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof WeakKey) && !(other instanceof LookupKey)) {
+                return false;
+            }
+            return key == referent(other);
+        }
+    }
+}
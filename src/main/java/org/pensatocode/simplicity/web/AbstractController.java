@@ -1,26 +1,240 @@
 package org.pensatocode.simplicity.web;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.pensatocode.simplicity.jdbc.EntityVersion;
 import org.pensatocode.simplicity.jdbc.JdbcRepository;
+import org.pensatocode.simplicity.jdbc.mapper.EntityModel;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 @RestController
 public abstract class AbstractController<T, ID extends Serializable> {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    /**
+     * Rows written to the response between two flushes of an export.
+     */
+    static final int EXPORT_FLUSH_ROWS = 1000;
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
     protected final JdbcRepository<T, ID> repository;
+    protected ObjectMapper objectMapper;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private boolean directJson;
 
     public AbstractController(@Autowired JdbcRepository<T, ID> repository) {
         this.repository = repository;
     }
 
+    /**
+     * @param objectMapper The mapper of the exported rows; the application's mapper when there is one,
+     *                     otherwise a default one is built on first use.
+     */
+    @Autowired(required = false)
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean isDirectJson() {
+        return directJson;
+    }
+
+    /**
+     * @param directJson Whether {@link #findAll(Pageable, WebRequest)} writes the rows of the page straight
+     *                   from the result set to the response, see {@link JsonRowWriter}, instead of reading
+     *                   the entities and serializing them. Entities the mapper can't write that way are
+     *                   still serialized.
+     */
+    public void setDirectJson(boolean directJson) {
+        this.directJson = directJson;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize The most items accepted by the batch endpoints; larger requests are answered
+     *                     with {@code 413 Payload Too Large}.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        Assert.isTrue(maxBatchSize > 0, "The maximum batch size must be positive.");
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Answers {@code 304 Not Modified} when the table didn't change since the version held by the client,
+     * see {@link JdbcRepository#findVersion()}, without reading the page.
+     */
     @GetMapping
-    public Page<T> findAll(Pageable pageable) {
-        return repository.findAll(pageable);
+    public ResponseEntity<?> findAll(Pageable pageable, WebRequest request) {
+        EntityVersion version = repository.findVersion();
+        if (isNotModified(version, request)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+        if (directJson) {
+            return conditional(version).contentType(MediaType.APPLICATION_JSON).body(writePage(pageable));
+        }
+        return conditional(version).body(repository.findAll(pageable));
+    }
+
+    /**
+     * Writes the page in the JSON shape of {@link Page}: the rows first, then the page properties, which
+     * are serialized from a page of placeholders once the number of rows is known. The page of entities is
+     * serialized instead when the mapper writes a property of the entity that isn't its column.
+     */
+    private StreamingResponseBody writePage(Pageable pageable) {
+        ObjectMapper mapper = objectMapper();
+        EntityModel<T> model = EntityModel.of(repository.getEntityClass());
+        return out -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                JsonRowWriter rows = JsonRowWriter.of(generator, model, mapper);
+                if (rows == null) {
+                    mapper.writeValue(generator, repository.findAll(pageable));
+                    return;
+                }
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("content");
+                try {
+                    repository.findAll(pageable, rows);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                generator.writeEndArray();
+                Page<Object> page = PageableExecutionUtils.getPage(
+                    Collections.nCopies(rows.getRowCount(), null), pageable, repository::getAtomicCount);
+                ObjectNode properties = mapper.valueToTree(page);
+                properties.remove("content");
+                Iterator<Map.Entry<String, JsonNode>> fields = properties.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    generator.writeFieldName(field.getKey());
+                    generator.writeTree(field.getValue());
+                }
+                generator.writeEndObject();
+            }
+        };
+    }
+
+    /**
+     * Exports all rows as newline-delimited JSON, one object per line. The rows are read through the
+     * forward-only cursor of {@link JdbcRepository#streamAll(String, Sort)} and written as they arrive,
+     * so the memory used doesn't depend on the number of rows.
+     */
+    @GetMapping(value = "/export", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(Sort sort) {
+        ObjectMapper mapper = objectMapper();
+        ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (Stream<T> rows = repository.streamAll(null, sort);
+                 JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                int written = 0;
+                Iterator<T> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    writer.writeValue(generator, iterator.next());
+                    generator.writeRaw('\n');
+                    // the first row goes out at once, then the response is flushed in blocks
+                    if (++written == 1 || written % EXPORT_FLUSH_ROWS == 0) {
+                        generator.flush();
+                    }
+                }
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+            .body(body);
+    }
+
+    /**
+     * Reads the items of the given ids with a single query; ids without an item are left out.
+     */
+    @GetMapping(params = "ids")
+    public List<T> findAllById(@RequestParam("ids") List<ID> ids) {
+        checkBatchSize(ids);
+        return repository.findAll(ids);
+    }
+
+    /**
+     * Saves the given items in batches, within the one transaction of {@link JdbcRepository#save(Iterable)}.
+     *
+     * @return The saved items, with their ids.
+     */
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public List<BatchItemResult<T>> insertAll(@RequestBody List<T> items) {
+        checkBatchSize(items);
+        List<T> saved = repository.save(items);
+        List<BatchItemResult<T>> results = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            results.add(new BatchItemResult<>(i, HttpStatus.CREATED, saved.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Updates the given items in batches, within the one transaction of {@link JdbcRepository#updateAll(Iterable)};
+     * the items without a row are reported as {@code 404 Not Found}, those updated since they were read as
+     * {@code 409 Conflict}, the others are updated.
+     */
+    @PutMapping("/batch")
+    public List<BatchItemResult<T>> updateAll(@RequestBody List<T> items) {
+        checkBatchSize(items);
+        int[] counts = repository.updateAll(items);
+        List<BatchItemResult<T>> results = new ArrayList<>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            HttpStatus status = (counts[i] == JdbcRepository.VERSION_CONFLICT) ? HttpStatus.CONFLICT
+                : (counts[i] != 0) ? HttpStatus.OK : HttpStatus.NOT_FOUND;
+            results.add(new BatchItemResult<>(i, status, items.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Deletes the items of the given ids in batches, within the one transaction of
+     * {@link JdbcRepository#deleteEach(Iterable)}; the ids without an item are reported as {@code 404 Not Found}.
+     */
+    @DeleteMapping("/batch")
+    public List<BatchItemResult<ID>> deleteAll(@RequestBody List<ID> ids) {
+        checkBatchSize(ids);
+        int[] counts = repository.deleteEach(ids);
+        List<BatchItemResult<ID>> results = new ArrayList<>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            results.add(new BatchItemResult<>(i, (counts[i] != 0) ? HttpStatus.OK : HttpStatus.NOT_FOUND, ids.get(i)));
+        }
+        return results;
     }
 
     @GetMapping("/count")
@@ -29,11 +243,18 @@ public abstract class AbstractController<T, ID extends Serializable> {
         return repository.count();
     }
 
+    /**
+     * Answers {@code 304 Not Modified} when the row didn't change since the version held by the client,
+     * see {@link JdbcRepository#findVersion(Serializable)}, without reading the row.
+     */
     @GetMapping("/{id}")
-    @ResponseBody
-    public T findById(@PathVariable ID id) {
+    public ResponseEntity<T> findById(@PathVariable ID id, WebRequest request) {
         Assert.notNull(id, "You must provide an ID to locate an item in the repository.");
-        return repository.findOne(id);
+        EntityVersion version = repository.findVersion(id);
+        if (isNotModified(version, request)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+        return conditional(version).body(repository.findOne(id));
     }
 
     @DeleteMapping("/{id}")
@@ -56,4 +277,48 @@ public abstract class AbstractController<T, ID extends Serializable> {
         return repository.save(t);
     }
 
+    /**
+     * Answers updates of items changed since they were read with {@code 409 Conflict}.
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public String handleConflict(OptimisticLockingFailureException e) {
+        return e.getMessage();
+    }
+
+    private ObjectMapper objectMapper() {
+        return (objectMapper != null) ? objectMapper : (objectMapper = Jackson2ObjectMapperBuilder.json().build());
+    }
+
+    private void checkBatchSize(List<?> items) {
+        Assert.notNull(items, "You must provide the items of the batch.");
+        if (items.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                "A batch holds at most " + maxBatchSize + " items, got " + items.size() + ".");
+        }
+    }
+
+    /**
+     * Checks the {@code If-None-Match} and {@code If-Modified-Since} headers of the request against the version,
+     * and sets the {@code ETag} and {@code Last-Modified} headers of the response.
+     *
+     * @param version The current version, or {@code null} if unknown.
+     */
+    protected boolean isNotModified(EntityVersion version, WebRequest request) {
+        if (version == null) {
+            return false;
+        }
+        return (version.getLastModified() >= 0)
+            ? request.checkNotModified(version.getTag(), version.getLastModified())
+            : request.checkNotModified(version.getTag());
+    }
+
+    /**
+     * @return A 200 response that clients revalidate before reusing, when the version is known.
+     */
+    private static ResponseEntity.BodyBuilder conditional(EntityVersion version) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        return (version != null) ? builder.cacheControl(CacheControl.noCache()) : builder;
+    }
+
 }
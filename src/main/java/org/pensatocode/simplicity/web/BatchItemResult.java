@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.web;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Outcome of one item of a batch request to {@link AbstractController}.
+ *
+ * @param <V> The type of the value: the entity, or its id.
+ */
+public final class BatchItemResult<V> {
+
+    private final int index;
+    private final int status;
+    private final V value;
+
+    public BatchItemResult(int index, HttpStatus status, V value) {
+        this.index = index;
+        this.status = status.value();
+        this.value = value;
+    }
+
+    /**
+     * @return The position of the item in the request.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The HTTP status the item would have had as a request on its own.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    public V getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchItemResult[" + index + ": " + status + "]";
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity.web;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import org.pensatocode.simplicity.jdbc.mapper.EntityModel;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes each row of a result set as a JSON object straight to a {@link JsonGenerator}, without building
+ * the entity. The fields are the properties the {@link ObjectMapper} serializes, with their names, order
+ * and inclusion, as introspected from the entity and its Jackson annotations, and the values are read with
+ * the typed getter of the property type. Values of other types are written by the codec of the generator,
+ * as they would be from the entity.
+ *
+ * <p>Entities with a property the rows can't give as the mapper would write it (a getter without a field,
+ * a custom serializer, a format, a view...) can't be written this way, see {@link #of(JsonGenerator, EntityModel, ObjectMapper)}.
+ */
+public class JsonRowWriter implements RowCallbackHandler {
+
+    private final JsonGenerator generator;
+    private final EntityModel<?> model;
+    private final List<JsonField> fields;
+    private int[] columns;
+    private int rowCount;
+
+    private JsonRowWriter(JsonGenerator generator, EntityModel<?> model, List<JsonField> fields) {
+        this.generator = generator;
+        this.model = model;
+        this.fields = fields;
+    }
+
+    /**
+     * @param mapper The mapper whose serialization of the entity the rows are written in.
+     * @return A writer of the rows of the entity, or {@code null} if one of the properties the mapper
+     *         serializes can't be written from its column, in which case the entities should be serialized.
+     */
+    public static JsonRowWriter of(JsonGenerator generator, EntityModel<?> model, ObjectMapper mapper) {
+        List<JsonField> fields = fields(model, mapper);
+        return (fields != null) ? new JsonRowWriter(generator, model, fields) : null;
+    }
+
+    /**
+     * @throws UncheckedIOException if writing to the generator fails.
+     */
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        if (columns == null) {
+            columns = columns(rs.getMetaData());
+        }
+        try {
+            generator.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] > 0) {
+                    JsonField field = fields.get(i);
+                    field.writer.write(rs, columns[i], generator, field);
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rowCount++;
+    }
+
+    /**
+     * @return The number of rows written.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return The fields the mapper writes for the entity, in order, or {@code null} if one can't be written
+     *         from a column.
+     */
+    private static List<JsonField> fields(EntityModel<?> model, ObjectMapper mapper) {
+        SerializationConfig config = mapper.getSerializationConfig();
+        JavaType type = mapper.constructType(model.getType());
+        BeanDescription description = config.introspect(type);
+        AnnotationIntrospector annotations = config.getAnnotationIntrospector();
+        if (config.getActiveView() != null || config.getDefaultTyper(type) != null
+            || description.findJsonValueAccessor() != null || description.findAnyGetter() != null
+            || (annotations != null && (annotations.findSerializer(description.getClassInfo()) != null
+                || annotations.findTypeResolver(config, description.getClassInfo(), type) != null))) {
+            return null;
+        }
+        JsonInclude.Value defaultInclusion = description.findPropertyInclusion(
+            config.getDefaultPropertyInclusion(model.getType()));
+        List<JsonField> fields = new ArrayList<>();
+        for (BeanPropertyDefinition definition : description.findProperties()) {
+            if (!definition.couldSerialize()) {
+                continue;
+            }
+            EntityModel.Property property = (definition.getField() != null)
+                ? model.getProperty(definition.getField().getName()) : null;
+            AnnotatedMember accessor = definition.getAccessor();
+            if (property == null || accessor == null || definition.getRawPrimaryType() != property.getType()) {
+                return null;
+            }
+            if (annotations != null && (annotations.findSerializer(accessor) != null
+                || annotations.findFormat(accessor) != null
+                || annotations.findUnwrappingNameTransformer(accessor) != null
+                || annotations.findViews(accessor) != null)) {
+                return null;
+            }
+            JsonInclude.Include inclusion = defaultInclusion.withOverrides(definition.findInclusion()).getValueInclusion();
+            boolean nulls;
+            switch (inclusion) {
+                case ALWAYS: case USE_DEFAULTS:
+                    nulls = true;
+                    break;
+                case NON_NULL: case NON_ABSENT:
+                    nulls = false;
+                    break;
+                default:
+                    return null;
+            }
+            fields.add(new JsonField(definition.getName(), property.getIndex(), nulls,
+                valueWriter(property.getType())));
+        }
+        return fields;
+    }
+
+    /**
+     * @return The column of each field in the result set, 0 when absent.
+     */
+    private int[] columns(ResultSetMetaData metaData) throws SQLException {
+        int[] indexes = new int[fields.size()];
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            EntityModel.Property property = model.getProperty(metaData.getColumnLabel(i));
+            if (property == null) {
+                continue;
+            }
+            for (int f = 0; f < indexes.length; f++) {
+                if (fields.get(f).property == property.getIndex() && indexes[f] == 0) {
+                    indexes[f] = i;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static ValueWriter valueWriter(Class<?> type) {
+        if (type == long.class || type == int.class || type == short.class || type == byte.class) {
+            return (rs, i, gen, field) -> {
+                field.writeName(gen);
+                gen.writeNumber(rs.getLong(i));
+            };
+        }
+        if (type == Long.class || type == Integer.class || type == Short.class || type == Byte.class) {
+            return (rs, i, gen, field) -> {
+                long value = rs.getLong(i);
+                if (rs.wasNull()) {
+                    field.writeNull(gen);
+                } else {
+                    field.writeName(gen);
+                    gen.writeNumber(value);
+                }
+            };
+        }
+        if (type == double.class) {
+            return (rs, i, gen, field) -> {
+                field.writeName(gen);
+                gen.writeNumber(rs.getDouble(i));
+            };
+        }
+        if (type == float.class) {
+            return (rs, i, gen, field) -> {
+                field.writeName(gen);
+                gen.writeNumber(rs.getFloat(i));
+            };
+        }
+        if (type == boolean.class) {
+            return (rs, i, gen, field) -> {
+                field.writeName(gen);
+                gen.writeBoolean(rs.getBoolean(i));
+            };
+        }
+        if (type == Boolean.class) {
+            return (rs, i, gen, field) -> {
+                boolean value = rs.getBoolean(i);
+                if (rs.wasNull()) {
+                    field.writeNull(gen);
+                } else {
+                    field.writeName(gen);
+                    gen.writeBoolean(value);
+                }
+            };
+        }
+        if (type == String.class || type == char.class || type == Character.class) {
+            return (rs, i, gen, field) -> writeValue(rs.getString(i), gen, field);
+        }
+        if (type.isEnum()) {
+            // through the codec, as the mapper may write the index, toString() or @JsonValue of the constant
+            return (rs, i, gen, field) -> {
+                String name = rs.getString(i);
+                writeValue((name == null) ? null : Enum.valueOf((Class<? extends Enum>) type, name), gen, field);
+            };
+        }
+        if (type == BigDecimal.class) {
+            return (rs, i, gen, field) -> writeValue(rs.getBigDecimal(i), gen, field);
+        }
+        if (type == Instant.class || type == java.util.Date.class) {
+            return (rs, i, gen, field) -> {
+                Timestamp value = rs.getTimestamp(i);
+                writeValue((value == null) ? null
+                    : (type == Instant.class) ? value.toInstant() : new java.util.Date(value.getTime()), gen, field);
+            };
+        }
+        return (rs, i, gen, field) -> writeValue(rs.getObject(i, type), gen, field);
+    }
+
+    private static void writeValue(Object value, JsonGenerator generator, JsonField field) throws IOException {
+        if (value == null) {
+            field.writeNull(generator);
+        } else if (value instanceof String) {
+            field.writeName(generator);
+            generator.writeString((String) value);
+        } else if (value instanceof BigDecimal) {
+            field.writeName(generator);
+            generator.writeNumber((BigDecimal) value);
+        } else {
+            field.writeName(generator);
+            generator.writeObject(value);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter {
+        void write(ResultSet rs, int column, JsonGenerator generator, JsonField field) throws SQLException, IOException;
+    }
+
+    private static final class JsonField {
+
+        private final SerializedString name;
+        private final int property;
+        private final boolean nulls;
+        private final ValueWriter writer;
+
+        private JsonField(String name, int property, boolean nulls, ValueWriter writer) {
+            this.name = new SerializedString(name);
+            this.property = property;
+            this.nulls = nulls;
+            this.writer = writer;
+        }
+
+        void writeName(JsonGenerator generator) throws IOException {
+            generator.writeFieldName(name);
+        }
+
+        /**
+         * Writes a null value, unless the mapper leaves null values out.
+         */
+        void writeNull(JsonGenerator generator) throws IOException {
+            if (nulls) {
+                generator.writeFieldName(name);
+                generator.writeNull();
+            }
+        }
+    }
+}
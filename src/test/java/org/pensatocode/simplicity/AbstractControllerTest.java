@@ -0,0 +1,260 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.pensatocode.simplicity.jdbc.metrics.MicrometerRepositoryMetrics;
+import org.pensatocode.simplicity.web.AbstractController;
+import org.pensatocode.simplicity.web.BatchItemResult;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AbstractControllerTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CommentRepository repository;
+    private AbstractController<Comment, Integer> controller;
+
+    @BeforeEach
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("schema_h2.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("INSERT INTO users (user_name, date_of_birth, reputation, enabled) VALUES ('alex', '1980-01-01', 1, true)");
+        repository = new CommentRepository(jdbcTemplate);
+        controller = new AbstractController<>(repository) {};
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("Export writes one JSON object per line in the requested order")
+    public void testExport() throws Exception {
+        List<Comment> comments = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            comments.add(new Comment("alex", "comment " + i, LocalDateTime.now(), i));
+        }
+        repository.save(comments);
+
+        ResponseEntity<StreamingResponseBody> response = controller.export(Sort.by(Sort.Direction.DESC, "id"));
+        Assertions.assertEquals(AbstractController.APPLICATION_NDJSON_VALUE, response.getHeaders().getContentType().toString());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        Assertions.assertEquals(1500, lines.length);
+        Assertions.assertTrue(lines[0].startsWith("{") && lines[0].contains("\"contents\":\"comment 1499\""));
+        Assertions.assertTrue(lines[1499].contains("\"contents\":\"comment 0\""));
+    }
+
+    @Test
+    @DisplayName("Conditional GET answers 304 until the rows change")
+    public void testConditionalGet() {
+        repository.setLastModifiedColumn("last_modified");
+        Comment comment = repository.save(new Comment("alex", "versioned", LocalDateTime.now(), 0));
+
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        ResponseEntity<Comment> found = controller.findById(comment.getId(), conditional(null, first));
+        Assertions.assertEquals(HttpStatus.OK, found.getStatusCode());
+        Assertions.assertEquals("versioned", found.getBody().getContents());
+        String etag = first.getHeader(HttpHeaders.ETAG);
+        Assertions.assertNotNull(etag);
+
+        ResponseEntity<Comment> notModified = controller.findById(comment.getId(), conditional(etag, new MockHttpServletResponse()));
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        Assertions.assertNull(notModified.getBody());
+
+        MockHttpServletResponse page = new MockHttpServletResponse();
+        Assertions.assertEquals(HttpStatus.OK, controller.findAll(PageRequest.of(0, 10), conditional(null, page)).getStatusCode());
+        String pageEtag = page.getHeader(HttpHeaders.ETAG);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED,
+            controller.findAll(PageRequest.of(0, 10), conditional(pageEtag, new MockHttpServletResponse())).getStatusCode());
+
+        jdbcTemplate.update("UPDATE comments SET last_modified = DATEADD('SECOND', 5, last_modified) WHERE id = ?", comment.getId());
+        Assertions.assertEquals(HttpStatus.OK,
+            controller.findById(comment.getId(), conditional(etag, new MockHttpServletResponse())).getStatusCode());
+        Assertions.assertEquals(HttpStatus.OK,
+            controller.findAll(PageRequest.of(0, 10), conditional(pageEtag, new MockHttpServletResponse())).getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Batch endpoints report one result per item and enforce the maximum batch size")
+    public void testBatchEndpoints() {
+        List<Comment> comments = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            comments.add(new Comment("alex", "batch " + i, LocalDateTime.now(), i));
+        }
+        List<BatchItemResult<Comment>> created = controller.insertAll(comments);
+        Assertions.assertEquals(3, created.size());
+        Assertions.assertEquals(201, created.get(2).getStatus());
+        Integer firstId = created.get(0).getValue().getId();
+        Assertions.assertNotNull(firstId);
+
+        List<Integer> ids = List.of(firstId, created.get(1).getValue().getId(), -1);
+        Assertions.assertEquals(2, controller.findAllById(ids).size());
+
+        Comment missing = new Comment("alex", "missing", LocalDateTime.now(), 0);
+        missing.setId(-1);
+        created.get(0).getValue().setContents("changed");
+        List<BatchItemResult<Comment>> updated = controller.updateAll(List.of(created.get(0).getValue(), missing));
+        Assertions.assertEquals(200, updated.get(0).getStatus());
+        Assertions.assertEquals(404, updated.get(1).getStatus());
+        Assertions.assertEquals("changed", repository.findOne(firstId).getContents());
+
+        List<BatchItemResult<Integer>> deleted = controller.deleteAll(ids);
+        Assertions.assertEquals(List.of(200, 200, 404),
+            List.of(deleted.get(0).getStatus(), deleted.get(1).getStatus(), deleted.get(2).getStatus()));
+        Assertions.assertEquals(1L, repository.count());
+
+        controller.setMaxBatchSize(2);
+        ResponseStatusException tooLarge = Assertions.assertThrows(ResponseStatusException.class,
+            () -> controller.findAllById(ids));
+        Assertions.assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, tooLarge.getStatus());
+    }
+
+    @Test
+    @DisplayName("Direct JSON pages have the shape of serialized entity pages")
+    public void testDirectJson() throws Exception {
+        List<Comment> comments = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            comments.add(new Comment("alex", "direct " + i, LocalDateTime.of(2020, 1, 1, 10, i), i));
+        }
+        repository.save(comments);
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        controller.setObjectMapper(mapper);
+        controller.setDirectJson(true);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        repository.setMetrics(new MicrometerRepositoryMetrics(registry));
+
+        for (Pageable pageable : List.of(PageRequest.of(0, 2, Sort.by("id")), PageRequest.of(2, 2, Sort.by("id")), Pageable.unpaged())) {
+            ResponseEntity<?> response = controller.findAll(pageable, conditional(null, new MockHttpServletResponse()));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ((StreamingResponseBody) response.getBody()).writeTo(out);
+            Assertions.assertEquals(mapper.readTree(mapper.writeValueAsBytes(repository.findAll(pageable))), mapper.readTree(out.toByteArray()));
+        }
+
+        // the direct pages are reported like the pages of entities they are compared with
+        Assertions.assertEquals(0L, registry.find("simplicity.repository.operations").tag("outcome", "error").timers()
+            .stream().mapToLong(Timer::count).sum());
+        Assertions.assertEquals(4, registry.get("simplicity.repository.operations")
+            .tags("method", "findPage", "outcome", "success").timer().count());
+        Assertions.assertEquals(6.0, registry.get("simplicity.repository.rows").tags("method", "findPage").summary().totalAmount());
+        Assertions.assertEquals(2, registry.get("simplicity.repository.operations")
+            .tags("method", "findAll", "outcome", "success").timer().count());
+        Assertions.assertEquals(10.0, registry.get("simplicity.repository.rows").tags("method", "findAll").summary().totalAmount());
+    }
+
+    @Test
+    @DisplayName("Direct JSON rows follow the names, order and inclusion of the mapper, or fall back to the entities")
+    public void testDirectJsonAnnotations() throws Exception {
+        List<Comment> comments = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            comments.add(new Comment("alex", "annotated " + i, LocalDateTime.of(2020, 1, 1, 10, i), i));
+        }
+        repository.save(comments);
+        jdbcTemplate.update("UPDATE comments SET contents = NULL WHERE id = ?", comments.get(1).getId());
+        controller.setDirectJson(true);
+        Pageable pageable = PageRequest.of(0, 10, Sort.by("id"));
+
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().mixIn(Comment.class, AnnotatedComment.class).build();
+        controller.setObjectMapper(mapper);
+        JsonNode page = mapper.readTree(writePage(pageable));
+        Assertions.assertEquals(mapper.writeValueAsString(repository.findAll(pageable).getContent()), page.get("content").toString());
+        Assertions.assertEquals(List.of("contents", "id", "createdTime", "author"), fieldNames(page.get("content").get(0)));
+        Assertions.assertFalse(page.get("content").get(1).has("contents"));
+
+        mapper = Jackson2ObjectMapperBuilder.json().mixIn(Comment.class, FormattedComment.class).build();
+        controller.setObjectMapper(mapper);
+        page = mapper.readTree(writePage(pageable));
+        Assertions.assertEquals(mapper.readTree(mapper.writeValueAsBytes(repository.findAll(pageable))), page);
+        Assertions.assertEquals("0", page.get("content").get(0).get("favouriteCount").textValue());
+    }
+
+    private byte[] writePage(Pageable pageable) throws Exception {
+        ResponseEntity<?> response = controller.findAll(pageable, conditional(null, new MockHttpServletResponse()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    @JsonPropertyOrder({ "contents", "id" })
+    private abstract static class AnnotatedComment {
+        @JsonProperty("author")
+        String userName;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String contents;
+        @JsonIgnore
+        int favouriteCount;
+    }
+
+    private abstract static class FormattedComment {
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        int favouriteCount;
+    }
+
+    private static ServletWebRequest conditional(String etag, MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        if (etag != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        return new ServletWebRequest(request, response);
+    }
+}
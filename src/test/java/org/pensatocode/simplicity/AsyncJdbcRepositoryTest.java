@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.pensatocode.simplicity.jdbc.async.AsyncJdbcRepository;
+import org.pensatocode.simplicity.jdbc.async.BoundedExecutor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncJdbcRepositoryTest {
+
+    private EmbeddedDatabase database;
+    private CommentRepository repository;
+
+    @BeforeEach
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("schema_h2.sql")
+            .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("INSERT INTO users (user_name, date_of_birth, reputation, enabled) VALUES ('alex', '1980-01-01', 1, true)");
+        repository = new CommentRepository(jdbcTemplate);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("Independent lookups run in parallel and complete their futures")
+    public void testParallelLookups() {
+        List<Comment> comments = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            comments.add(new Comment("alex", "comment " + i, LocalDateTime.now(), i));
+        }
+        repository.save(comments);
+        AsyncJdbcRepository<Comment, Integer> async = new AsyncJdbcRepository<>(repository);
+        CompletableFuture<Comment> one = async.findOne(comments.get(3).getId());
+        CompletableFuture<Page<Comment>> page = async.findAll(PageRequest.of(1, 10));
+        CompletableFuture<Boolean> missing = async.exists(999_999);
+        CompletableFuture.allOf(one, page, missing).join();
+        Assertions.assertEquals("comment 3", one.join().getContents());
+        Assertions.assertEquals(5, page.join().getNumberOfElements());
+        Assertions.assertFalse(missing.join());
+        Assertions.assertSame(async.getExecutor(), BoundedExecutor.forDataSource(database));
+        BoundedExecutor.shutdown(database);
+        Assertions.assertNotSame(async.getExecutor(), BoundedExecutor.forDataSource(database));
+    }
+
+    @Test
+    @DisplayName("A waiting call fails when the executor under the limit rejects it")
+    public void testRejectedCall() throws Exception {
+        ExecutorService threads = BoundedExecutor.defaultExecutor();
+        AsyncJdbcRepository<Comment, Integer> async = new AsyncJdbcRepository<>(repository, new BoundedExecutor(threads, 1));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Long> running = async.async(r -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return r.count();
+        });
+        CompletableFuture<Long> waiting = async.count();
+        threads.shutdown();
+        release.countDown();
+        Assertions.assertEquals(0L, running.get(5, TimeUnit.SECONDS));
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(failure.getCause() instanceof RejectedExecutionException);
+    }
+
+    @Test
+    @DisplayName("No more tasks than the limit run at once")
+    public void testConcurrencyLimit() throws Exception {
+        ExecutorService threads = BoundedExecutor.defaultExecutor();
+        try {
+            BoundedExecutor executor = new BoundedExecutor(threads, 2);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(20);
+            for (int i = 0; i < 20; i++) {
+                executor.execute(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+            Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(maxRunning.get() <= 2);
+            Assertions.assertEquals(0, executor.getQueuedCount());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
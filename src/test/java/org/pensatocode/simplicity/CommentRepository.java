@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity;
+
+import org.pensatocode.simplicity.jdbc.AbstractJdbcRepository;
+import org.pensatocode.simplicity.jdbc.mapper.TransactionalRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CommentRepository extends AbstractJdbcRepository<Comment, Integer> {
+
+    public CommentRepository(JdbcTemplate jdbcTemplate) {
+        super(jdbcTemplate, new CommentRowMapper(), "comments", Comment.class, "id");
+    }
+
+    static class CommentRowMapper extends TransactionalRowMapper<Comment> {
+
+        @Override
+        public Comment mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Comment comment = new Comment(
+                rs.getString("user_name"),
+                rs.getString("contents"),
+                convertToLocalDateTime(rs.getTimestamp("created_time")),
+                rs.getInt("favourite_count"));
+            comment.setId(rs.getInt("id"));
+            return comment;
+        }
+
+        @Override
+        public Map<String, Object> mapColumns(Comment comment) {
+            Map<String, Object> columns = new HashMap<>();
+            columns.put("id", comment.getId());
+            columns.put("user_name", comment.getUserName());
+            columns.put("contents", comment.getContents());
+            columns.put("created_time", comment.getCreatedTime());
+            columns.put("favourite_count", comment.getFavouriteCount());
+            return columns;
+        }
+
+        @Override
+        public Map<String, Integer> mapTypes() {
+            Map<String, Integer> types = new HashMap<>();
+            types.put("id", Types.INTEGER);
+            types.put("user_name", Types.VARCHAR);
+            types.put("contents", Types.VARCHAR);
+            types.put("created_time", Types.TIMESTAMP);
+            types.put("favourite_count", Types.INTEGER);
+            return types;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.pensatocode.simplicity.jdbc.cache.EntityCache;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EntityCacheTest {
+
+    @Test
+    @DisplayName("Frequently read keys survive a scan of cold keys")
+    public void testAdmission() {
+        EntityCache<Integer, String> cache = EntityCache.builder().maximumSize(10).build();
+        for (int round = 0; round < 20; round++) {
+            for (int hot = 0; hot < 10; hot++) {
+                cache.get(hot, String::valueOf);
+            }
+        }
+        for (int cold = 100; cold < 1100; cold++) {
+            cache.get(cold, String::valueOf);
+        }
+        for (int hot = 0; hot < 10; hot++) {
+            Assertions.assertNotNull(cache.getIfPresent(hot));
+        }
+        Assertions.assertEquals(10, cache.size());
+        Assertions.assertEquals(1000, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    @DisplayName("Entries are bounded by weight and expire after write")
+    public void testWeightAndExpiry() {
+        EntityCache<Integer, String> cache = EntityCache.builder()
+            .maximumWeight(10, (Integer key, String value) -> value.length())
+            .build();
+        cache.put(1, "12345");
+        cache.put(2, "12345");
+        cache.put(3, "1234567890a");
+        Assertions.assertNull(cache.getIfPresent(3));
+        Assertions.assertEquals(10, cache.stats().getWeight());
+        // peeking counts neither a hit nor a miss
+        Assertions.assertEquals("12345", cache.peek(1));
+        Assertions.assertNull(cache.peek(4));
+        Assertions.assertEquals(0, cache.stats().getHitCount());
+        Assertions.assertEquals(1, cache.stats().getMissCount());
+
+        EntityCache<Integer, String> expiring = EntityCache.builder().maximumSize(10).expireAfterWrite(Duration.ZERO).build();
+        expiring.put(1, "one");
+        Assertions.assertNull(expiring.getIfPresent(1));
+        Assertions.assertEquals(1, expiring.stats().getExpirationCount());
+    }
+
+    @Test
+    @DisplayName("Concurrent misses of one key share a single load")
+    public void testLoadCollapsing() throws Exception {
+        EntityCache<Integer, String> cache = EntityCache.builder().maximumSize(10).build();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> cache.get(1, key -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "one";
+            }));
+            loading.await(5, TimeUnit.SECONDS);
+            Future<String> second = executor.submit(() -> cache.get(1, key -> {
+                loads.incrementAndGet();
+                return "other";
+            }));
+            Thread.sleep(50);
+            release.countDown();
+            Assertions.assertEquals("one", first.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("one", second.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, loads.get());
+            Assertions.assertEquals(1, cache.stats().getLoadCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
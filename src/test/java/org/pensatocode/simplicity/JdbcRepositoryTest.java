@@ -0,0 +1,686 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.pensatocode.simplicity.jdbc.AbstractJdbcRepository;
+import org.pensatocode.simplicity.jdbc.JdbcRepository;
+import org.pensatocode.simplicity.jdbc.KeysetCursor;
+import org.pensatocode.simplicity.jdbc.KeysetSlice;
+import org.pensatocode.simplicity.jdbc.Projection;
+import org.pensatocode.simplicity.jdbc.TableDescription;
+import org.pensatocode.simplicity.jdbc.cache.EntityCache;
+import org.pensatocode.simplicity.jdbc.count.CountStrategy;
+import org.pensatocode.simplicity.jdbc.exception.NoRecordUpdatedException;
+import org.pensatocode.simplicity.jdbc.exception.VersionConflictException;
+import org.pensatocode.simplicity.jdbc.metrics.MicrometerRepositoryMetrics;
+import org.pensatocode.simplicity.jdbc.mapper.EntityMetadata;
+import org.pensatocode.simplicity.jdbc.mapper.EntityModel;
+import org.pensatocode.simplicity.jdbc.mapper.EntityRowMapper;
+import org.pensatocode.simplicity.jdbc.mapper.IdAccessor;
+import org.pensatocode.simplicity.jdbc.sql.DefaultSqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.H2SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.LimitOffsetSqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SqlStatements;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class JdbcRepositoryTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CommentRepository repository;
+
+    @BeforeEach
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("schema_h2.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("INSERT INTO users (user_name, date_of_birth, reputation, enabled) VALUES ('alex', '1980-01-01', 1, true)");
+        repository = new CommentRepository(jdbcTemplate);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("Pages are read with bound offsets")
+    public void testFindPage() {
+        repository.save(comments(25));
+        Page<Comment> page = repository.findAll(PageRequest.of(2, 10, Sort.by("favouriteCount")));
+        Assertions.assertEquals(5, page.getNumberOfElements());
+        Assertions.assertEquals(25L, page.getTotalElements());
+        Assertions.assertEquals(20, page.getContent().get(0).getFavouriteCount());
+    }
+
+    @Test
+    @DisplayName("Batch save inserts new entities with their generated keys and updates the others")
+    public void testBatchSave() {
+        repository.setBatchSize(7);
+        List<Comment> saved = repository.save(comments(20));
+        Assertions.assertEquals(20L, repository.count());
+        for (Comment comment : saved) {
+            Assertions.assertNotEquals(0, comment.getId());
+            Assertions.assertEquals(comment.getFavouriteCount(), repository.findOne(comment.getId()).getFavouriteCount());
+        }
+
+        List<Comment> changed = new ArrayList<>(saved.subList(0, 10));
+        changed.forEach(c -> c.setContents("changed"));
+        changed.addAll(comments(3));
+        repository.save(changed);
+        Assertions.assertEquals(23L, repository.count());
+        Assertions.assertEquals(10, repository.findAll("contents = 'changed'").size());
+    }
+
+    @Test
+    @DisplayName("Batch save inserts row by row without multi-row inserts, each entity getting its own key")
+    public void testBatchSaveWithoutMultiRowInsert() {
+        CommentRepository plain = withGenerator(new DefaultSqlGenerator());
+        List<Comment> saved = plain.save(comments(12));
+        Assertions.assertEquals(12L, plain.count());
+        Assertions.assertEquals(12, saved.stream().map(Comment::getId).distinct().filter(id -> id > 0).count());
+        for (Comment comment : saved) {
+            Assertions.assertEquals(comment.getContents(), plain.findOne(comment.getId()).getContents());
+        }
+    }
+
+    @Test
+    @DisplayName("Lookup by ids returns the rows in the order of the given ids")
+    public void testFindAllByIds() {
+        List<Comment> saved = repository.save(comments(30));
+        List<Integer> ids = new ArrayList<>();
+        for (int i = saved.size() - 1; i >= 0; i -= 3) {
+            ids.add(saved.get(i).getId());
+        }
+        ids.add(-1);
+        CommentRepository inList = withGenerator(new LimitOffsetSqlGenerator());
+        for (CommentRepository repo : List.of(repository, inList)) {
+            List<Comment> found = repo.findAll(ids);
+            Assertions.assertEquals(10, found.size());
+            for (int i = 0; i < found.size(); i++) {
+                Assertions.assertEquals(ids.get(i), found.get(i).getId());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Streams and callbacks read every row through a cursor")
+    public void testStreamAll() throws Exception {
+        repository.save(comments(50));
+        repository.setFetchSize(8);
+        try (Stream<Comment> stream = repository.streamAll("favourite_count >= 10", Sort.by("favouriteCount"))) {
+            Assertions.assertEquals(40, stream.mapToInt(Comment::getFavouriteCount).filter(c -> c >= 10).count());
+        }
+        try (Stream<Comment> stream = repository.streamAll()) {
+            Assertions.assertEquals(5, stream.limit(5).count());
+        }
+        AtomicInteger rows = new AtomicInteger();
+        repository.findAll(rs -> { rows.incrementAndGet(); });
+        Assertions.assertEquals(50, rows.get());
+
+        // outside a transaction, the cursor turns off auto-commit on its connection until it is closed
+        SingleConnectionDataSource single = new SingleConnectionDataSource(DataSourceUtils.getConnection(database), true);
+        CommentRepository streaming = new CommentRepository(new JdbcTemplate(single));
+        try (Stream<Comment> stream = streaming.streamAll()) {
+            Assertions.assertEquals(1, stream.limit(1).count());
+            Assertions.assertFalse(single.getConnection().getAutoCommit());
+        }
+        Assertions.assertTrue(single.getConnection().getAutoCommit());
+
+        // a failing consumer releases the cursor even when the stream isn't closed
+        Stream<Comment> failing = streaming.streamAll();
+        Assertions.assertThrows(IllegalStateException.class, () -> failing.forEach(c -> {
+            throw new IllegalStateException();
+        }));
+        Assertions.assertTrue(single.getConnection().getAutoCommit());
+        single.destroy();
+    }
+
+    @Test
+    @DisplayName("Keyset pagination walks every row once, for every dialect")
+    public void testFindAllAfter() {
+        List<Comment> saved = repository.save(comments(23));
+        saved.forEach(c -> c.setFavouriteCount(c.getFavouriteCount() % 4));
+        repository.save(saved);
+        CommentRepository rowNumber = withGenerator(new DefaultSqlGenerator());
+        List<Sort> sorts = List.of(
+            Sort.by(Sort.Order.desc("favouriteCount"), Sort.Order.asc("contents")),
+            Sort.by(Sort.Direction.DESC, "favouriteCount"),
+            Sort.by(Sort.Direction.DESC, "favouriteCount", "id"));
+        for (CommentRepository repo : List.of(repository, rowNumber)) {
+            for (Sort order : sorts) {
+                List<Integer> ids = new ArrayList<>();
+                int previous = Integer.MAX_VALUE;
+                KeysetSlice<Comment> slice = repo.findAllAfter("favourite_count > 0", null, order, 5);
+                while (true) {
+                    for (Comment comment : slice) {
+                        Assertions.assertTrue(comment.getFavouriteCount() <= previous);
+                        previous = comment.getFavouriteCount();
+                        ids.add(comment.getId());
+                    }
+                    if (!slice.hasNext()) {
+                        break;
+                    }
+                    slice = repo.findAllAfter("favourite_count > 0", KeysetCursor.decode(slice.getNext()), order, 5);
+                }
+                Assertions.assertEquals(17, ids.size());
+                Assertions.assertEquals(17, ids.stream().distinct().count());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Ids are read and written through accessors resolved once per class")
+    public void testIdAccessor() {
+        Comment comment = comments(1).get(0);
+        comment.setId(null);
+        repository.save(comment);
+        Assertions.assertNotNull(comment.getId());
+        Assertions.assertTrue(repository.exists(comment.getId()));
+        Assertions.assertEquals(1, repository.update(comment, Integer.valueOf(comment.getId())));
+        Assertions.assertThrows(InvalidDataAccessApiUsageException.class, () -> IdAccessor.of(Comment.class, "uuid"));
+    }
+
+    @Test
+    @DisplayName("Repositories without a row mapper read and write through the entity model")
+    public void testGeneratedRowMapper() {
+        AbstractJdbcRepository<Comment, Integer> generated =
+            new AbstractJdbcRepository<>(jdbcTemplate, "comments", Comment.class, "id") {};
+        List<Comment> saved = new ArrayList<>(comments(3));
+        saved.get(1).setContents(null);
+        generated.save(saved);
+        List<Comment> found = generated.findAll(Sort.by("id"));
+        Assertions.assertEquals(3, found.size());
+        Assertions.assertEquals(saved.get(0).getId(), found.get(0).getId());
+        Assertions.assertEquals("comment 0", found.get(0).getContents());
+        Assertions.assertNull(found.get(1).getContents());
+        Assertions.assertEquals(2, found.get(2).getFavouriteCount());
+        Assertions.assertTrue(Duration.between(saved.get(2).getCreatedTime(), found.get(2).getCreatedTime()).abs()
+            .compareTo(Duration.ofMillis(1)) < 0);
+        Assertions.assertEquals("comment 2", repository.findOne(found.get(2).getId()).getContents());
+        // a final field could never be read into
+        Assertions.assertThrows(InvalidDataAccessApiUsageException.class, () -> EntityModel.of(FinalComment.class));
+    }
+
+    @Test
+    @DisplayName("Row mappers read result sets of different shapes at the same time")
+    public void testInterleavedResultSets() {
+        repository.save(comments(3));
+        EntityRowMapper<Comment> rowMapper = new EntityRowMapper<>(Comment.class);
+        jdbcTemplate.execute((Connection connection) -> {
+            try (Statement first = connection.createStatement();
+                 Statement second = connection.createStatement();
+                 ResultSet byId = first.executeQuery("SELECT id, contents, favourite_count FROM comments ORDER BY id");
+                 ResultSet byCount = second.executeQuery("SELECT favourite_count, contents FROM comments ORDER BY id")) {
+                for (int i = 0; byId.next() && byCount.next(); i++) {
+                    Comment comment = rowMapper.mapRow(byId, i);
+                    Comment count = rowMapper.mapRow(byCount, i);
+                    Assertions.assertEquals("comment " + i, comment.getContents());
+                    Assertions.assertEquals(i, comment.getFavouriteCount());
+                    Assertions.assertEquals("comment " + i, count.getContents());
+                    Assertions.assertEquals(i, count.getFavouriteCount());
+                    Assertions.assertEquals(0, count.getId());
+                }
+            }
+            return null;
+        });
+    }
+
+    @Test
+    @DisplayName("Slices read one row past the page instead of counting")
+    public void testFindSlice() {
+        repository.save(comments(25));
+        Slice<Comment> slice = repository.findSlice(PageRequest.of(1, 10, Sort.by("id")));
+        Assertions.assertEquals(10, slice.getNumberOfElements());
+        Assertions.assertTrue(slice.hasNext());
+        slice = repository.findSlice("favourite_count >= 5", PageRequest.of(1, 10, Sort.by("id")));
+        Assertions.assertEquals(10, slice.getNumberOfElements());
+        Assertions.assertFalse(slice.hasNext());
+        Page<Comment> page = repository.findAll("favourite_count >= 5", PageRequest.of(0, 10, Sort.by("id")));
+        Assertions.assertEquals(20, page.getTotalElements());
+    }
+
+    @Test
+    @DisplayName("Count strategies follow writes made outside the repository as configured")
+    public void testCountStrategies() {
+        repository.save(comments(3));
+        Assertions.assertEquals(3L, repository.getAtomicCount());
+        jdbcTemplate.update("INSERT INTO comments (user_name, contents, created_time, favourite_count)"
+            + " VALUES ('alex', 'external', CURRENT_TIMESTAMP, 0)");
+        Assertions.assertEquals(3L, repository.getAtomicCount());
+
+        repository.setCountStrategy(CountStrategy.exact());
+        Assertions.assertEquals(4L, repository.getAtomicCount());
+
+        repository.setCountStrategy(CountStrategy.ttl(Duration.ZERO, Runnable::run));
+        Assertions.assertEquals(4L, repository.getAtomicCount());
+        repository.save(comments(2));
+        Assertions.assertEquals(6L, repository.getAtomicCount());
+
+        // by default the expired count is refreshed on a thread of the strategies
+        repository.setCountStrategy(CountStrategy.ttl(Duration.ZERO));
+        Assertions.assertEquals(6L, repository.getAtomicCount());
+        jdbcTemplate.update("INSERT INTO comments (user_name, contents, created_time, favourite_count)"
+            + " VALUES ('alex', 'external', CURRENT_TIMESTAMP, 0)");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (repository.getAtomicCount() != 7L && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        Assertions.assertEquals(7L, repository.getAtomicCount());
+
+        repository.setCountStrategy(CountStrategy.estimated());
+        Assertions.assertTrue(repository.estimatedCount() >= 0);
+        Assertions.assertEquals(repository.estimatedCount(), repository.getAtomicCount());
+    }
+
+    @Test
+    @DisplayName("Cached entities are served without a query and invalidated by writes")
+    public void testEntityCache() {
+        repository.setEntityCache(EntityCache.builder().maximumSize(100).build());
+        Comment comment = repository.save(comments(1).get(0));
+        Assertions.assertEquals("comment 0", repository.findOne(comment.getId()).getContents());
+        Assertions.assertTrue(repository.exists(comment.getId()));
+        Assertions.assertFalse(repository.exists(-1));
+        // existence checks answered from the cache or not aren't counted as reads of the cache
+        Assertions.assertEquals(0, repository.getEntityCache().stats().getHitCount());
+        Assertions.assertEquals(1, repository.getEntityCache().stats().getMissCount());
+
+        comment.setContents("edited");
+        repository.update(comment);
+        Assertions.assertEquals("edited", repository.findOne(comment.getId()).getContents());
+        repository.delete(comment.getId());
+        Assertions.assertNull(repository.findOne(comment.getId()));
+        Assertions.assertFalse(repository.exists(comment.getId()));
+
+        // rows read by a read-write transaction may not be committed, and aren't cached
+        Comment other = repository.save(comments(1).get(0));
+        new TransactionTemplate(new DataSourceTransactionManager(database)).executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE comments SET contents = 'uncommitted' WHERE id = ?", other.getId());
+            Assertions.assertEquals("uncommitted", repository.findOne(other.getId()).getContents());
+            status.setRollbackOnly();
+        });
+        Assertions.assertEquals("comment 0", repository.findOne(other.getId()).getContents());
+    }
+
+    @Test
+    @DisplayName("Operations are timed per repository and method in a Micrometer registry")
+    public void testMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        repository.setMetrics(new MicrometerRepositoryMetrics(registry));
+        repository.save(comments(30));
+        repository.findAll(PageRequest.of(0, 10, Sort.by("id")));
+        Comment missing = comments(1).get(0);
+        missing.setId(999_999);
+        Assertions.assertThrows(NoRecordUpdatedException.class, () -> repository.update(missing));
+
+        Timer findPage = registry.get("simplicity.repository.operations")
+            .tags("repository", "CommentRepository", "method", "findPage", "outcome", "success").timer();
+        Assertions.assertEquals(1, findPage.count());
+        Assertions.assertEquals(10.0, registry.get("simplicity.repository.rows").tags("method", "findPage")
+            .summary().totalAmount());
+        Assertions.assertEquals(30.0, registry.get("simplicity.repository.batch.size").tags("method", "saveAll")
+            .summary().totalAmount());
+        Assertions.assertTrue(registry.get("simplicity.repository.phase").tags("method", "findPage", "phase", "mapping")
+            .timer().totalTime(TimeUnit.NANOSECONDS) > 0);
+        Timer countRefresh = registry.get("simplicity.repository.count.refresh").timer();
+        Assertions.assertEquals(1, countRefresh.count());
+        Assertions.assertTrue(countRefresh.totalTime(TimeUnit.NANOSECONDS) > 0);
+        Assertions.assertEquals(1, registry.get("simplicity.repository.operations")
+            .tags("method", "update", "outcome", "error").timer().count());
+    }
+
+    @Test
+    @DisplayName("Upserts update existing rows and insert the others, natively or emulated")
+    public void testUpsert() {
+        CommentRepository plain = withGenerator(new DefaultSqlGenerator());
+        for (CommentRepository repo : List.of(repository, plain)) {
+            jdbcTemplate.update("DELETE FROM comments");
+            Comment existing = repo.save(comments(1).get(0));
+            existing.setContents("upserted");
+            Comment assigned = comments(1).get(0);
+            assigned.setId(existing.getId() + 100);
+            repo.upsert(existing);
+            repo.upsert(assigned);
+            Assertions.assertEquals("upserted", repo.findOne(existing.getId()).getContents());
+            Assertions.assertEquals(2L, repo.count());
+
+            List<Comment> batch = comments(3);
+            batch.get(0).setId(existing.getId());
+            batch.get(1).setId(existing.getId() + 200);
+            repo.upsert(batch);
+            Assertions.assertEquals("comment 0", repo.findOne(existing.getId()).getContents());
+            Assertions.assertNotEquals(0, batch.get(2).getId());
+            Assertions.assertEquals(4L, repo.count());
+        }
+    }
+
+    @Test
+    @DisplayName("Bulk deletes remove rows in chunks and keep the count and the cache consistent")
+    public void testBulkDelete() {
+        repository.setEntityCache(EntityCache.builder().maximumSize(100).build());
+        List<Comment> saved = repository.save(comments(1100));
+        Assertions.assertEquals(1100L, repository.getAtomicCount());
+        Assertions.assertNotNull(repository.findOne(saved.get(0).getId()));
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 1050; i++) {
+            ids.add(saved.get(i).getId());
+        }
+        ids.add(saved.get(0).getId());
+        Assertions.assertEquals(1050, repository.delete(ids));
+        Assertions.assertEquals(50L, repository.getAtomicCount());
+        Assertions.assertNull(repository.findOne(saved.get(0).getId()));
+
+        Assertions.assertEquals(10, repository.deleteAll("favourite_count >= ?", 1090));
+        Assertions.assertEquals(40L, repository.getAtomicCount());
+        Assertions.assertEquals(40, repository.deleteAll());
+        Assertions.assertEquals(0L, repository.getAtomicCount());
+        Assertions.assertEquals(0L, repository.count());
+    }
+
+    @Test
+    @DisplayName("Projections select only their columns into a class or an interface")
+    public void testProjections() {
+        repository.save(comments(25));
+        Page<CommentSummary> page = repository.findAll(Projection.of(CommentSummary.class), "favourite_count >= 10",
+            PageRequest.of(1, 10, Sort.by("favouriteCount")));
+        Assertions.assertEquals(15L, page.getTotalElements());
+        Assertions.assertEquals(20, page.getContent().get(0).getFavouriteCount());
+        Assertions.assertEquals("comment 20", page.getContent().get(0).label());
+        CommentRepository rowNumber = withGenerator(new DefaultSqlGenerator());
+        Page<CommentSummary> numbered = rowNumber.findAll(Projection.of(CommentSummary.class), "favourite_count >= 10",
+            PageRequest.of(1, 10, Sort.by("favouriteCount")));
+        Assertions.assertEquals(page.getContent(), numbered.getContent());
+        Assertions.assertEquals("comment 20", numbered.getContent().get(0).label());
+        for (CommentRepository repo : List.of(repository, rowNumber)) {
+            Page<CommentSummary> bound = repo.findAll(Projection.of(CommentSummary.class), "favourite_count >= ?",
+                new Object[]{ 10 }, PageRequest.of(1, 10, Sort.by("favouriteCount")));
+            Assertions.assertEquals(15L, bound.getTotalElements());
+            Assertions.assertEquals(page.getContent(), bound.getContent());
+        }
+        Assertions.assertEquals(5, repository.findAll(Projection.of(CommentSummary.class), "favourite_count < ?",
+            new Object[]{ 5 }, Sort.unsorted()).size());
+
+        List<CommentCount> counts = repository.findAll(Projection.of(CommentCount.class), null, Sort.by("id"));
+        Assertions.assertEquals(25, counts.size());
+        Assertions.assertEquals(24, counts.get(24).favouriteCount);
+        Assertions.assertNull(counts.get(24).contents);
+        Assertions.assertEquals(
+            "SELECT id, favourite_count FROM comments",
+            new SqlStatements(new LimitOffsetSqlGenerator(), new TableDescription("comments", List.of("favourite_count")))
+                .project(Projection.of(CommentCount.class)).selectAll());
+        Assertions.assertThrows(InvalidDataAccessApiUsageException.class,
+            () -> repository.findAll(Projection.of(Unknown.class), null, Sort.unsorted()));
+    }
+
+    @Test
+    @DisplayName("Tracked entities update only their changed columns, or nothing")
+    public void testSnapshotTracking() {
+        repository.setSnapshotTracking(true);
+        repository.save(comments(3));
+        Comment comment = repository.findAll("favourite_count = 1").get(0);
+        Assertions.assertEquals(0, repository.update(comment));
+
+        // a concurrent change of another column survives the partial update
+        jdbcTemplate.update("UPDATE comments SET favourite_count = 42 WHERE id = ?", comment.getId());
+        comment.setContents("edited");
+        Assertions.assertEquals(1, repository.update(comment));
+        Comment stored = repository.findOne(comment.getId());
+        Assertions.assertEquals("edited", stored.getContents());
+        Assertions.assertEquals(42, stored.getFavouriteCount());
+        Assertions.assertEquals(0, repository.update(comment));
+
+        Comment created = repository.save(comments(1).get(0));
+        Assertions.assertEquals(0, repository.update(created));
+
+        // the snapshot of a rolled back update is dropped, so the retry isn't skipped
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(database));
+        created.setContents("rolled back, then retried");
+        transaction.executeWithoutResult(status -> {
+            Assertions.assertEquals(1, repository.update(created));
+            status.setRollbackOnly();
+        });
+        Assertions.assertEquals(1, repository.update(created));
+        Assertions.assertEquals("rolled back, then retried", repository.findOne(created.getId()).getContents());
+        transaction.executeWithoutResult(status -> repository.update(created));
+        Assertions.assertEquals(0, repository.update(created));
+        repository.setSnapshotTracking(false);
+        Assertions.assertEquals(1, repository.update(created));
+    }
+
+    @Test
+    @DisplayName("Where clauses bind positional and named parameters before the page boundaries")
+    public void testBoundWhereClauses() {
+        repository.save(comments(30));
+        Page<Comment> page = repository.findAll("favourite_count >= ? AND contents <> ?", new Object[]{ 10, "comment 12" },
+            PageRequest.of(1, 5, Sort.by("favouriteCount")));
+        Assertions.assertEquals(19L, page.getTotalElements());
+        Assertions.assertEquals(16, page.getContent().get(0).getFavouriteCount());
+        Assertions.assertEquals(3, repository.findSlice("favourite_count < ?", new Object[]{ 3 }, PageRequest.of(0, 5))
+            .getNumberOfElements());
+        try (Stream<Comment> stream = repository.streamAll("user_name = ?", new Object[]{ "alex" }, Sort.unsorted())) {
+            Assertions.assertEquals(30, stream.count());
+        }
+
+        Map<String, Object> named = Map.of("counts", List.of(1, 2, 3), "contents", "comment 2");
+        List<Comment> found = repository.findAll("favourite_count IN (:counts) AND contents <> :contents", named, Sort.by("id"));
+        Assertions.assertEquals(List.of(1, 3), found.stream().map(Comment::getFavouriteCount).collect(Collectors.toList()));
+        Assertions.assertEquals(2L, repository.count("favourite_count IN (:counts) AND contents <> :contents", named));
+        Assertions.assertEquals(2, repository.findAll("favourite_count IN (:counts) AND contents <> :contents", named,
+            PageRequest.of(0, 10)).getTotalElements());
+    }
+
+    @Test
+    @DisplayName("Updates of stale versions are rejected, per row in batches")
+    public void testOptimisticLocking() {
+        AbstractJdbcRepository<Document, Long> documents =
+            new AbstractJdbcRepository<>(jdbcTemplate, "documents", Document.class, "id") {};
+        documents.setVersionColumn("version");
+
+        Document first = documents.save(new Document("first"));
+        Document second = documents.save(new Document("second"));
+        Document stale = documents.findOne(first.id);
+        first.title = "first, edited";
+        Assertions.assertEquals(1, documents.update(first));
+        Assertions.assertEquals(1L, first.version);
+        Assertions.assertEquals(1L, documents.findOne(first.id).version);
+
+        stale.title = "first, lost";
+        Assertions.assertThrows(VersionConflictException.class, () -> documents.update(stale));
+        Document missing = new Document("missing");
+        missing.id = -1L;
+        Assertions.assertThrows(NoRecordUpdatedException.class, () -> documents.update(missing));
+
+        second.title = "second, edited";
+        Assertions.assertArrayEquals(new int[]{ JdbcRepository.VERSION_CONFLICT, 1, 0 },
+            documents.updateAll(List.of(stale, second, missing)));
+        Assertions.assertEquals(1L, second.version);
+        VersionConflictException conflict = Assertions.assertThrows(VersionConflictException.class,
+            () -> documents.save(List.of(second, stale)));
+        Assertions.assertEquals(List.of(first.id), conflict.getIds());
+        Assertions.assertEquals("first, edited", documents.findOne(first.id).title);
+    }
+
+    @Test
+    @DisplayName("Upserts check the version of existing rows, in a single statement or not")
+    public void testVersionedUpsert() {
+        for (SqlGenerator generator : List.of(new H2SqlGenerator(), new DefaultSqlGenerator())) {
+            AbstractJdbcRepository<Document, Long> documents =
+                new AbstractJdbcRepository<>(jdbcTemplate, "documents", Document.class, "id") {};
+            documents.setVersionColumn("version");
+            documents.setSqlGenerator(generator);
+
+            Document document = documents.save(new Document("upserted"));
+            Document stale = documents.findOne(document.id);
+            document.title = "upserted, edited";
+            documents.upsert(document);
+            Assertions.assertEquals(1L, document.version);
+            Assertions.assertEquals(1L, documents.findOne(document.id).version);
+
+            stale.title = "upserted, lost";
+            Assertions.assertThrows(VersionConflictException.class, () -> documents.upsert(stale));
+            Assertions.assertThrows(VersionConflictException.class, () -> documents.upsert(List.of(stale)));
+            Assertions.assertEquals("upserted, edited", documents.findOne(document.id).title);
+
+            Document inserted = new Document("inserted");
+            inserted.id = document.id + 1000;
+            documents.upsert(List.of(inserted));
+            Assertions.assertEquals(1L, inserted.version);
+            Assertions.assertEquals(1L, documents.findOne(inserted.id).version);
+        }
+    }
+
+    @Test
+    @DisplayName("Upserts increment a version column the entity doesn't map")
+    public void testUnmappedVersionUpsert() {
+        for (SqlGenerator generator : List.of(new H2SqlGenerator(), new DefaultSqlGenerator())) {
+            AbstractJdbcRepository<DocumentTitle, Long> titles =
+                new AbstractJdbcRepository<>(jdbcTemplate, "documents", DocumentTitle.class, "id") {};
+            titles.setVersionColumn("version");
+            titles.setSqlGenerator(generator);
+
+            DocumentTitle title = new DocumentTitle();
+            title.id = 2000L + titles.count();
+            title.title = "upserted";
+            titles.upsert(title);
+            Assertions.assertEquals("0", titles.findVersion(title.id).getTag());
+            title.title = "upserted, edited";
+            titles.upsert(title);
+            Assertions.assertEquals("1", titles.findVersion(title.id).getTag());
+            titles.upsert(List.of(title));
+            Assertions.assertEquals("2", titles.findVersion(title.id).getTag());
+            // without a last modified column, replacing a row could leave the count and versions unchanged
+            Assertions.assertNull(titles.findVersion());
+        }
+    }
+
+    @Test
+    @DisplayName("Repositories of @JdbcEntity classes use the metadata generated at compile time")
+    public void testGeneratedMetadata() throws Exception {
+        EntityMetadata<Comment, ?> metadata = EntityMetadata.of(Comment.class);
+        Assertions.assertNotNull(metadata);
+        Assertions.assertNull(EntityMetadata.of(Document.class));
+        EntityRowMapper<Comment> reflective = new EntityRowMapper<>(Comment.class);
+        Assertions.assertEquals(reflective.mapTypes(), metadata.getRowMapper().mapTypes());
+        Comment comment = new Comment("alex", "generated", LocalDateTime.of(2020, 4, 1, 12, 30), 7);
+        String[] columns = metadata.getColumns().toArray(new String[0]);
+        Assertions.assertArrayEquals(reflective.columnsValues(comment, columns), metadata.getRowMapper().columnsValues(comment, columns));
+
+        AbstractJdbcRepository<Comment, Integer> generated =
+            new AbstractJdbcRepository<>(jdbcTemplate, "comments", Comment.class, "id") {};
+        Comment saved = generated.save(comment);
+        Assertions.assertNotNull(saved.getId());
+        Comment found = generated.findOne(saved.getId());
+        Assertions.assertEquals(comment.getContents(), found.getContents());
+        Assertions.assertEquals(comment.getCreatedTime(), found.getCreatedTime());
+        Assertions.assertEquals(comment.getFavouriteCount(), found.getFavouriteCount());
+    }
+
+    public static class Document {
+        private Long id;
+        private String title;
+        private long version;
+
+        public Document() {
+        }
+
+        Document(String title) {
+            this.title = title;
+        }
+    }
+
+    public static class DocumentTitle {
+        private Long id;
+        private String title;
+    }
+
+    public interface CommentSummary {
+
+        String getContents();
+
+        int getFavouriteCount();
+
+        default String label() {
+            return getContents();
+        }
+    }
+
+    public static class CommentCount {
+        private Integer id;
+        private int favouriteCount;
+        private transient String contents;
+    }
+
+    public static class FinalComment {
+        private Integer id;
+        private final String userName = "alex";
+    }
+
+    public interface Unknown {
+
+        String getTitle();
+    }
+
+    private CommentRepository withGenerator(SqlGenerator generator) {
+        CommentRepository repo = new CommentRepository(jdbcTemplate);
+        repo.setSqlGenerator(generator);
+        return repo;
+    }
+
+    private List<Comment> comments(int size) {
+        List<Comment> comments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            comments.add(new Comment("alex", "comment " + i, LocalDateTime.now(), i));
+        }
+        return comments;
+    }
+}
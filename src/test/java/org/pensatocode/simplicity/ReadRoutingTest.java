@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.pensatocode.simplicity.jdbc.async.AsyncJdbcRepository;
+import org.pensatocode.simplicity.jdbc.routing.ReadRouting;
+import org.pensatocode.simplicity.jdbc.routing.ReplicaSelector;
+import org.pensatocode.simplicity.jdbc.routing.ReplicaTarget;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class ReadRoutingTest {
+
+    private EmbeddedDatabase primary;
+    private EmbeddedDatabase replica;
+    private CommentRepository repository;
+
+    @BeforeEach
+    public void setUp() {
+        primary = database();
+        replica = database();
+        repository = new CommentRepository(new JdbcTemplate(primary));
+        // the replica lags: it only has a row the primary has too
+        new JdbcTemplate(replica).update("INSERT INTO comments (user_name, contents, created_time, favourite_count)"
+            + " VALUES ('alex', 'replicated', CURRENT_TIMESTAMP, 1)");
+        new JdbcTemplate(primary).update("INSERT INTO comments (user_name, contents, created_time, favourite_count)"
+            + " VALUES ('alex', 'replicated', CURRENT_TIMESTAMP, 1)");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    @Test
+    @DisplayName("Reads go to the replica, except right after a write of the same thread")
+    public void testReadYourWrites() {
+        ReadRouting routing = ReadRouting.roundRobin(replica);
+        repository.setReadRouting(routing);
+        Assertions.assertEquals(1L, repository.count());
+
+        repository.save(new Comment("alex", "fresh", LocalDateTime.now(), 2));
+        Assertions.assertTrue(routing.isSticky());
+        Assertions.assertEquals(2L, repository.count());
+        Assertions.assertEquals("fresh", repository.findAll("favourite_count = 2").get(0).getContents());
+
+        routing.resetStickiness();
+        Assertions.assertEquals(1L, repository.count());
+        Assertions.assertTrue(repository.findAll("favourite_count = 2").isEmpty());
+
+        // a write run on another thread keeps the reads of the calling thread on the primary too
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AsyncJdbcRepository<Comment, Integer> async = new AsyncJdbcRepository<>(repository, executor);
+            async.save(new Comment("alex", "async", LocalDateTime.now(), 3)).join();
+            Assertions.assertTrue(routing.isSticky());
+            Assertions.assertEquals(3L, async.count().join());
+        } finally {
+            executor.shutdown();
+        }
+        routing.resetStickiness();
+
+        // a streaming read runs on the replica until the stream is closed
+        ReplicaTarget target = routing.getReplicas().get(0);
+        try (Stream<Comment> stream = repository.streamAll()) {
+            Assertions.assertEquals(1, target.getActiveReads());
+            Assertions.assertEquals(1L, stream.count());
+        }
+        Assertions.assertEquals(0, target.getActiveReads());
+    }
+
+    @Test
+    @DisplayName("A failing replica is skipped and the read runs on the primary")
+    public void testFallback() {
+        AtomicInteger attempts = new AtomicInteger();
+        DataSource down = new AbstractDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                attempts.incrementAndGet();
+                throw new SQLException("Connection refused");
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return getConnection();
+            }
+        };
+        repository.save(new Comment("alex", "fresh", LocalDateTime.now(), 2));
+        repository.setReadRouting(new ReadRouting(ReplicaSelector.roundRobin(), Duration.ZERO, Duration.ofMinutes(1),
+            List.of(down, replica)));
+        for (int i = 0; i < 4; i++) {
+            repository.findAll();
+        }
+        Assertions.assertEquals(1, attempts.get());
+        Assertions.assertEquals(1L, repository.count());
+    }
+
+    @Test
+    @DisplayName("A replica failing once the callback got rows fails the read instead of handing them twice")
+    public void testFailureAfterRows() {
+        new JdbcTemplate(replica).update("INSERT INTO comments (user_name, contents, created_time, favourite_count)"
+            + " VALUES ('alex', 'lagging', CURRENT_TIMESTAMP, 2)");
+        for (boolean paged : new boolean[]{ true, false }) {
+            ReadRouting routing = new ReadRouting(ReplicaSelector.roundRobin(), Duration.ZERO, Duration.ofMinutes(1),
+                List.of(failingAfterFirstRow(replica)));
+            repository.setReadRouting(routing);
+            List<String> contents = new ArrayList<>();
+            RowCallbackHandler callback = rs -> contents.add(rs.getString("contents"));
+            Assertions.assertThrows(DataAccessResourceFailureException.class, () -> {
+                if (paged) {
+                    repository.findAll(PageRequest.of(0, 10, Sort.by("id")), callback);
+                } else {
+                    repository.findAll(null, Sort.by("id"), callback);
+                }
+            });
+            Assertions.assertEquals(List.of("replicated"), contents);
+
+            // the replica is excluded: the next read runs on the primary
+            contents.clear();
+            repository.findAll(callback);
+            Assertions.assertEquals(List.of("replicated"), contents);
+            Assertions.assertEquals(0, routing.getReplicas().get(0).getActiveReads());
+        }
+    }
+
+    @Test
+    @DisplayName("The least busy replica takes the read")
+    public void testLeastBusy() {
+        ReadRouting routing = ReadRouting.leastBusy(replica, primary);
+        List<ReplicaTarget> targets = routing.getReplicas();
+        Assertions.assertEquals(0, targets.get(0).getActiveReads());
+        ReplicaSelector selector = ReplicaSelector.leastBusy();
+        Assertions.assertSame(targets.get(0), selector.select(targets));
+        Assertions.assertSame(targets.get(1), selector.select(targets));
+    }
+
+    /**
+     * @return A data source whose result sets lose the connection after their first row.
+     */
+    private static DataSource failingAfterFirstRow(DataSource target) {
+        return new AbstractDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return failing(Connection.class, target.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return getConnection();
+            }
+        };
+    }
+
+    private static <T> T failing(Class<T> type, T target) {
+        AtomicInteger rows = new AtomicInteger();
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{ type }, (proxy, method, args) -> {
+            if (type == ResultSet.class && method.getName().equals("next") && rows.incrementAndGet() > 1) {
+                throw new SQLNonTransientConnectionException("Connection reset", "08S01");
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof ResultSet) {
+                return failing(ResultSet.class, (ResultSet) result);
+            }
+            if (result instanceof PreparedStatement) {
+                return failing(PreparedStatement.class, (PreparedStatement) result);
+            }
+            if (result instanceof Statement) {
+                return failing(Statement.class, (Statement) result);
+            }
+            return result;
+        }));
+    }
+
+    private static EmbeddedDatabase database() {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("schema_h2.sql")
+            .build();
+        new JdbcTemplate(database)
+            .update("INSERT INTO users (user_name, date_of_birth, reputation, enabled) VALUES ('alex', '1980-01-01', 1, true)");
+        return database;
+    }
+}
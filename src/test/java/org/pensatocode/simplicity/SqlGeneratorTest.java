@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020 Alex Magalhaes <alex@pensatocode.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pensatocode.simplicity;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.pensatocode.simplicity.jdbc.TableDescription;
+import org.pensatocode.simplicity.jdbc.sql.DefaultSqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.H2SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.LimitOffsetSqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.MySqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.Oracle9SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.PostgreSqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SQL2008SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SqlGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SqlGeneratorFactory;
+import org.pensatocode.simplicity.jdbc.sql.SqlServerGenerator;
+import org.pensatocode.simplicity.jdbc.sql.SqlStatements;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SqlGeneratorTest {
+
+    private final TableDescription table = new TableDescription(
+        "comments", List.of("user_name", "contents"), "id, user_name, contents", "comments", new String[]{ "id" });
+
+    @Test
+    @DisplayName("Page boundaries are bound as parameters in every dialect")
+    public void testPageParameters() {
+        Sort sort = Sort.by("userName");
+        Assertions.assertEquals(
+            "SELECT id, user_name, contents FROM comments ORDER BY user_name ASC LIMIT ? OFFSET ?",
+            new LimitOffsetSqlGenerator().selectPage(table, null, sort));
+        Assertions.assertEquals(
+            "SELECT id, user_name, contents FROM comments WHERE contents IS NULL"
+                + " ORDER BY id ASC OFFSET ? ROWS FETCH NEXT ? ROW ONLY",
+            new SQL2008SqlGenerator().selectPage(table, "contents IS NULL", Sort.unsorted()));
+        Assertions.assertTrue(new Oracle9SqlGenerator().selectPage(table, null, sort)
+            .endsWith("WHERE t2__.rn__ > ? AND ROWNUM <= ?"));
+        Assertions.assertTrue(new DefaultSqlGenerator().selectPage(table, null, sort)
+            .endsWith("WHERE t2__.rn__ BETWEEN ? AND ?"));
+
+        Assertions.assertArrayEquals(new Object[]{ 20, 40L }, new LimitOffsetSqlGenerator().pageParams(40L, 20));
+        Assertions.assertArrayEquals(new Object[]{ 41L, 60L }, new DefaultSqlGenerator().pageParams(40L, 20));
+    }
+
+    @Test
+    @DisplayName("Keyset pages fetch their rows after an offset of zero, as SQL Server requires")
+    public void testKeysetFetch() {
+        Sort sort = Sort.by("id");
+        Assertions.assertEquals(
+            "SELECT id, user_name, contents FROM comments ORDER BY id ASC OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY",
+            new SQL2008SqlGenerator().selectKeyset(table, null, sort, false));
+        String seek = new SqlServerGenerator().selectKeyset(table, "contents IS NULL", sort, true);
+        Assertions.assertTrue(seek.startsWith("SELECT id, user_name, contents FROM comments WHERE "), seek);
+        Assertions.assertTrue(seek.endsWith(" ORDER BY id ASC OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY"), seek);
+    }
+
+    @Test
+    @DisplayName("Statements are built once per shape and reused for every page")
+    public void testStatementReuse() {
+        SqlStatements statements = new SqlStatements(new LimitOffsetSqlGenerator(), table);
+        String first = statements.selectPage(null, Sort.by("userName"));
+        Assertions.assertSame(first, statements.selectPage(null, Sort.by("userName")));
+        Assertions.assertNotEquals(first, statements.selectPage(null, Sort.by("contents")));
+        Assertions.assertArrayEquals(new Object[]{ 10, 30L }, statements.pageParams(PageRequest.of(3, 10)));
+    }
+
+    @Test
+    @DisplayName("Dialects are probed once per data source, on a connection that is closed, or taken from configuration")
+    public void testGeneratorFactory() throws Exception {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build();
+        try {
+            AtomicInteger open = new AtomicInteger();
+            DataSource counting = new DelegatingDataSource(database) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    open.incrementAndGet();
+                    Connection connection = super.getConnection();
+                    return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ Connection.class },
+                        (proxy, method, args) -> {
+                            if (method.getName().equals("close")) {
+                                open.decrementAndGet();
+                            }
+                            return method.invoke(connection, args);
+                        });
+                }
+            };
+            SqlGeneratorFactory factory = new SqlGeneratorFactory(true);
+            factory.setDialect(null);
+            SqlGenerator generator = factory.getGenerator(counting);
+            Assertions.assertTrue(generator instanceof H2SqlGenerator);
+            Assertions.assertSame(generator, factory.getGenerator(counting));
+            Assertions.assertEquals(0, open.get());
+
+            factory.setDialect(SqlGeneratorFactory.forName("oracle9"));
+            Assertions.assertTrue(factory.getGenerator(database) instanceof Oracle9SqlGenerator);
+            Assertions.assertTrue(SqlGeneratorFactory.forName(SQL2008SqlGenerator.class.getName()) instanceof SQL2008SqlGenerator);
+            Assertions.assertTrue(SqlGeneratorFactory.forName("sqlserver") instanceof SqlServerGenerator);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> SqlGeneratorFactory.forName("dbase"));
+        } finally {
+            database.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Upserts are single statements in the dialects that support them")
+    public void testUpsert() {
+        Assertions.assertEquals(
+            "INSERT INTO comments AS t__ (id,user_name,contents) VALUES (?, ?, ?)"
+                + " ON CONFLICT (id) DO UPDATE SET user_name = EXCLUDED.user_name, contents = EXCLUDED.contents",
+            new PostgreSqlGenerator().upsert(table));
+        Assertions.assertEquals(
+            "MERGE INTO comments (id,user_name,contents) KEY (id) VALUES (?, ?, ?)",
+            new H2SqlGenerator().upsert(table));
+        Assertions.assertEquals(
+            "INSERT INTO comments (id, user_name,contents) VALUES (?, ?, ?)"
+                + " ON DUPLICATE KEY UPDATE user_name = VALUES(user_name), contents = VALUES(contents)",
+            new MySqlGenerator().upsert(table));
+        Assertions.assertEquals(
+            "MERGE INTO comments t__ USING (SELECT ? AS id, ? AS user_name, ? AS contents FROM dual) s__"
+                + " ON (t__.id = s__.id) WHEN MATCHED THEN UPDATE SET t__.user_name = s__.user_name, t__.contents = s__.contents"
+                + " WHEN NOT MATCHED THEN INSERT (id,user_name,contents) VALUES (s__.id, s__.user_name, s__.contents)",
+            new Oracle9SqlGenerator().upsert(table));
+        Assertions.assertEquals(
+            "MERGE INTO comments WITH (HOLDLOCK) AS t__ USING (SELECT ? AS id, ? AS user_name, ? AS contents) s__"
+                + " ON (t__.id = s__.id) WHEN MATCHED THEN UPDATE SET t__.user_name = s__.user_name, t__.contents = s__.contents"
+                + " WHEN NOT MATCHED THEN INSERT (id,user_name,contents) VALUES (s__.id, s__.user_name, s__.contents);",
+            new SqlServerGenerator().upsert(table));
+        Assertions.assertFalse(new DefaultSqlGenerator().supportsUpsert());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> new DefaultSqlGenerator().upsert(table));
+    }
+
+    @Test
+    @DisplayName("Updates increment the version column and check it when mapped")
+    public void testVersionedUpdate() {
+        TableDescription documents = new TableDescription("documents", List.of("title", "version"), new String[]{ "id" });
+        documents.setVersionColumn("version");
+        Assertions.assertEquals("UPDATE documents SET title = ?, version = version + 1 WHERE id = ? AND version = ?",
+            new DefaultSqlGenerator().update(documents));
+        Assertions.assertEquals("UPDATE documents SET version = version + 1 WHERE id = ? AND version = ?",
+            new DefaultSqlGenerator().update(documents, List.of("version")));
+        // conflicts are told from missing rows by their ids only
+        Assertions.assertEquals("SELECT id FROM documents WHERE id IN (?, ?)", new DefaultSqlGenerator().selectPKsByPKs(documents, 2));
+        TableDescription comments = new TableDescription("comments", List.of("user_name", "contents"), new String[]{ "id" });
+        comments.setVersionColumn("revision");
+        Assertions.assertEquals("UPDATE comments SET user_name = ?, contents = ?, revision = revision + 1 WHERE id = ?",
+            new DefaultSqlGenerator().update(comments));
+    }
+
+    @Test
+    @DisplayName("Upserts increment a checked version and update only rows of the same version")
+    public void testVersionedUpsert() {
+        TableDescription documents = new TableDescription("documents", List.of("title", "version"), new String[]{ "id" });
+        documents.setVersionColumn("version");
+        Assertions.assertEquals(
+            "INSERT INTO documents AS t__ (id,title,version) VALUES (?, ?, ? + 1) ON CONFLICT (id) DO UPDATE"
+                + " SET title = EXCLUDED.title, version = t__.version + 1 WHERE t__.version = EXCLUDED.version - 1",
+            new PostgreSqlGenerator().upsert(documents));
+        Assertions.assertEquals(
+            "MERGE INTO documents t__ USING (SELECT ? AS id, ? AS title, ? AS version FROM dual) s__ ON (t__.id = s__.id)"
+                + " WHEN MATCHED THEN UPDATE SET t__.title = s__.title, t__.version = t__.version + 1"
+                + " WHERE t__.version = s__.version"
+                + " WHEN NOT MATCHED THEN INSERT (id,title,version) VALUES (s__.id, s__.title, s__.version + 1)",
+            new Oracle9SqlGenerator().upsert(documents));
+        Assertions.assertEquals(
+            "MERGE INTO documents WITH (HOLDLOCK) AS t__ USING (SELECT ? AS id, ? AS title, ? AS version) s__"
+                + " ON (t__.id = s__.id) WHEN MATCHED AND t__.version = s__.version"
+                + " THEN UPDATE SET t__.title = s__.title, t__.version = t__.version + 1"
+                + " WHEN NOT MATCHED THEN INSERT (id,title,version) VALUES (s__.id, s__.title, s__.version + 1);",
+            new SqlServerGenerator().upsert(documents));
+        Assertions.assertTrue(new H2SqlGenerator().upsert(documents)
+            .startsWith("MERGE INTO documents t__ USING (SELECT C1 AS id, C2 AS title, C3 AS version FROM (VALUES (?, ?, ?))) s__"));
+        Assertions.assertTrue(new MySqlGenerator().supportsUpsert(table));
+        Assertions.assertFalse(new MySqlGenerator().supportsUpsert(documents));
+
+        TableDescription titles = new TableDescription("documents", List.of("title"), new String[]{ "id" });
+        titles.setVersionColumn("version");
+        Assertions.assertEquals(
+            "INSERT INTO documents AS t__ (id,title) VALUES (?, ?) ON CONFLICT (id) DO UPDATE"
+                + " SET title = EXCLUDED.title, version = t__.version + 1",
+            new PostgreSqlGenerator().upsert(titles));
+        Assertions.assertEquals(
+            "INSERT INTO documents (id, title) VALUES (?, ?) ON DUPLICATE KEY UPDATE title = VALUES(title), version = version + 1",
+            new MySqlGenerator().upsert(titles));
+        Assertions.assertEquals(
+            "MERGE INTO documents WITH (HOLDLOCK) AS t__ USING (SELECT ? AS id, ? AS title) s__ ON (t__.id = s__.id)"
+                + " WHEN MATCHED THEN UPDATE SET t__.title = s__.title, t__.version = t__.version + 1"
+                + " WHEN NOT MATCHED THEN INSERT (id,title) VALUES (s__.id, s__.title);",
+            new SqlServerGenerator().upsert(titles));
+    }
+
+    @Test
+    @DisplayName("Sorted selects keep the case of the where clause")
+    public void testSortedSelectCase() {
+        Assertions.assertEquals(
+            "SELECT id, user_name, contents FROM comments WHERE user_name = 'alex' ORDER BY id DESC",
+            new DefaultSqlGenerator().selectAll(table, "user_name = 'alex'", Sort.by(Sort.Direction.DESC, "id")));
+    }
+}
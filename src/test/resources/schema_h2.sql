@@ -11,6 +11,7 @@ CREATE TABLE IF NOT EXISTS COMMENTS (
   contents varchar(1000),
   created_time TIMESTAMP NOT NULL,
   favourite_count INT NOT NULL,
+  last_modified TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
   FOREIGN KEY (user_name) REFERENCES USERS(user_name)
 );
 
@@ -21,3 +22,9 @@ CREATE TABLE IF NOT EXISTS BOARDING_PASS (
   seat CHAR(3),
   PRIMARY KEY (flight_no, seq_no)
 );
+
+CREATE TABLE IF NOT EXISTS DOCUMENTS (
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  title VARCHAR(256),
+  version BIGINT DEFAULT 0 NOT NULL
+);